@@ -33,19 +33,14 @@
     public *** sendPaymentDetails(...);
 }
 
-# Keep the SmsParser class to prevent crashes due to reflection.
-# Obfuscation can still be applied to its internal helper methods.
+# Keep the SmsParser entry points (from the :parser module). PaymentDetails
+# is built through its Builder without reflection, so it can be shrunk and
+# renamed freely.
 -keep public class com.example.paymenttracker.SmsParser {
     public <init>(...);
     public static *** parse(...);
 }
 
-# Keep all methods and fields used by reflection in SmsParser
--keep class com.example.paymenttracker.PaymentDetails {
-    <fields>;
-    <methods>;
-}
-
 # Keep the OkHttp library classes that are used.
 # This prevents the network library from breaking after obfuscation.
 -keep class okhttp3.** { *; }
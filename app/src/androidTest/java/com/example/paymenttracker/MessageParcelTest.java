@@ -0,0 +1,97 @@
+package com.example.paymenttracker;
+
+import android.os.Parcel;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/** Message parcels of every version, read back with the value written after them. */
+@RunWith(AndroidJUnit4.class)
+public class MessageParcelTest {
+
+    private static final int NEXT_VALUE = 0x5eed;
+
+    @Test
+    public void readsVersion1() {
+        Parcel p = Parcel.obtain();
+        try {
+            p.writeString("VM-HDFCBK");
+            p.writeString("Rs.1499 credited");
+            p.writeString("SUBMITTED");
+            p.writeString("1760257980000");
+            p.writeInt(NEXT_VALUE);
+            p.setDataPosition(0);
+
+            Message m = Message.CREATOR.createFromParcel(p);
+            assertEquals("VM-HDFCBK", m.sender);
+            assertEquals("Rs.1499 credited", m.getContent());
+            assertEquals(Message.Status.SUBMITTED, m.status);
+            assertEquals(1760257980000L, m.timestamp);
+            assertEquals(PaymentDetails.NO_AMOUNT, m.amountPaise);
+            assertEquals(NEXT_VALUE, p.readInt());
+        } finally {
+            p.recycle();
+        }
+    }
+
+    @Test
+    public void roundTripsVersion2() {
+        Message m = new Message("AD-ICICIT", "Rs 25.50 received", Message.Status.SET_FORWARDER, 1760257980000L);
+        m.amountPaise = 2550L;
+        m.upiRefId = "528512345678";
+        m.bank = "ICICI Bank";
+        m.paidAtMillis = 1760257900000L;
+        Parcel p = Parcel.obtain();
+        try {
+            m.writeToParcel(p, 0);
+            p.writeInt(NEXT_VALUE);
+            p.setDataPosition(0);
+
+            Message back = Message.CREATOR.createFromParcel(p);
+            assertEquals("AD-ICICIT", back.sender);
+            assertEquals("Rs 25.50 received", back.getContent());
+            assertEquals(Message.Status.SET_FORWARDER, back.status);
+            assertEquals(2550L, back.amountPaise);
+            assertEquals("528512345678", back.upiRefId);
+            assertNull(back.senderVpa);
+            assertEquals("ICICI Bank", back.bank);
+            assertEquals(1760257900000L, back.paidAtMillis);
+            assertEquals(NEXT_VALUE, p.readInt());
+        } finally {
+            p.recycle();
+        }
+    }
+
+    @Test
+    public void skipsFieldsANewerVersionAdded() {
+        Message m = new Message("AD-ICICIT", "Rs 25.50 received", Message.Status.SUBMITTED, 1760257980000L);
+        m.amountPaise = 2550L;
+        Parcel p = Parcel.obtain();
+        try {
+            // a version 3 parcel: the version 2 fields, then one more
+            m.writeToParcel(p, 0);
+            int end = p.dataPosition();
+            p.writeString("a field this build does not know");
+            int newEnd = p.dataPosition();
+            p.setDataPosition(4);
+            int size = p.readInt();
+            p.setDataPosition(0);
+            p.writeInt(-(MessageCodec.VERSION + 1));
+            p.writeInt(size + newEnd - end);
+            p.setDataPosition(newEnd);
+            p.writeInt(NEXT_VALUE);
+            p.setDataPosition(0);
+
+            Message back = Message.CREATOR.createFromParcel(p);
+            assertEquals("AD-ICICIT", back.sender);
+            assertEquals(2550L, back.amountPaise);
+            assertEquals(NEXT_VALUE, p.readInt());
+        } finally {
+            p.recycle();
+        }
+    }
+}
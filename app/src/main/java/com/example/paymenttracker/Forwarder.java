@@ -0,0 +1,49 @@
+package com.example.paymenttracker;
+
+import org.json.JSONException;
+
+import okhttp3.Request;
+
+/**
+ * Somewhere payments are forwarded to: a webhook or a Telegram chat. Each
+ * payment is queued in the {@link Outbox} once per forwarder, and each
+ * forwarder is sent to on its own lane.
+ */
+interface Forwarder {
+
+    /**
+     * Names this forwarder's rows in the outbox. It stays the same while the
+     * forwarder's settings do, so queued rows find it again after a restart.
+     */
+    String id();
+
+    /** Which timeouts and delivery stats it shares. */
+    HttpClients.Destination kind();
+
+    /** How it is shown in the status dialog. */
+    String label();
+
+    /** What is queued for a payment. */
+    String payload(PaymentDetails details, String fullSms) throws JSONException;
+
+    /** The request that sends one queued payload. */
+    Request request(String payload) throws JSONException;
+
+    /** How its payloads are grouped; most forwarders send them one by one. */
+    default WebhookBatching batching() {
+        return WebhookBatching.OFF;
+    }
+
+    /** Milliseconds to hold a send back for a rate limit; 0 to send now. */
+    default long waitBeforeSend(long now) {
+        return 0L;
+    }
+
+    /**
+     * Milliseconds the endpoint asked to pause for, when a reply is a
+     * request to slow down rather than a failure; else 0.
+     */
+    default long retryAfterMillis(int code, String body, String retryAfterHeader, long now) {
+        return 0L;
+    }
+}
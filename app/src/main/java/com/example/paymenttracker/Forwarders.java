@@ -0,0 +1,87 @@
+package com.example.paymenttracker;
+
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.HttpUrl;
+
+/**
+ * The forwarders the settings describe. These are the webhook URL and
+ * Telegram chat fields, plus up to MAX_EXTRA more webhooks (one per line,
+ * "URL" or "URL secret") and MAX_EXTRA more chats for the same bot
+ * (comma separated).
+ *
+ * Like the other settings parsers, this skips what it cannot read. It
+ * skips URLs that are not http(s) and anything listed twice.
+ *
+ * The webhook and chat in the main fields keep the ids WEBHOOK and
+ * TELEGRAM. Payments queued for them are therefore sent to whatever those
+ * fields say now. The extra ones are keyed by their URL or chat id.
+ */
+final class Forwarders {
+
+    static final int MAX_EXTRA = 5;
+
+    private Forwarders() {
+    }
+
+    static List<Forwarder> fromSettings(SharedPreferences prefs) {
+        return fromSettings(
+                prefs.getString(MainActivity.WEBHOOK_URL, ""),
+                prefs.getString(MainActivity.SECRET_KEY, ""),
+                prefs.getString(MainActivity.EXTRA_WEBHOOKS, ""),
+                prefs.getString(MainActivity.TELEGRAM_BOT_TOKEN, ""),
+                prefs.getString(MainActivity.TELEGRAM_CHAT_ID, ""),
+                prefs.getString(MainActivity.EXTRA_TELEGRAM_CHATS, ""),
+                Outbox.webhookBatching(prefs));
+    }
+
+    static List<Forwarder> fromSettings(String webhookUrl, String secretKey, String extraWebhooks,
+                                        String botToken, String chatId, String extraChats,
+                                        WebhookBatching batching) {
+        Map<String, Forwarder> byTarget = new LinkedHashMap<>();
+        webhookUrl = trim(webhookUrl);
+        if (isHttpUrl(webhookUrl)) {
+            byTarget.put("webhook " + webhookUrl,
+                    new WebhookForwarder(HttpClients.Destination.WEBHOOK.name(), webhookUrl, trim(secretKey), batching));
+        }
+        int extra = 0;
+        for (String line : trim(extraWebhooks).split("\n")) {
+            String[] parts = line.trim().split("\\s+", 2);
+            String url = parts[0];
+            if (extra == MAX_EXTRA || !isHttpUrl(url) || byTarget.containsKey("webhook " + url)) continue;
+            String secret = parts.length > 1 ? parts[1].trim() : "";
+            byTarget.put("webhook " + url, new WebhookForwarder("webhook:" + url, url, secret, batching));
+            extra++;
+        }
+
+        botToken = trim(botToken);
+        if (!botToken.isEmpty()) {
+            chatId = trim(chatId);
+            if (!chatId.isEmpty()) {
+                byTarget.put("telegram " + chatId,
+                        new TelegramForwarder(HttpClients.Destination.TELEGRAM.name(), botToken, chatId));
+            }
+            extra = 0;
+            for (String chat : SmsPreFilter.splitList(extraChats)) {
+                if (extra == MAX_EXTRA || byTarget.containsKey("telegram " + chat)) continue;
+                byTarget.put("telegram " + chat, new TelegramForwarder("telegram:" + chat, botToken, chat));
+                extra++;
+            }
+        }
+        return byTarget.isEmpty() ? Collections.emptyList() : new ArrayList<>(byTarget.values());
+    }
+
+    private static boolean isHttpUrl(String url) {
+        return !url.isEmpty() && HttpUrl.parse(url) != null;
+    }
+
+    private static String trim(String s) {
+        return s != null ? s.trim() : "";
+    }
+}
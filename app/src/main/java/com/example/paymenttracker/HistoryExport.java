@@ -0,0 +1,211 @@
+package com.example.paymenttracker;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * One export of the message history to CSV or JSON Lines: which messages
+ * (a date range and statuses) and how to write each one.
+ *
+ * MessageStore.export reads the rows a chunk at a time and hands them to
+ * {@link #write} one by one through a single reused {@link Row}, so neither
+ * side holds more than a chunk however long the history is. Writers should
+ * be buffered with BUFFER_CHARS.
+ *
+ * cancel() may be called from any thread; the export stops at the next row.
+ */
+final class HistoryExport {
+
+    static final int BUFFER_CHARS = 64 * 1024;
+
+    enum Format {
+        CSV("text/csv", "csv"),
+        JSONL("application/x-ndjson", "jsonl");
+
+        final String mimeType;
+        final String extension;
+
+        Format(String mimeType, String extension) {
+            this.mimeType = mimeType;
+            this.extension = extension;
+        }
+    }
+
+    private static final String[] COLUMNS = {"id", "received_at", "sender", "status", "amount", "upi_ref", "vpa",
+            "bank", "paid_at", "body"};
+
+    final Format format;
+    // Inclusive start, exclusive end; 0 and Long.MAX_VALUE when unbounded.
+    final long fromMillis;
+    final long toMillis;
+    // Status labels as stored; empty for all.
+    final Set<String> statuses;
+
+    private final SimpleDateFormat dateFormat;
+    private volatile boolean cancelled;
+
+    HistoryExport(Format format, long fromMillis, long toMillis, Set<String> statuses, TimeZone zone) {
+        this.format = format;
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.statuses = Collections.unmodifiableSet(new LinkedHashSet<>(statuses));
+        this.dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX", Locale.ROOT);
+        this.dateFormat.setTimeZone(zone);
+    }
+
+    /**
+     * Builds an export from the dialog's fields. from and to take any day
+     * the search box understands ("today", "2025-10-01", "1/10/25"), both
+     * inclusive; statuses are a comma separated list of labels or enum names.
+     * What cannot be read leaves that side unfiltered.
+     */
+    static HistoryExport fromSettings(Format format, String from, String to, String statuses, long nowMillis, TimeZone zone) {
+        long fromMillis = from == null || from.trim().isEmpty() ? 0L : SearchQuery.parse(from, nowMillis, zone).fromMillis;
+        long toMillis = to == null || to.trim().isEmpty() ? Long.MAX_VALUE : SearchQuery.parse(to, nowMillis, zone).toMillis;
+        Set<String> labels = new LinkedHashSet<>();
+        if (statuses != null) {
+            for (String part : statuses.split(",")) {
+                Message.Status status = status(part.trim());
+                if (status != null) labels.add(status.label);
+            }
+        }
+        return new HistoryExport(format, fromMillis, toMillis, labels, zone);
+    }
+
+    private static Message.Status status(String name) {
+        if (name.isEmpty()) return null;
+        try {
+            return Message.Status.valueOf(name.toUpperCase(Locale.ROOT).replace(' ', '_').replace("!", ""));
+        } catch (IllegalArgumentException e) {
+            Message.Status status = Message.Status.of(name);
+            return status != Message.Status.UNKNOWN ? status : null;
+        }
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** One message as MessageStore reads it; reused from row to row. */
+    static final class Row {
+        long id;
+        long timestamp;
+        String sender;
+        String status;
+        long amountPaise = PaymentDetails.NO_AMOUNT;
+        String upiRefId;
+        String senderVpa;
+        String bank;
+        long paidAtMillis;
+        String body;
+    }
+
+    void writeHeader(Writer out) throws IOException {
+        if (format != Format.CSV) return;
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) out.write(',');
+            out.write(COLUMNS[i]);
+        }
+        out.write("\r\n");
+    }
+
+    void write(Row row, Writer out) throws IOException {
+        String[] values = {
+                String.valueOf(row.id),
+                dateFormat.format(new Date(row.timestamp)),
+                row.sender,
+                row.status,
+                row.amountPaise != PaymentDetails.NO_AMOUNT ? rupees(row.amountPaise) : null,
+                row.upiRefId,
+                row.senderVpa,
+                row.bank,
+                row.paidAtMillis != 0L ? dateFormat.format(new Date(row.paidAtMillis)) : null,
+                row.body};
+        if (format == Format.CSV) {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) out.write(',');
+                writeCsv(values[i], out);
+            }
+            out.write("\r\n");
+        } else {
+            out.write('{');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) out.write(',');
+                writeJsonString(COLUMNS[i], out);
+                out.write(':');
+                if (values[i] == null) {
+                    out.write("null");
+                } else if (i == 0 || i == 4) {
+                    // id and amount are numbers
+                    out.write(values[i]);
+                } else {
+                    writeJsonString(values[i], out);
+                }
+            }
+            out.write("}\n");
+        }
+    }
+
+    // Whole rupees and paise, with no rounding: 149900 is "1499.00".
+    static String rupees(long paise) {
+        long rest = paise % 100;
+        return (paise / 100) + (rest < 10 ? ".0" : ".") + rest;
+    }
+
+    // RFC 4180 quoting. A field a spreadsheet would take for a formula gets a
+    // leading quote mark, as SMS text is not ours to trust.
+    static void writeCsv(String value, Writer out) throws IOException {
+        if (value == null || value.isEmpty()) return;
+        char first = value.charAt(0);
+        boolean formula = first == '=' || first == '+' || first == '-' || first == '@' || first == '\t' || first == '\r';
+        boolean quote = formula;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        if (formula) out.write('\'');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') out.write('"');
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    static void writeJsonString(String value, Writer out) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        out.write(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.paymenttracker;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * The HTTP clients every forwarder sends through.
+ *
+ * There is one connection pool for the whole process, so a payment reuses
+ * the connection (and TLS session) the last one opened to the same host
+ * instead of paying DNS, TCP and TLS again. Telegram and most webhook hosts
+ * speak HTTP/2, where concurrent sends share one connection.
+ *
+ * Each {@link Destination} gets its own timeouts on top of the shared pool,
+ * and its own delivery timings: how long sends take on a new connection and
+ * on a reused one, and how much of that was the handshake. Failed sends are
+ * only counted, since they end at whatever step failed. Every send is a
+ * blocking execute() on an outbox lane or a test-send thread, so the
+ * dispatcher, which only limits enqueue()d calls, is left at its defaults.
+ */
+final class HttpClients {
+
+    static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    // Idle connections kept, and for how long. A few hosts at most.
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    enum Destination {
+        // Anyone's server, maybe small or far away, and a batch of up to
+        // WebhookBatching.MAX_SIZE payments can take it a while to store.
+        WEBHOOK(10, 30, 60),
+        // One well-connected API answering small requests quickly; a send
+        // that takes longer is better retried than waited on.
+        TELEGRAM(5, 10, 15);
+
+        final int connectSeconds;
+        final int readSeconds;
+        // The whole send, including retries and redirects.
+        final int callSeconds;
+
+        Destination(int connectSeconds, int readSeconds, int callSeconds) {
+            this.connectSeconds = connectSeconds;
+            this.readSeconds = readSeconds;
+            this.callSeconds = callSeconds;
+        }
+    }
+
+    // Per destination, in this order.
+    private static final int CALLS = 0;
+    private static final int FAILED = 1;
+    private static final int NEW_CONNECTIONS = 2;
+    private static final int NEW_CONNECTION_NANOS = 3;
+    private static final int REUSED = 4;
+    private static final int REUSED_NANOS = 5;
+    private static final int HANDSHAKE_NANOS = 6;
+    private static final int FIELDS = 7;
+    private static final AtomicLongArray TIMINGS = new AtomicLongArray(Destination.values().length * FIELDS);
+
+    private static OkHttpClient shared;
+    private static final Map<Destination, OkHttpClient> CLIENTS = new EnumMap<>(Destination.class);
+
+    private HttpClients() {
+    }
+
+    static synchronized OkHttpClient get(Destination destination) {
+        OkHttpClient client = CLIENTS.get(destination);
+        if (client == null) {
+            client = shared().newBuilder()
+                    .connectTimeout(destination.connectSeconds, TimeUnit.SECONDS)
+                    .readTimeout(destination.readSeconds, TimeUnit.SECONDS)
+                    .writeTimeout(destination.readSeconds, TimeUnit.SECONDS)
+                    .callTimeout(destination.callSeconds, TimeUnit.SECONDS)
+                    .eventListenerFactory(call -> new Timing(destination))
+                    .build();
+            CLIENTS.put(destination, client);
+        }
+        return client;
+    }
+
+    // newBuilder() on this shares its pool.
+    private static OkHttpClient shared() {
+        if (shared == null) {
+            shared = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .build();
+        }
+        return shared;
+    }
+
+    /** Delivery timings so far for one destination. */
+    static final class Stats {
+        final long calls;
+        final long failed;
+        // Sends that went through, by the connection they went over.
+        final long newConnections;
+        final long reused;
+        // Mean milliseconds per send; 0 when there were none of that kind.
+        final long newConnectionMillis;
+        final long reusedMillis;
+        final long handshakeMillis;
+
+        Stats(long calls, long failed, long newConnections, long newConnectionNanos, long reused, long reusedNanos,
+              long handshakeNanos) {
+            this.calls = calls;
+            this.failed = failed;
+            this.newConnections = newConnections;
+            this.reused = reused;
+            this.newConnectionMillis = newConnections > 0 ? newConnectionNanos / newConnections / 1_000_000 : 0;
+            this.reusedMillis = reused > 0 ? reusedNanos / reused / 1_000_000 : 0;
+            this.handshakeMillis = newConnections > 0 ? handshakeNanos / newConnections / 1_000_000 : 0;
+        }
+    }
+
+    static Stats stats(Destination destination) {
+        int base = destination.ordinal() * FIELDS;
+        return new Stats(TIMINGS.get(base + CALLS), TIMINGS.get(base + FAILED), TIMINGS.get(base + NEW_CONNECTIONS),
+                TIMINGS.get(base + NEW_CONNECTION_NANOS), TIMINGS.get(base + REUSED), TIMINGS.get(base + REUSED_NANOS),
+                TIMINGS.get(base + HANDSHAKE_NANOS));
+    }
+
+    // One per call. A call that had to connect counts as a new connection,
+    // with DNS through the end of TLS as its handshake; one that was handed a
+    // pooled connection without connecting counts as reused.
+    private static final class Timing extends EventListener {
+        private final int base;
+        private long callStart;
+        private long handshakeStart;
+        private long handshakeNanos;
+        private boolean connected;
+        private boolean acquired;
+
+        Timing(Destination destination) {
+            this.base = destination.ordinal() * FIELDS;
+        }
+
+        @Override
+        public void callStart(@NonNull Call call) {
+            callStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+            if (handshakeStart == 0L) handshakeStart = System.nanoTime();
+        }
+
+        @Override
+        public void connectStart(@NonNull Call call, @NonNull InetSocketAddress address, @NonNull Proxy proxy) {
+            connected = true;
+            if (handshakeStart == 0L) handshakeStart = System.nanoTime();
+        }
+
+        @Override
+        public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress address, @NonNull Proxy proxy, Protocol protocol) {
+            handshakeNanos += System.nanoTime() - handshakeStart;
+            handshakeStart = 0L;
+        }
+
+        @Override
+        public void connectionAcquired(@NonNull Call call, @NonNull Connection connection) {
+            acquired = true;
+        }
+
+        @Override
+        public void callEnd(@NonNull Call call) {
+            record(false);
+        }
+
+        @Override
+        public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+            record(true);
+        }
+
+        private void record(boolean failed) {
+            long nanos = System.nanoTime() - callStart;
+            TIMINGS.incrementAndGet(base + CALLS);
+            if (failed) {
+                TIMINGS.incrementAndGet(base + FAILED);
+            } else if (connected) {
+                TIMINGS.incrementAndGet(base + NEW_CONNECTIONS);
+                TIMINGS.addAndGet(base + NEW_CONNECTION_NANOS, nanos);
+                TIMINGS.addAndGet(base + HANDSHAKE_NANOS, handshakeNanos);
+            } else if (acquired) {
+                TIMINGS.incrementAndGet(base + REUSED);
+                TIMINGS.addAndGet(base + REUSED_NANOS, nanos);
+            }
+        }
+    }
+}
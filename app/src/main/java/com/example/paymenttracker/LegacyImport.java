@@ -0,0 +1,149 @@
+package com.example.paymenttracker;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the history the app used to keep under {@link MainActivity#MESSAGES}
+ * in SharedPreferences, a few entries at a time, newest first.
+ *
+ * Two formats are understood: a JSON array of {sender, body, status,
+ * timestamp, reason} objects, and before that a flat
+ * "sender|||body|||status|||timestamp|||sender|||..." string. Neither is
+ * parsed whole: each call to next() reads only the entries it returns, so
+ * MessageStore can import in bounded chunks and resume from a position.
+ *
+ * Entries that cannot be read are skipped but still counted, so positions
+ * stay the same from one run to the next. A JSON array that is cut short is
+ * read up to the damage.
+ */
+final class LegacyImport {
+
+    private static final String SEPARATOR = "|||";
+
+    /** One old message and its place in the old history (0 is the newest). */
+    static final class Entry {
+        final int index;
+        final Message message;
+        final String reason;
+
+        Entry(int index, Message message, String reason) {
+            this.index = index;
+            this.message = message;
+            this.reason = reason;
+        }
+    }
+
+    private final String flat;
+    private final JSONTokener json;
+    private int flatPosition;
+    private int position;
+    private boolean finished;
+    // Entries read but not returned during the current next() call.
+    private int skipped;
+
+    LegacyImport(String stored) {
+        stored = stored != null ? stored.trim() : "";
+        if (stored.startsWith("[")) {
+            flat = null;
+            json = new JSONTokener(stored);
+            try {
+                json.nextClean(); // '['
+                if (json.nextClean() == ']') {
+                    finished = true;
+                } else {
+                    json.back();
+                }
+            } catch (JSONException e) {
+                finished = true;
+            }
+        } else {
+            flat = stored;
+            json = null;
+            finished = stored.isEmpty();
+        }
+    }
+
+    /** How many entries have been read, readable or not. */
+    int position() {
+        return position;
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * The row id an entry gets in MessageStore. Old messages take negative
+     * ids, newest closest to zero, so they sort below every message saved
+     * since and keep their order whichever of them is imported first.
+     */
+    static long rowId(int index) {
+        return -1L - index;
+    }
+
+    /** Reads up to max more entries; fewer once the history runs out. */
+    List<Entry> next(int max) {
+        List<Entry> out = new ArrayList<>(Math.min(max, 512));
+        while (!finished && out.size() + skipped < max) {
+            Entry e = json != null ? nextJson() : nextFlat();
+            if (e != null) out.add(e);
+        }
+        skipped = 0;
+        return out;
+    }
+
+    private Entry nextJson() {
+        Object value;
+        try {
+            value = json.nextValue();
+            char c = json.nextClean();
+            if (c == ']') {
+                finished = true;
+            } else if (c != ',') {
+                throw json.syntaxError("Expected , or ]");
+            }
+        } catch (JSONException e) {
+            finished = true;
+            return null;
+        }
+        int index = position++;
+        if (!(value instanceof JSONObject)) {
+            skipped++;
+            return null;
+        }
+        JSONObject o = (JSONObject) value;
+        Message m = new Message(o.optString("sender", "UNKNOWN"), o.optString("body", ""),
+                Message.Status.of(o.optString("status", "UNKNOWN")), timestamp(o.optString("timestamp", null)));
+        return new Entry(index, m, o.isNull("reason") ? null : o.optString("reason", null));
+    }
+
+    private Entry nextFlat() {
+        String[] fields = new String[4];
+        int at = flatPosition;
+        for (int i = 0; i < fields.length; i++) {
+            int end = flat.indexOf(SEPARATOR, at);
+            if (end < 0) {
+                if (i < fields.length - 1) {
+                    // A trailing partial entry is dropped, as before.
+                    finished = true;
+                    return null;
+                }
+                end = flat.length();
+            }
+            fields[i] = flat.substring(at, end);
+            at = Math.min(end + SEPARATOR.length(), flat.length());
+        }
+        flatPosition = at;
+        if (flatPosition >= flat.length()) finished = true;
+        return new Entry(position++, new Message(fields[0], fields[1], Message.Status.of(fields[2]), timestamp(fields[3])), null);
+    }
+
+    private static long timestamp(String timestamp) {
+        return timestamp == null ? System.currentTimeMillis() : MessageCodec.parseLong(timestamp, 0L);
+    }
+}
@@ -19,17 +19,24 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.PowerManager;
+import android.provider.DocumentsContract;
 import android.provider.Settings;
+import android.text.Editable;
 import android.text.Html;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.text.format.DateUtils;
 import android.text.method.LinkMovementMethod;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.Window;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.ImageView;
+import android.widget.RadioGroup;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -42,16 +49,28 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.annotation.NonNull;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -63,6 +82,19 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
     private boolean isReceiverRegistered = false;
     private List<Message> messagesList = new ArrayList<>();
     private MessageAdapter messageAdapter;
+    private MessagePager messagePager;
+    // Old messages imported so far while an import runs, else -1.
+    private int importedSoFar = -1;
+    private final ExecutorService background = Executors.newSingleThreadExecutor();
+    private final ExecutorService exporter = Executors.newSingleThreadExecutor();
+    // The export waiting for the user to pick a file, and the one running.
+    private HistoryExport pendingExport;
+    private HistoryExport runningExport;
+    private EditText searchEditText;
+    // The search runs once typing pauses for this long.
+    private static final long SEARCH_DEBOUNCE_MILLIS = 300;
+    private final Runnable runSearch = () -> messagePager.setQuery(
+            SearchQuery.parse(searchEditText.getText().toString(), System.currentTimeMillis(), TimeZone.getDefault()));
     private RecyclerView recyclerViewMessages;
     private TextView statusTextView;
     private TextView emptyStateTextView;
@@ -73,9 +105,19 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
     public static final String SHARED_PREFS = "sharedPrefs";
     public static final String WEBHOOK_URL = "webhookUrl";
     public static final String SECRET_KEY = "secretKey";
+    public static final String EXTRA_WEBHOOKS = "extraWebhooks";
+    public static final String EXTRA_TELEGRAM_CHATS = "extraTelegramChats";
+    public static final String WEBHOOK_BATCH_SIZE = "webhookBatchSize";
+    public static final String WEBHOOK_BATCH_LINGER_SECONDS = "webhookBatchLingerSeconds";
+    public static final String WEBHOOK_GZIP = "webhookGzip";
     public static final String TELEGRAM_BOT_TOKEN = "telegramBotToken";
     public static final String TELEGRAM_CHAT_ID = "telegramChatId";
     public static final String MESSAGES = "messages";
+    public static final String SENDER_ALLOWLIST = "senderAllowlist";
+    public static final String SENDER_DENYLIST = "senderDenylist";
+    public static final String RETENTION_MAX_COUNT = "retentionMaxCount";
+    public static final String RETENTION_MAX_AGE_DAYS = "retentionMaxAgeDays";
+    public static final String RETENTION_STATUS_AGES = "retentionStatusAges";
 
     private final ActivityResultLauncher<String[]> requestPermissionsLauncher =
             registerForActivityResult(new ActivityResultContracts.RequestMultiplePermissions(), permissions -> {
@@ -97,21 +139,16 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
                 }
             });
 
+    private final ActivityResultLauncher<String> csvDocumentLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument(HistoryExport.Format.CSV.mimeType), this::onExportDocumentChosen);
+    private final ActivityResultLauncher<String> jsonlDocumentLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument(HistoryExport.Format.JSONL.mimeType), this::onExportDocumentChosen);
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        SharedPreferences sharedPreferences = getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE);
-        try {
-            sharedPreferences.getString(MESSAGES, "");
-            Log.d("MainActivity", "Reading from new data format. No action needed.");
-        } catch (ClassCastException e) {
-            sharedPreferences.edit().remove(MESSAGES).apply();
-            Log.d("MainActivity", "Detected old data format and cleared messages from SharedPreferences.");
-        }
-
-
         ImageButton telegramButton = findViewById(R.id.telegramButton);
         telegramButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -135,10 +172,37 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
         emptyStateTextView = findViewById(R.id.emptyStateText);
         telegramSender = new TelegramSender(); // Instantiate TelegramSender
 
-
-        loadMessagesFromPrefs();
         messageAdapter = new MessageAdapter(messagesList);
         recyclerViewMessages.setAdapter(messageAdapter);
+        messageAdapter.setBodyLoader((message, onLoaded) -> background.execute(() -> {
+            try {
+                MessageStore.get(this).loadFullContent(message);
+            } catch (RuntimeException e) {
+                Log.e("MainActivity", "Failed to load message body", e);
+            }
+            runOnUiThread(onLoaded);
+        }));
+        messagePager = new MessagePager(MessageStore.get(this), messagesList, messageAdapter, this::showEmptyState);
+        recyclerViewMessages.addOnScrollListener(messagePager);
+        MessageStore.get(this).setImportListener((imported, finished) ->
+                mainHandler.post(() -> onImportProgress(imported, finished)));
+
+        searchEditText = findViewById(R.id.searchEditText);
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mainHandler.removeCallbacks(runSearch);
+                mainHandler.postDelayed(runSearch, SEARCH_DEBOUNCE_MILLIS);
+            }
+        });
 
         updateStatusIconColor();
         checkAndRequestPermissions();
@@ -160,8 +224,18 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
 
         final EditText dialogWebhookUrlEditText = dialogView.findViewById(R.id.dialogWebhookUrlEditText);
         final EditText dialogSecretKeyEditText = dialogView.findViewById(R.id.dialogSecretKeyEditText);
+        final EditText dialogExtraWebhooksEditText = dialogView.findViewById(R.id.dialogExtraWebhooksEditText);
+        final EditText dialogExtraTelegramChatsEditText = dialogView.findViewById(R.id.dialogExtraTelegramChatsEditText);
+        final EditText dialogWebhookBatchSizeEditText = dialogView.findViewById(R.id.dialogWebhookBatchSizeEditText);
+        final EditText dialogWebhookLingerEditText = dialogView.findViewById(R.id.dialogWebhookLingerEditText);
+        final CheckBox dialogWebhookGzipCheckBox = dialogView.findViewById(R.id.dialogWebhookGzipCheckBox);
         final EditText dialogTelegramBotTokenEditText = dialogView.findViewById(R.id.dialogTelegramBotTokenEditText);
         final EditText dialogTelegramChatIdEditText = dialogView.findViewById(R.id.dialogTelegramChatIdEditText);
+        final EditText dialogSenderAllowlistEditText = dialogView.findViewById(R.id.dialogSenderAllowlistEditText);
+        final EditText dialogSenderDenylistEditText = dialogView.findViewById(R.id.dialogSenderDenylistEditText);
+        final EditText dialogRetentionMaxCountEditText = dialogView.findViewById(R.id.dialogRetentionMaxCountEditText);
+        final EditText dialogRetentionMaxAgeEditText = dialogView.findViewById(R.id.dialogRetentionMaxAgeEditText);
+        final EditText dialogRetentionStatusAgesEditText = dialogView.findViewById(R.id.dialogRetentionStatusAgesEditText);
 
         Button dialogSaveButton = dialogView.findViewById(R.id.dialogSaveButton);
         Button dialogTestWebhookButton = dialogView.findViewById(R.id.dialogTestWebhookButton);
@@ -169,19 +243,41 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
         Button dialogCancelButton = dialogView.findViewById(R.id.dialogCancelButton);
         ImageButton webhookInfoButton = dialogView.findViewById(R.id.webhookInfoButton);
         ImageButton telegramInfoButton = dialogView.findViewById(R.id.telegramInfoButton);
+        ImageButton senderFilterInfoButton = dialogView.findViewById(R.id.senderFilterInfoButton);
+        ImageButton retentionInfoButton = dialogView.findViewById(R.id.retentionInfoButton);
 
         webhookInfoButton.setOnClickListener(v -> {
-            showThemedInfoDialog("Webhook Settings Info", "A webhook is a way to send real-time data from your app to an external URL. Enter a URL and an optional secret key for security.");
+            showThemedInfoDialog("Webhook Settings Info", "A webhook is a way to send real-time data from your app to an external URL. Enter a URL and an optional secret key for security. More webhooks go one per line, as the URL followed by its own secret key if it has one; every payment is sent to each of them.\n\nWith a batch size over 1, payments are collected for up to the wait time (or until the batch is full) and sent as one JSON array, each with a delivery_id. A 2xx reply accepts them all unless it lists some ids under \"failed\", e.g. {\"failed\": [12, 15]}; only those are retried.");
         });
 
         telegramInfoButton.setOnClickListener(v -> {
-            showThemedInfoDialog("Telegram Settings Info", "A Telegram bot token and chat ID are required to forward messages to a Telegram chat or channel. You can get these by creating a bot on Telegram.");
+            showThemedInfoDialog("Telegram Settings Info", "A Telegram bot token and chat ID are required to forward messages to a Telegram chat or channel. You can get these by creating a bot on Telegram. The same bot can also send to more chats: list their IDs, comma separated.");
+        });
+
+        senderFilterInfoButton.setOnClickListener(v -> {
+            showThemedInfoDialog("Sender Filter Info", "Comma separated sender IDs, such as HDFCBK or ICICIT. The operator prefix (VM-, AX-, ...) is ignored and an entry also covers IDs that start with it. When allowed senders are set, SMS from anyone else are ignored; blocked senders are always ignored.");
+        });
+
+        retentionInfoButton.setOnClickListener(v -> {
+            showThemedInfoDialog("History Retention Info", "Limits on the message history kept on this phone. Leave a field empty for no limit. Per-status limits are written as STATUS:days, for example IGNORED:7, SUBMITTED:365. Old messages are removed in the background about once a day, and right after saving.");
         });
 
         loadSettingsForDialog(dialogWebhookUrlEditText, WEBHOOK_URL);
         loadSettingsForDialog(dialogSecretKeyEditText, SECRET_KEY);
+        loadSettingsForDialog(dialogExtraWebhooksEditText, EXTRA_WEBHOOKS);
+        loadSettingsForDialog(dialogExtraTelegramChatsEditText, EXTRA_TELEGRAM_CHATS);
+        loadSettingsForDialog(dialogWebhookBatchSizeEditText, WEBHOOK_BATCH_SIZE);
+        loadSettingsForDialog(dialogWebhookLingerEditText, WEBHOOK_BATCH_LINGER_SECONDS);
+        dialogWebhookGzipCheckBox.setChecked(getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE)
+                .getBoolean(WEBHOOK_GZIP, false));
         loadSettingsForDialog(dialogTelegramBotTokenEditText, TELEGRAM_BOT_TOKEN);
         loadSettingsForDialog(dialogTelegramChatIdEditText, TELEGRAM_CHAT_ID);
+        loadSettingsForDialog(dialogSenderAllowlistEditText, SENDER_ALLOWLIST);
+        loadSettingsForDialog(dialogSenderDenylistEditText, SENDER_DENYLIST);
+        loadSettingsForDialog(dialogRetentionMaxCountEditText, RETENTION_MAX_COUNT);
+        loadSettingsForDialog(dialogRetentionMaxAgeEditText, RETENTION_MAX_AGE_DAYS);
+        dialogRetentionStatusAgesEditText.setText(getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE)
+                .getString(RETENTION_STATUS_AGES, RetentionPolicy.DEFAULT_STATUS_AGES));
 
         final AlertDialog dialog = builder.create();
         Window window = dialog.getWindow();
@@ -192,14 +288,35 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
         dialogSaveButton.setOnClickListener(dv_save -> {
             String webhookUrl = dialogWebhookUrlEditText.getText().toString().trim();
             String secretKey = dialogSecretKeyEditText.getText().toString().trim();
+            String extraWebhooks = dialogExtraWebhooksEditText.getText().toString().trim();
+            String extraChats = dialogExtraTelegramChatsEditText.getText().toString().trim();
+            String batchSize = dialogWebhookBatchSizeEditText.getText().toString().trim();
+            String batchLinger = dialogWebhookLingerEditText.getText().toString().trim();
             String botToken = dialogTelegramBotTokenEditText.getText().toString().trim();
             String chatId = dialogTelegramChatIdEditText.getText().toString().trim();
+            String allowedSenders = dialogSenderAllowlistEditText.getText().toString().trim();
+            String deniedSenders = dialogSenderDenylistEditText.getText().toString().trim();
+            String retentionMaxCount = dialogRetentionMaxCountEditText.getText().toString().trim();
+            String retentionMaxAge = dialogRetentionMaxAgeEditText.getText().toString().trim();
+            String retentionStatusAges = dialogRetentionStatusAgesEditText.getText().toString().trim();
 
             saveSettingsFromDialog(WEBHOOK_URL, webhookUrl);
             saveSettingsFromDialog(SECRET_KEY, secretKey);
+            saveSettingsFromDialog(EXTRA_WEBHOOKS, extraWebhooks);
+            saveSettingsFromDialog(EXTRA_TELEGRAM_CHATS, extraChats);
+            saveSettingsFromDialog(WEBHOOK_BATCH_SIZE, batchSize);
+            saveSettingsFromDialog(WEBHOOK_BATCH_LINGER_SECONDS, batchLinger);
+            getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE).edit()
+                    .putBoolean(WEBHOOK_GZIP, dialogWebhookGzipCheckBox.isChecked()).apply();
             saveSettingsFromDialog(TELEGRAM_BOT_TOKEN, botToken);
             saveSettingsFromDialog(TELEGRAM_CHAT_ID, chatId);
-
+            saveSettingsFromDialog(SENDER_ALLOWLIST, allowedSenders);
+            saveSettingsFromDialog(SENDER_DENYLIST, deniedSenders);
+            saveSettingsFromDialog(RETENTION_MAX_COUNT, retentionMaxCount);
+            saveSettingsFromDialog(RETENTION_MAX_AGE_DAYS, retentionMaxAge);
+            saveSettingsFromDialog(RETENTION_STATUS_AGES, retentionStatusAges);
+            MessageStore.get(this).compact(MessageStore.retentionPolicy(
+                    getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE)), System.currentTimeMillis());
 
             Toast.makeText(MainActivity.this, "Settings saved!", Toast.LENGTH_SHORT).show();
 
@@ -235,15 +352,11 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
     private void showDetailedStatusDialog() {
         // Read current settings and permissions
         SharedPreferences sharedPreferences = getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE);
-        String webhookUrl = sharedPreferences.getString(WEBHOOK_URL, "").trim();
-        String telegramBotToken = sharedPreferences.getString(TELEGRAM_BOT_TOKEN, "").trim();
-        String telegramChatId = sharedPreferences.getString(TELEGRAM_CHAT_ID, "").trim();
+        List<Forwarder> forwarders = Forwarders.fromSettings(sharedPreferences);
 
         boolean isPermissionGranted = ContextCompat.checkSelfPermission(this, Manifest.permission.RECEIVE_SMS) == PackageManager.PERMISSION_GRANTED;
         boolean isNotificationPermissionGranted = Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU ||
                 ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED;
-        boolean isWebhookConfigured = !webhookUrl.isEmpty();
-        boolean isTelegramConfigured = !telegramBotToken.isEmpty() && !telegramChatId.isEmpty();
 
         // Build message content
         StringBuilder messageBuilder = new StringBuilder();
@@ -255,20 +368,50 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
         }
 
         messageBuilder.append("<br><b>Forwarding Settings:</b><br>");
-        if (isWebhookConfigured) {
-            messageBuilder.append("- Webhook is ON.<br>");
-        } else {
-            messageBuilder.append("- Webhook is OFF. URL not configured.<br>");
+        for (Forwarder forwarder : forwarders) {
+            messageBuilder.append("- ").append(TextUtils.htmlEncode(forwarder.label())).append(" is ON.<br>");
         }
 
-        if (isTelegramConfigured) {
-            messageBuilder.append("- Telegram is ON.<br>");
-        } else {
-            messageBuilder.append("- Telegram is OFF. Bot token or Chat ID not configured.<br>");
+        if (forwarders.isEmpty()) {
+            messageBuilder.append("No forwarding endpoints are configured. Messages will be logged locally but not forwarded.");
         }
 
-        if (!isWebhookConfigured && !isTelegramConfigured) {
-            messageBuilder.append("<br>No forwarding endpoints are configured. Messages will be logged locally but not forwarded.");
+        messageBuilder.append("<br><br><b>Pre-filter:</b><br>");
+        for (SmsPreFilter.Reason reason : SmsPreFilter.Reason.values()) {
+            messageBuilder.append("- ").append(reason.name()).append(": ")
+                    .append(SmsPreFilter.rejectedCount(reason)).append("<br>");
+        }
+
+        messageBuilder.append("<br><b>Delivery:</b><br>");
+        Outbox outbox = Outbox.get(this);
+        long now = System.currentTimeMillis();
+        appendDeliveryStats(messageBuilder, "Webhooks", HttpClients.stats(HttpClients.Destination.WEBHOOK));
+        appendDeliveryStats(messageBuilder, "Telegram", HttpClients.stats(HttpClients.Destination.TELEGRAM));
+        Set<String> shown = new HashSet<>();
+        for (Forwarder forwarder : forwarders) {
+            long wait = forwarder instanceof TelegramForwarder ? ((TelegramForwarder) forwarder).waitMillis(now) : 0L;
+            appendQueue(messageBuilder, forwarder.label(), outbox.depth(forwarder.id()), wait, now);
+            shown.add(forwarder.id());
+        }
+        for (String id : outbox.queuedForwarderIds()) {
+            if (!shown.contains(id)) appendQueue(messageBuilder, id + " (removed)", outbox.depth(id), 0L, now);
+        }
+
+        long lastCompaction = sharedPreferences.getLong(MessageStore.LAST_COMPACTION_AT, 0L);
+        messageBuilder.append("<br><b>History:</b><br>");
+        if (importedSoFar >= 0 || MessageStore.get(this).isImporting()) {
+            messageBuilder.append("- Importing old history: ").append(Math.max(0, importedSoFar))
+                    .append(" messages so far.<br>");
+        }
+        if (lastCompaction == 0L) {
+            messageBuilder.append("- Not compacted yet.<br>");
+        } else {
+            messageBuilder.append("- Last compaction ")
+                    .append(DateUtils.getRelativeTimeSpanString(lastCompaction))
+                    .append(": ").append(sharedPreferences.getLong(MessageStore.LAST_COMPACTION_ROWS, 0L))
+                    .append(" messages removed, ")
+                    .append(sharedPreferences.getLong(MessageStore.LAST_COMPACTION_BYTES, 0L) / 1024)
+                    .append(" KB reclaimed.<br>");
         }
 
         // Use a themed dialog for consistency
@@ -316,6 +459,36 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
         statusInfoIcon.setColorFilter(ContextCompat.getColor(this, colorRes));
     }
 
+    // Since the app started. Sends on a reused connection skip the handshake.
+    private static void appendDeliveryStats(StringBuilder html, String name, HttpClients.Stats stats) {
+        html.append("- ").append(name).append(": ");
+        if (stats.calls == 0) {
+            html.append("nothing sent yet.<br>");
+            return;
+        }
+        html.append(stats.calls).append(" sent, ").append(stats.failed).append(" failed. ")
+                .append(stats.newConnections).append(" on a new connection, avg ").append(stats.newConnectionMillis)
+                .append(" ms (handshake ").append(stats.handshakeMillis).append(" ms); ")
+                .append(stats.reused).append(" reused, avg ").append(stats.reusedMillis).append(" ms.<br>");
+    }
+
+    // What the outbox still holds for one forwarder; nothing when it is empty.
+    private static void appendQueue(StringBuilder html, String label, Outbox.Depth queue, long waitMillis, long now) {
+        if (queue.pending == 0 && queue.dead == 0 && waitMillis == 0) return;
+        html.append("- ").append(TextUtils.htmlEncode(label)).append(":");
+        if (queue.pending > 0) {
+            html.append(" ").append(queue.pending).append(" waiting, oldest queued ")
+                    .append(Math.max(0, (now - queue.oldestPendingAt) / 60_000)).append(" min ago.");
+        }
+        if (waitMillis > 0) {
+            html.append(" Rate limited, next send in ").append((waitMillis + 999) / 1000).append(" s.");
+        }
+        if (queue.dead > 0) {
+            html.append(" Gave up on ").append(queue.dead).append(".");
+        }
+        html.append("<br>");
+    }
+
     private void showMenuDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this, R.style.AlertDialog_App);
         LayoutInflater inflater = getLayoutInflater();
@@ -323,6 +496,8 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
         builder.setView(dialogView);
 
         // Get references to the TextViews
+        TextView summaryItem = dialogView.findViewById(R.id.summaryItem);
+        TextView exportItem = dialogView.findViewById(R.id.exportItem);
         TextView aboutItem = dialogView.findViewById(R.id.aboutItem);
         TextView contactItem = dialogView.findViewById(R.id.contactItem);
         TextView termsItem = dialogView.findViewById(R.id.termsItem);
@@ -352,6 +527,20 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
             }
         };
 
+        summaryItem.setOnClickListener(v -> {
+            menuDialog.dismiss();
+            showSummaryDialog();
+        });
+        summaryItem.setOnLongClickListener(v -> {
+            menuDialog.dismiss();
+            Toast.makeText(this, "Recounting payment summary...", Toast.LENGTH_SHORT).show();
+            MessageStore.get(this).rebuildRollups(() -> runOnUiThread(this::showSummaryDialog));
+            return true;
+        });
+        exportItem.setOnClickListener(v -> {
+            menuDialog.dismiss();
+            showExportDialog();
+        });
         aboutItem.setOnClickListener(infoClickListener);
         contactItem.setOnClickListener(infoClickListener);
         termsItem.setOnClickListener(infoClickListener);
@@ -360,6 +549,183 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
         menuDialog.show();
     }
 
+    // Read from the rollups, so it costs the same however long the history is.
+    private void showSummaryDialog() {
+        background.execute(() -> {
+            MessageStore store = MessageStore.get(this);
+            List<MessageStore.Rollup> days = store.rollups(MessageStore.ROLLUP_DAY, 7);
+            List<MessageStore.Rollup> months = store.rollups(MessageStore.ROLLUP_MONTH, 1);
+            List<MessageStore.Rollup> banks = store.rollups(MessageStore.ROLLUP_BANK, 5);
+            List<MessageStore.Rollup> vpas = store.rollups(MessageStore.ROLLUP_VPA, 5);
+
+            // Rollup days and months are IST dates.
+            SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.ROOT);
+            dayFormat.setTimeZone(TimeZone.getTimeZone("Asia/Kolkata"));
+            String today = dayFormat.format(new Date());
+
+            StringBuilder html = new StringBuilder();
+            MessageStore.Rollup todayRollup = !days.isEmpty() && days.get(0).bucket.equals(today) ? days.get(0) : null;
+            MessageStore.Rollup monthRollup = !months.isEmpty() && months.get(0).bucket.equals(today.substring(0, 7)) ? months.get(0) : null;
+            html.append("<b>Today:</b> ").append(describeRollup(todayRollup)).append("<br>");
+            html.append("<b>This month:</b> ").append(describeRollup(monthRollup)).append("<br>");
+
+            html.append("<br><b>Latest days:</b><br>");
+            if (days.isEmpty()) html.append("- No payments yet.<br>");
+            for (MessageStore.Rollup day : days) {
+                html.append("- ").append(day.bucket).append(": ").append(describeRollup(day)).append("<br>");
+            }
+            appendTopRollups(html, "Top banks", banks);
+            appendTopRollups(html, "Top VPAs", vpas);
+            html.append("<br><small>Long-press Payment Summary in the menu to recount.</small>");
+
+            runOnUiThread(() -> {
+                if (!isFinishing()) showThemedInfoDialog("Payment Summary", html.toString());
+            });
+        });
+    }
+
+    private static void appendTopRollups(StringBuilder html, String title, List<MessageStore.Rollup> rollups) {
+        if (rollups.isEmpty()) return;
+        html.append("<br><b>").append(title).append(":</b><br>");
+        for (MessageStore.Rollup rollup : rollups) {
+            String name = rollup.bucket.isEmpty() ? "Unknown" : Html.escapeHtml(rollup.bucket);
+            html.append("- ").append(name).append(": ").append(describeRollup(rollup)).append("<br>");
+        }
+    }
+
+    private static String describeRollup(MessageStore.Rollup rollup) {
+        if (rollup == null) return "no payments";
+        return rollup.count + (rollup.count == 1 ? " payment, " : " payments, ")
+                + String.format(Locale.getDefault(), "₹%,.2f", rollup.totalPaise / 100.0);
+    }
+
+    private void showExportDialog() {
+        AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
+        View dialogView = getLayoutInflater().inflate(R.layout.dialog_export, null);
+        builder.setView(dialogView);
+
+        Button appFolderButton = dialogView.findViewById(R.id.exportAppFolderButton);
+        Button chooseFileButton = dialogView.findViewById(R.id.exportChooseFileButton);
+
+        final AlertDialog dialog = builder.create();
+        Window window = dialog.getWindow();
+        if (window != null) window.setBackgroundDrawable(new ColorDrawable(Color.TRANSPARENT));
+
+        appFolderButton.setOnClickListener(v -> {
+            HistoryExport export = readExportDialog(dialogView);
+            dialog.dismiss();
+            File base = getExternalFilesDir(null);
+            File dir = new File(base != null ? base : getFilesDir(), "exports");
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                Toast.makeText(this, "Could not create " + dir.getPath(), Toast.LENGTH_LONG).show();
+                return;
+            }
+            runExport(export, null, new File(dir, exportFileName(export.format)));
+        });
+        chooseFileButton.setOnClickListener(v -> {
+            pendingExport = readExportDialog(dialogView);
+            dialog.dismiss();
+            (pendingExport.format == HistoryExport.Format.JSONL ? jsonlDocumentLauncher : csvDocumentLauncher)
+                    .launch(exportFileName(pendingExport.format));
+        });
+        dialog.show();
+    }
+
+    private static HistoryExport readExportDialog(View dialogView) {
+        RadioGroup formatGroup = dialogView.findViewById(R.id.exportFormatGroup);
+        EditText fromEditText = dialogView.findViewById(R.id.exportFromEditText);
+        EditText toEditText = dialogView.findViewById(R.id.exportToEditText);
+        EditText statusesEditText = dialogView.findViewById(R.id.exportStatusesEditText);
+        HistoryExport.Format format = formatGroup.getCheckedRadioButtonId() == R.id.exportJsonlRadio
+                ? HistoryExport.Format.JSONL : HistoryExport.Format.CSV;
+        return HistoryExport.fromSettings(format, fromEditText.getText().toString(), toEditText.getText().toString(),
+                statusesEditText.getText().toString(), System.currentTimeMillis(), TimeZone.getDefault());
+    }
+
+    private void onExportDocumentChosen(Uri uri) {
+        HistoryExport export = pendingExport;
+        pendingExport = null;
+        if (uri != null && export != null) runExport(export, uri, null);
+    }
+
+    private static String exportFileName(HistoryExport.Format format) {
+        return "payments-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date()) + "." + format.extension;
+    }
+
+    // Writes to the document at uri, or to file. The rows stream from the
+    // database through a fixed buffer; see MessageStore.export.
+    private void runExport(HistoryExport export, Uri uri, File file) {
+        if (runningExport != null) {
+            Toast.makeText(this, "An export is already running.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        runningExport = export;
+
+        // Progress goes in an info dialog whose button cancels.
+        AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
+        View dialogView = getLayoutInflater().inflate(R.layout.dialog_info_message, null);
+        builder.setView(dialogView);
+        TextView titleTextView = dialogView.findViewById(R.id.dialogTitleTextView);
+        TextView messageTextView = dialogView.findViewById(R.id.dialogMessageTextView);
+        Button cancelButton = dialogView.findViewById(R.id.dialogOkButton);
+        titleTextView.setText("Exporting History");
+        messageTextView.setText("Starting...");
+        cancelButton.setText(R.string.cancel_button_text);
+        final AlertDialog dialog = builder.setCancelable(false).create();
+        Window window = dialog.getWindow();
+        if (window != null) window.setBackgroundDrawable(new ColorDrawable(Color.TRANSPARENT));
+        cancelButton.setOnClickListener(v -> {
+            export.cancel();
+            messageTextView.setText("Cancelling...");
+        });
+        dialog.show();
+
+        String where = file != null ? file.getPath() : "the chosen file";
+        exporter.execute(() -> {
+            long rows = 0;
+            Exception failure = null;
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(openExportStream(uri, file), StandardCharsets.UTF_8),
+                    HistoryExport.BUFFER_CHARS)) {
+                rows = MessageStore.get(this).export(export, out, written ->
+                        mainHandler.post(() -> messageTextView.setText(written + " messages written...")));
+            } catch (IOException | RuntimeException e) {
+                Log.e("MainActivity", "Export failed", e);
+                failure = e;
+            }
+            // Half a file is no use to anyone.
+            if (failure != null || export.isCancelled()) deleteExport(uri, file);
+
+            final String result = failure != null ? "Export failed: " + failure.getMessage()
+                    : export.isCancelled() ? "Export cancelled."
+                    : "Exported " + rows + (rows == 1 ? " message to " : " messages to ") + where + ".";
+            mainHandler.post(() -> {
+                runningExport = null;
+                if (isFinishing() || isDestroyed()) return;
+                dialog.dismiss();
+                Toast.makeText(this, result, Toast.LENGTH_LONG).show();
+            });
+        });
+    }
+
+    private OutputStream openExportStream(Uri uri, File file) throws IOException {
+        if (file != null) return new FileOutputStream(file);
+        OutputStream out = getContentResolver().openOutputStream(uri, "wt");
+        if (out == null) throw new FileNotFoundException("Cannot write to " + uri);
+        return out;
+    }
+
+    private void deleteExport(Uri uri, File file) {
+        try {
+            if (file != null) {
+                if (!file.delete()) Log.w("MainActivity", "Could not delete " + file);
+            } else {
+                DocumentsContract.deleteDocument(getContentResolver(), uri);
+            }
+        } catch (FileNotFoundException | RuntimeException e) {
+            Log.w("MainActivity", "Could not delete the partial export", e);
+        }
+    }
+
     private void showThemedInfoDialog(String title, String message) {
         AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
         LayoutInflater inflater = getLayoutInflater();
@@ -401,7 +767,7 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
     @Override
     protected void onResume() {
         super.onResume();
-        loadMessagesFromPrefs();
+        loadMessages();
         if (!isReceiverRegistered) {
             // Register receiver for new messages
             IntentFilter messageFilter = new IntentFilter("com.example.paymenttracker.NEW_MESSAGE");
@@ -422,28 +788,23 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
                             String sender = intent.getStringExtra("sender");
                             String body = intent.getStringExtra("body");
                             String status = intent.getStringExtra("status");
-                            String timestamp = intent.getStringExtra("timestamp");
-                            if (timestamp == null) timestamp = String.valueOf(System.currentTimeMillis());
-                            if (body == null) body = "";
-                            if (sender == null) sender = "UNKNOWN";
-                            if (status == null) status = "UNKNOWN";
+                            long timestamp = MessageCodec.parseLong(intent.getStringExtra("timestamp"), System.currentTimeMillis());
 
-                            if ("INVALID_FORMAT".equalsIgnoreCase(status) || "INVALID".equalsIgnoreCase(status)) {
-                                status = "IGNORED";
-                            }
-
-                            newMessage = new Message(sender, body, status, timestamp);
+                            newMessage = new Message(sender, body, Message.Status.of(status), timestamp);
                             Log.d("MainActivity", "Constructed Message from extras fallback: " + body);
                         }
 
                         if (newMessage != null) {
                             final Message finalMsg = newMessage;
                             runOnUiThread(() -> {
+                                // Search results only change when the query does.
+                                if (messagePager.isSearching()) return;
                                 messagesList.add(0, finalMsg);
                                 messageAdapter.notifyItemInserted(0);
+                                showEmptyState(false);
                                 recyclerViewMessages.scrollToPosition(0);
                             });
-                            Log.d("MainActivity", "New message added: " + newMessage.content);
+                            Log.d("MainActivity", "New message added from " + newMessage.sender);
                         } else {
                             Log.d("MainActivity", "Received message is null even after fallback!");
                         }
@@ -488,94 +849,34 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
         }
     }
 
-    private void loadMessagesFromPrefs() {
-        SharedPreferences sharedPreferences = getSharedPreferences(SHARED_PREFS, Context.MODE_PRIVATE);
-        String messagesString = sharedPreferences.getString(MESSAGES, "[]");
-        List<Message> loadedMessages = new ArrayList<>();
-
-        if (messagesString != null && !messagesString.isEmpty()) {
-            messagesString = messagesString.trim();
-            if (messagesString.startsWith("[")) {
-                try {
-                    JSONArray arr = new JSONArray(messagesString);
-                    for (int i = 0; i < arr.length(); i++) {
-                        try {
-                            JSONObject o = arr.getJSONObject(i);
-                            String sender = o.optString("sender", "UNKNOWN");
-                            String body = o.optString("body", "");
-                            String status = o.optString("status", "UNKNOWN");
-                            String timestamp = o.optString("timestamp", String.valueOf(System.currentTimeMillis()));
-
-                            if ("INVALID_FORMAT".equalsIgnoreCase(status) || "INVALID".equalsIgnoreCase(status)) {
-                                status = "IGNORED";
-                            }
-
-                            loadedMessages.add(new Message(sender, body, status, timestamp));
-                            Log.d("MainActivity", "Loaded message from JSON: " + body);
-                        } catch (JSONException je) {
-                            Log.w("MainActivity", "Skipping malformed JSON message entry.", je);
-                        }
-                    }
-                } catch (JSONException e) {
-                    Log.w("MainActivity", "Messages string looks like JSON but failed to parse. Clearing it.", e);
-                }
-            } else {
-                Log.d("MainActivity", "Detected old messages format — migrating to JSON storage.");
-                String[] tokens = messagesString.split("\\|\\|\\|");
-                for (int i = 0; i + 3 < tokens.length; i += 4) {
-                    String sender = tokens[i];
-                    String body = tokens[i + 1];
-                    String status = tokens[i + 2];
-                    String timestamp = tokens[i + 3];
-
-                    if ("INVALID_FORMAT".equalsIgnoreCase(status) || "INVALID".equalsIgnoreCase(status)) {
-                        status = "IGNORED";
-                    }
-
-                    loadedMessages.add(new Message(sender, body, status, timestamp));
-                    Log.d("MainActivity", "Migrated message: " + body);
-                }
-
-                try {
-                    JSONArray newArr = new JSONArray();
-                    for (Message m : loadedMessages) {
-                        JSONObject o = new JSONObject();
-                        o.put("sender", m.sender != null ? m.sender : "UNKNOWN");
-                        o.put("body", m.content != null ? m.content : "");
-                        o.put("status", m.status != null ? m.status : "UNKNOWN");
-                        o.put("timestamp", m.timestamp != null ? m.timestamp : String.valueOf(System.currentTimeMillis()));
-                        newArr.put(o);
-                    }
-                    sharedPreferences.edit().putString(MESSAGES, newArr.toString()).apply();
-                    Log.d("MainActivity", "Migration complete — saved messages back as JSON.");
-                } catch (JSONException e) {
-                    Log.e("MainActivity", "Failed to migrate old messages format.", e);
-                }
-            }
-        }
-
-        Collections.sort(loadedMessages, (m1, m2) -> {
-            long t1 = 0, t2 = 0;
-            try { t1 = Long.parseLong(m1.timestamp); } catch (Exception ignored) {}
-            try { t2 = Long.parseLong(m2.timestamp); } catch (Exception ignored) {}
-            return Long.compare(t2, t1);
-        });
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mainHandler.removeCallbacks(runSearch);
+        MessageStore.get(this).setImportListener(null);
+        messagePager.shutdown();
+        if (runningExport != null) runningExport.cancel();
+        exporter.shutdown();
+        background.shutdown();
+    }
 
-        messagesList.clear();
-        messagesList.addAll(loadedMessages);
+    // The list fills in the background; see MessagePager.
+    private void loadMessages() {
+        messagePager.reload();
+    }
 
-        // This is the new logic to show/hide the placeholder
-        if (messagesList.isEmpty()) {
-            recyclerViewMessages.setVisibility(View.GONE);
-            emptyStateTextView.setVisibility(View.VISIBLE);
-        } else {
-            recyclerViewMessages.setVisibility(View.VISIBLE);
-            emptyStateTextView.setVisibility(View.GONE);
-        }
+    // The old history arrives a chunk at a time; show what is in so far.
+    private void onImportProgress(int imported, boolean finished) {
+        importedSoFar = finished ? -1 : imported;
+        if (!messagePager.isSearching()) messagePager.reload();
+    }
 
-        if (messageAdapter != null) messageAdapter.notifyDataSetChanged();
-        Log.d("MainActivity", "Loaded " + messagesList.size() + " messages from prefs and sorted them.");
+    private void showEmptyState(boolean empty) {
+        emptyStateTextView.setText(messagePager.isSearching() ? R.string.search_empty_message : R.string.empty_state_message);
+        recyclerViewMessages.setVisibility(empty ? View.GONE : View.VISIBLE);
+        emptyStateTextView.setVisibility(empty ? View.VISIBLE : View.GONE);
     }
+
     public void checkAndRequestPermissions() {
         List<String> permissionsToRequest = new ArrayList<>();
 
@@ -647,7 +948,7 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
 
     private void testWebhook(String webhookUrl, String secretKey) {
         Thread t = new Thread(() -> {
-            okhttp3.OkHttpClient client = new okhttp3.OkHttpClient();
+            okhttp3.OkHttpClient client = HttpClients.get(HttpClients.Destination.WEBHOOK);
             org.json.JSONObject jsonPayload = new org.json.JSONObject();
             try {
                 jsonPayload.put("amount_received", "1.00");
@@ -659,8 +960,7 @@ public class MainActivity extends AppCompatActivity implements TelegramSender.Te
                 runOnUiThread(() -> Toast.makeText(MainActivity.this, "Error creating test payload", Toast.LENGTH_SHORT).show());
                 return;
             }
-            okhttp3.MediaType JSON = okhttp3.MediaType.get("application/json; charset=utf-8");
-            okhttp3.RequestBody body = okhttp3.RequestBody.create(jsonPayload.toString(), JSON);
+            okhttp3.RequestBody body = okhttp3.RequestBody.create(jsonPayload.toString(), HttpClients.JSON);
             okhttp3.Request request = new okhttp3.Request.Builder()
                     .url(webhookUrl)
                     .post(body)
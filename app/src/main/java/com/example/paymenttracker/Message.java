@@ -2,35 +2,120 @@ package com.example.paymenttracker;
 
 import android.os.Parcel;
 import android.os.Parcelable;
-import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
+// One SMS in the history. Kept small because the list holds thousands: the
+// time is a primitive, the status an enum, sender IDs are shared between
+// rows, and rows read from MessageStore may carry only the start of the
+// body until loadFullContent fills it in.
 public class Message implements Parcelable {
-    public String sender;
-    public String content;
-    public String status;
-    public String timestamp;
 
-    public Message(String sender, String content, String status, String timestamp) {
-        this.sender = sender;
-        this.content = content;
-        this.status = status;
+    public enum Status {
+        SUBMITTED("SUBMITTED"),
+        IGNORED("IGNORED"),
+        SET_FORWARDER("SET FORWARDER!"),
+        WEBHOOK_NOT_SET("WEBHOOK NOT SET"),
+        ERROR("ERROR"),
+        UNKNOWN("UNKNOWN");
+
+        // What is shown and stored.
+        public final String label;
+
+        Status(String label) {
+            this.label = label;
+        }
+
+        public static Status of(String label) {
+            if (label == null) return UNKNOWN;
+            for (Status s : values()) {
+                if (s.label.equalsIgnoreCase(label)) return s;
+            }
+            // Older versions marked messages they could not parse this way.
+            if ("INVALID_FORMAT".equalsIgnoreCase(label) || "INVALID".equalsIgnoreCase(label)) return IGNORED;
+            return UNKNOWN;
+        }
+    }
+
+    // A phone sees a few dozen sender IDs, so every row shares one copy.
+    private static final ConcurrentHashMap<String, String> SENDERS = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat("MMM d, yyyy HH:mm", Locale.getDefault()));
+
+    public final String sender;
+    public final Status status;
+    // Epoch millis.
+    public final long timestamp;
+    // Row id in MessageStore, negative for imported old history; 0 for a
+    // message that was not read from it.
+    public final long id;
+    private String content;
+    private boolean contentComplete;
+
+    // What the parser read from a payment SMS. Other messages keep the
+    // defaults: NO_AMOUNT, nulls and 0.
+    public long amountPaise = PaymentDetails.NO_AMOUNT;
+    public String upiRefId;
+    public String senderVpa;
+    public String bank;
+    // The date written in the SMS, as epoch millis; 0 when it has none.
+    public long paidAtMillis;
+
+    public Message(String sender, String content, Status status, long timestamp) {
+        this(0L, sender, content, true, status, timestamp);
+    }
+
+    // contentComplete is false when content is only the start of the body.
+    Message(long id, String sender, String content, boolean contentComplete, Status status, long timestamp) {
+        this.id = id;
+        this.sender = shareSender(sender);
+        this.content = content != null ? content : "";
+        this.contentComplete = contentComplete;
+        this.status = status != null ? status : Status.UNKNOWN;
         this.timestamp = timestamp;
     }
 
-    protected Message(Parcel in) {
-        sender = in.readString();
-        content = in.readString();
-        status = in.readString();
-        timestamp = in.readString();
+    static String shareSender(String sender) {
+        if (sender == null) return "UNKNOWN";
+        String shared = SENDERS.putIfAbsent(sender, sender);
+        return shared != null ? shared : sender;
+    }
+
+    /** The body, or its start while isContentComplete() is false. */
+    public String getContent() {
+        return content;
+    }
+
+    public boolean isContentComplete() {
+        return contentComplete;
+    }
+
+    void setFullContent(String content) {
+        this.content = content;
+        this.contentComplete = true;
+    }
+
+    /** Copies the parsed payment fields onto this message. */
+    public Message withPayment(PaymentDetails details) {
+        amountPaise = details.amountPaise;
+        upiRefId = details.upiRefId;
+        senderVpa = details.senderVpa;
+        bank = details.bank;
+        paidAtMillis = details.dateTimeMillis;
+        return this;
+    }
+
+    public boolean hasPayment() {
+        return amountPaise != PaymentDetails.NO_AMOUNT || upiRefId != null;
     }
 
     public static final Creator<Message> CREATOR = new Creator<Message>() {
         @Override
         public Message createFromParcel(Parcel in) {
-            return new Message(in);
+            return MessageCodec.read(in);
         }
         @Override
         public Message[] newArray(int size) {
@@ -45,32 +130,36 @@ public class Message implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(-MessageCodec.VERSION);
+        int sizeAt = dest.dataPosition();
+        dest.writeInt(0);
+        dest.writeLong(id);
         dest.writeString(sender);
         dest.writeString(content);
-        dest.writeString(status);
-        dest.writeString(timestamp);
+        dest.writeInt(contentComplete ? 1 : 0);
+        dest.writeString(status.label);
+        dest.writeLong(timestamp);
+        dest.writeLong(amountPaise);
+        dest.writeString(upiRefId);
+        dest.writeString(senderVpa);
+        dest.writeString(bank);
+        dest.writeLong(paidAtMillis);
+        int end = dest.dataPosition();
+        dest.setDataPosition(sizeAt);
+        dest.writeInt(end - sizeAt - 4);
+        dest.setDataPosition(end);
     }
 
     public String getFormattedTimestamp() {
-        try {
-            long timestampMillis = Long.parseLong(timestamp);
-            SimpleDateFormat sdf = new SimpleDateFormat("MMM d, yyyy HH:mm", Locale.getDefault());
-            return sdf.format(new Date(timestampMillis));
-        } catch (NumberFormatException e) {
-            return timestamp; // Return raw string if parsing fails
-        }
+        return DATE_FORMAT.get().format(new Date(timestamp));
     }
 
     @Override
     public String toString() {
-        return sender + "|||" + content + "|||" + status + "|||" + timestamp;
+        return MessageCodec.encode(this);
     }
 
     public static Message fromString(String messageString) {
-        String[] parts = messageString.split("\\|\\|\\|");
-        if (parts.length == 4) {
-            return new Message(parts[0], parts[1], parts[2], parts[3]);
-        }
-        return new Message("N/A", "Invalid message format", "ERROR", "");
+        return MessageCodec.decode(messageString);
     }
 }
\ No newline at end of file
@@ -17,11 +17,22 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
     private SparseBooleanArray expandedState = new SparseBooleanArray();
     private static final int TRUNCATED_MAX_LINES = 3;
     private static final int MESSAGE_LENGTH_THRESHOLD = 100;
+    private BodyLoader bodyLoader;
+
+    // Fetches the rest of a body that was read as a preview, then runs
+    // onLoaded on the main thread.
+    public interface BodyLoader {
+        void load(Message message, Runnable onLoaded);
+    }
 
     public MessageAdapter(List<Message> messages) {
         this.messages = messages;
     }
 
+    public void setBodyLoader(BodyLoader bodyLoader) {
+        this.bodyLoader = bodyLoader;
+    }
+
     @NonNull
     @Override
     public MessageViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -34,20 +45,20 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
     public void onBindViewHolder(@NonNull MessageViewHolder holder, int position) {
         Message msg = messages.get(position);
         holder.tvSender.setText(msg.sender);
-        holder.tvMessage.setText(msg.content);
+        holder.tvMessage.setText(msg.getContent());
         holder.tvDate.setText(msg.getFormattedTimestamp());
-        holder.chipStatus.setText(msg.status);
+        holder.chipStatus.setText(msg.status.label);
 
         // Set chip color based on status
         int colorRes;
         switch (msg.status) {
-            case "SUBMITTED":
+            case SUBMITTED:
                 colorRes = R.color.text_accent;
                 break;
-            case "IGNORED":
+            case IGNORED:
                 colorRes = R.color.text_pink;
                 break;
-            case "WEBHOOK NOT SET": // NEW CASE
+            case WEBHOOK_NOT_SET:
                 colorRes = R.color.text_secondary;
                 break;
             default:
@@ -56,7 +67,7 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
         holder.chipStatus.setChipBackgroundColorResource(colorRes);
 
         // Logic to handle truncated messages
-        if (msg.content.length() > MESSAGE_LENGTH_THRESHOLD) {
+        if (!msg.isContentComplete() || msg.getContent().length() > MESSAGE_LENGTH_THRESHOLD) {
             holder.ivExpandIcon.setVisibility(View.VISIBLE);
             if (expandedState.get(position, false)) {
                 holder.tvMessage.setMaxLines(Integer.MAX_VALUE);
@@ -69,7 +80,11 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
             holder.ivExpandIcon.setOnClickListener(v -> {
                 boolean isExpanded = expandedState.get(position, false);
                 expandedState.put(position, !isExpanded);
-                notifyItemChanged(position);
+                if (!isExpanded && !msg.isContentComplete() && bodyLoader != null) {
+                    bodyLoader.load(msg, () -> notifyItemChanged(position));
+                } else {
+                    notifyItemChanged(position);
+                }
             });
         } else {
             holder.ivExpandIcon.setVisibility(View.GONE);
@@ -0,0 +1,100 @@
+package com.example.paymenttracker;
+
+import android.os.Parcel;
+
+/**
+ * The formats a Message takes outside the heap, with a version so older
+ * ones can still be read.
+ *
+ * Text version 1 is the original "sender|||body|||status|||timestamp".
+ * Version 2 starts with its number and adds the payment fields:
+ * "2|||sender|||body|||status|||timestamp|||amountPaise|||upiRef|||vpa|||bank|||paidAt",
+ * with "" for a missing field. decode reads both.
+ *
+ * A parcel starts with its version as a negative int and the size in bytes
+ * of the fields that follow, in Message.writeToParcel order. Parcel version 1
+ * is the original layout, four strings with no header: sender, body, status
+ * and timestamp. Parcel writes a string's length first, and that length is
+ * never below -1 (null), so a first int below -1 can only be a header. Later
+ * versions only add fields at the end, and read skips whatever is left of
+ * the size, so a parcel newer than this build is read for the fields it
+ * knows and the values after it still line up.
+ */
+final class MessageCodec {
+
+    static final int VERSION = 2;
+
+    private static final String SEPARATOR = "|||";
+    private static final String SEPARATOR_PATTERN = "\\|\\|\\|";
+
+    private MessageCodec() {
+    }
+
+    static String encode(Message m) {
+        return VERSION + SEPARATOR + m.sender
+                + SEPARATOR + m.getContent()
+                + SEPARATOR + m.status.label
+                + SEPARATOR + m.timestamp
+                + SEPARATOR + (m.amountPaise != PaymentDetails.NO_AMOUNT ? String.valueOf(m.amountPaise) : "")
+                + SEPARATOR + orEmpty(m.upiRefId)
+                + SEPARATOR + orEmpty(m.senderVpa)
+                + SEPARATOR + orEmpty(m.bank)
+                + SEPARATOR + m.paidAtMillis;
+    }
+
+    static Message decode(String s) {
+        String[] parts = s != null ? s.split(SEPARATOR_PATTERN, -1) : new String[0];
+        if (parts.length == 4) {
+            return new Message(parts[0], parts[1], Message.Status.of(parts[2]), parseLong(parts[3], 0L));
+        }
+        if (parts.length == 10 && parts[0].equals("2")) {
+            Message m = new Message(parts[1], parts[2], Message.Status.of(parts[3]), parseLong(parts[4], 0L));
+            m.amountPaise = parseLong(parts[5], PaymentDetails.NO_AMOUNT);
+            m.upiRefId = orNull(parts[6]);
+            m.senderVpa = orNull(parts[7]);
+            m.bank = orNull(parts[8]);
+            m.paidAtMillis = parseLong(parts[9], 0L);
+            return m;
+        }
+        return new Message("N/A", "Invalid message format", Message.Status.ERROR, 0L);
+    }
+
+    static Message read(Parcel in) {
+        int start = in.dataPosition();
+        if (in.readInt() >= -1) {
+            // No header, so that was the sender's length: version 1.
+            in.setDataPosition(start);
+            return new Message(in.readString(), in.readString(), Message.Status.of(in.readString()),
+                    parseLong(in.readString(), 0L));
+        }
+        int size = in.readInt();
+        int end = in.dataPosition() + size;
+        Message m = new Message(in.readLong(), in.readString(), in.readString(), in.readInt() != 0,
+                Message.Status.of(in.readString()), in.readLong());
+        m.amountPaise = in.readLong();
+        m.upiRefId = in.readString();
+        m.senderVpa = in.readString();
+        m.bank = in.readString();
+        m.paidAtMillis = in.readLong();
+        // past the fields a newer build added
+        in.setDataPosition(end);
+        return m;
+    }
+
+    static long parseLong(String s, long fallback) {
+        if (s == null) return fallback;
+        try {
+            return Long.parseLong(s.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static String orEmpty(String s) {
+        return s != null ? s : "";
+    }
+
+    private static String orNull(String s) {
+        return s.isEmpty() ? null : s;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.paymenttracker;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Feeds the message list from MessageStore a page at a time. Pages are read
+ * newest first on a background thread and appended on the main thread; the
+ * next one is requested when the list is scrolled near its end.
+ *
+ * On a cold start (empty list, no query) the first page is read from the
+ * history log, which needs no database, and shown at once; the same page is
+ * then read from the database and replaces it, in case the log was behind.
+ *
+ * With a search query set, the pages come from MessageStore.search instead.
+ *
+ * Results of a load overtaken by reload() or a new query are dropped.
+ */
+final class MessagePager extends RecyclerView.OnScrollListener {
+    private static final String TAG = "MessagePager";
+
+    static final int PAGE_SIZE = 50;
+    // How many rows before the end of the list the next page is requested.
+    private static final int PREFETCH_DISTANCE = 20;
+
+    interface Listener {
+        /** Called on the main thread once the list holds the first page. */
+        void onFirstPageLoaded(boolean empty);
+    }
+
+    private final MessageStore store;
+    private final List<Message> messages;
+    private final RecyclerView.Adapter<?> adapter;
+    private final Listener listener;
+    private final ExecutorService reader = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Main thread only.
+    private int generation;
+    private boolean loading;
+    private boolean exhausted;
+    private long nextTimestamp = Long.MAX_VALUE;
+    private long nextId = Long.MAX_VALUE;
+    private SearchQuery query;
+
+    MessagePager(MessageStore store, List<Message> messages, RecyclerView.Adapter<?> adapter, Listener listener) {
+        this.store = store;
+        this.messages = messages;
+        this.adapter = adapter;
+        this.listener = listener;
+    }
+
+    /**
+     * Reads the list again from the newest message, as many rows as are
+     * showing now (at least a page) so the scroll position survives.
+     */
+    void reload() {
+        restart(Math.max(PAGE_SIZE, messages.size()));
+    }
+
+    /** Shows only messages matching the query; null or empty shows all. */
+    void setQuery(SearchQuery query) {
+        this.query = query != null && !query.isEmpty() ? query : null;
+        restart(PAGE_SIZE);
+    }
+
+    boolean isSearching() {
+        return query != null;
+    }
+
+    private void restart(int limit) {
+        generation++;
+        loading = false;
+        exhausted = false;
+        nextTimestamp = Long.MAX_VALUE;
+        nextId = Long.MAX_VALUE;
+        load(true, limit);
+    }
+
+    /** Stops loading; pending results are dropped. */
+    void shutdown() {
+        generation++;
+        reader.shutdownNow();
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (dy <= 0 || loading || exhausted) return;
+        RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        if (!(layoutManager instanceof LinearLayoutManager)) return;
+        int lastVisible = ((LinearLayoutManager) layoutManager).findLastVisibleItemPosition();
+        if (lastVisible >= messages.size() - PREFETCH_DISTANCE) load(false, PAGE_SIZE);
+    }
+
+    private void load(boolean first, int limit) {
+        if (loading || exhausted) return;
+        loading = true;
+        final int requested = generation;
+        final long beforeTimestamp = nextTimestamp;
+        final long beforeId = nextId;
+        final SearchQuery searching = query;
+        final boolean cold = first && searching == null && messages.isEmpty();
+        reader.execute(() -> {
+            if (cold) {
+                MessageStore.Page fromLog = store.loadNewestFromLog(limit);
+                if (fromLog != null) mainHandler.post(() -> showProvisional(requested, fromLog));
+            }
+            MessageStore.Page page = null;
+            try {
+                page = searching != null
+                        ? store.search(searching, beforeId, limit)
+                        : store.loadPage(beforeTimestamp, beforeId, limit);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to load messages", e);
+            }
+            final MessageStore.Page loaded = page;
+            mainHandler.post(() -> deliver(requested, first, loaded));
+        });
+    }
+
+    // Shows a first page from the log while the database is read. Keeps
+    // loading set, so no scroll load starts from the log's position.
+    private void showProvisional(int requested, MessageStore.Page page) {
+        if (requested != generation || !messages.isEmpty()) return;
+        messages.addAll(page.messages);
+        adapter.notifyDataSetChanged();
+        listener.onFirstPageLoaded(false);
+    }
+
+    private void deliver(int requested, boolean first, MessageStore.Page page) {
+        if (requested != generation) return;
+        loading = false;
+        // A failed load is retried on the next scroll.
+        if (page == null) return;
+
+        nextTimestamp = page.nextTimestamp;
+        nextId = page.nextId;
+        exhausted = page.last;
+        if (first) {
+            messages.clear();
+            messages.addAll(page.messages);
+            adapter.notifyDataSetChanged();
+            listener.onFirstPageLoaded(messages.isEmpty());
+        } else if (!page.messages.isEmpty()) {
+            int start = messages.size();
+            messages.addAll(page.messages);
+            adapter.notifyItemRangeInserted(start, page.messages.size());
+        }
+        Log.d(TAG, "Showing " + messages.size() + " messages" + (exhausted ? " (all)." : "."));
+    }
+}
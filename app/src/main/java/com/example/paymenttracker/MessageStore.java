@@ -0,0 +1,886 @@
+package com.example.paymenttracker;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The message history, in SQLite.
+ *
+ * It replaces the JSON array kept under {@link MainActivity#MESSAGES} in
+ * SharedPreferences. That array was rewritten whole for every SMS and sat on
+ * the heap whole. Here, saving a message is one row insert, on a single
+ * writer thread so the service never waits on disk. The database runs in WAL
+ * mode, so the UI can read while the service writes. Timestamp, status,
+ * sender and UPI ref are indexed.
+ *
+ * Payment messages also keep what the parser read from them (amount in
+ * paise, UPI ref, VPA, bank and the date in the SMS), so nothing later has
+ * to parse the history again. Other messages leave those columns null.
+ *
+ * {@link #search} answers the search box from indexes only: an FTS4
+ * full-text index over sender, body, UPI ref and VPA (kept in step by
+ * triggers, and read newest row first so a LIMIT stops it early), and
+ * B-tree ranges on amount and timestamp.
+ *
+ * Payment counts and totals per day, month, bank and VPA are kept in the
+ * rollups table by triggers, inside the same statement that inserts, updates
+ * or deletes a message, so the summary reads one row per bucket. Days and
+ * months are in IST, like the dates the parser reads.
+ * {@link #rebuildRollups} recounts them from the messages if they drift.
+ *
+ * The newest messages are also kept in a {@link HistoryLog} file next to
+ * the database, appended after each insert. {@link #loadNewestFromLog} reads
+ * the first screen from it without opening SQLite; everything else reads the
+ * database. The log is written again from the database when it is missing,
+ * when it has grown to twice LOG_ROWS, and after a compaction.
+ *
+ * Whatever the old SharedPreferences history holds is imported in the
+ * background by {@link LegacyMigration}, IMPORT_CHUNK_ROWS per transaction on
+ * the writer thread. Each transaction also records how far it got in the
+ * migrations table, so an import cut short by a process kill resumes there.
+ * Old messages are read newest first and take negative row ids (see
+ * {@link LegacyImport#rowId}), so the list shows the latest of them first
+ * while the rest are still coming in. The old history is removed once it has
+ * all been read.
+ *
+ * History is trimmed to a {@link RetentionPolicy} by {@link #compact}. The
+ * compaction runs on the same writer thread in chunks of COMPACT_CHUNK_ROWS
+ * deletes, each in its own transaction, and the next chunk is queued behind
+ * whatever arrived meanwhile. An incoming SMS therefore waits for at most one
+ * chunk. Freed pages are returned to the file system the same way
+ * (incremental auto-vacuum).
+ */
+final class MessageStore extends SQLiteOpenHelper {
+    private static final String TAG = "MessageStore";
+
+    private static final String DATABASE_NAME = "messages.db";
+    private static final int DATABASE_VERSION = 5;
+
+    static final String TABLE = "messages";
+    static final String COL_ID = "_id";
+    static final String COL_SENDER = "sender";
+    static final String COL_BODY = "body";
+    static final String COL_STATUS = "status";
+    static final String COL_REASON = "reason";
+    static final String COL_TIMESTAMP = "timestamp";
+    static final String COL_UPI_REF = "upi_ref";
+    static final String COL_AMOUNT_PAISE = "amount_paise";
+    static final String COL_VPA = "vpa";
+    static final String COL_BANK = "bank";
+    static final String COL_PAID_AT = "paid_at";
+    static final String FTS_TABLE = "messages_fts";
+
+    static final String ROLLUPS_TABLE = "rollups";
+    static final String ROLLUP_DAY = "day";
+    static final String ROLLUP_MONTH = "month";
+    static final String ROLLUP_BANK = "bank";
+    static final String ROLLUP_VPA = "vpa";
+
+    private static final String MIGRATIONS_TABLE = "migrations";
+    private static final String LEGACY_PREFS_MIGRATION = "prefs_messages";
+    private static final int IMPORT_CHUNK_ROWS = 500;
+    private static final int EXPORT_CHUNK_ROWS = 1000;
+
+    // Pages carry only the start of long bodies; see loadFullContent.
+    static final int PREVIEW_CHARS = 240;
+    private static final String[] PAGE_COLUMNS = {COL_SENDER, COL_BODY, COL_STATUS, COL_TIMESTAMP, COL_ID,
+            COL_AMOUNT_PAISE, COL_UPI_REF, COL_VPA, COL_BANK, COL_PAID_AT};
+    // substr() stands in for the body column, length() follows the others.
+    private static final int BODY_COLUMN = 1;
+
+    private static final int COMPACT_CHUNK_ROWS = 500;
+    private static final int VACUUM_CHUNK_PAGES = 256;
+    private static final long COMPACT_INTERVAL_MILLIS = 24L * 60 * 60 * 1000;
+
+    private static final String LOG_FILE = "history.log";
+    static final int LOG_ROWS = 200;
+
+    // SharedPreferences keys of the last compaction's report.
+    static final String LAST_COMPACTION_AT = "lastCompactionAt";
+    static final String LAST_COMPACTION_ROWS = "lastCompactionRows";
+    static final String LAST_COMPACTION_BYTES = "lastCompactionBytes";
+
+    private static MessageStore instance;
+
+    private final Context context;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private boolean compacting;
+    private boolean importing;
+    private volatile ImportListener importListener;
+    // Guarded by itself; null until first used and after a rewrite.
+    private final Object logLock = new Object();
+    private HistoryLog log;
+
+    static synchronized MessageStore get(Context context) {
+        if (instance == null) {
+            instance = new MessageStore(context.getApplicationContext());
+            instance.startLegacyImport();
+        }
+        return instance;
+    }
+
+    private MessageStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Only takes effect on a database that has no tables yet.
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COL_SENDER + " TEXT NOT NULL, "
+                + COL_BODY + " TEXT NOT NULL, "
+                + COL_STATUS + " TEXT NOT NULL, "
+                + COL_REASON + " TEXT, "
+                + COL_TIMESTAMP + " INTEGER NOT NULL, "
+                + COL_UPI_REF + " TEXT, "
+                + COL_AMOUNT_PAISE + " INTEGER, "
+                + COL_VPA + " TEXT, "
+                + COL_BANK + " TEXT, "
+                + COL_PAID_AT + " INTEGER)");
+        db.execSQL("CREATE INDEX idx_messages_timestamp ON " + TABLE + " (" + COL_TIMESTAMP + ")");
+        db.execSQL("CREATE INDEX idx_messages_status ON " + TABLE + " (" + COL_STATUS + ", " + COL_TIMESTAMP + ")");
+        db.execSQL("CREATE INDEX idx_messages_sender ON " + TABLE + " (" + COL_SENDER + ", " + COL_TIMESTAMP + ")");
+        db.execSQL("CREATE INDEX idx_messages_upi_ref ON " + TABLE + " (" + COL_UPI_REF + ")");
+        createSearchIndex(db);
+        createRollups(db);
+        createMigrations(db);
+    }
+
+    // How far each background migration has got, written in the same
+    // transaction as the rows it covers.
+    private static void createMigrations(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + MIGRATIONS_TABLE + " (name TEXT PRIMARY KEY, position INTEGER NOT NULL)");
+    }
+
+    // The full-text index reads its text from the messages table (external
+    // content), so it only stores the index itself.
+    private static void createSearchIndex(SQLiteDatabase db) {
+        String columns = COL_SENDER + ", " + COL_BODY + ", " + COL_UPI_REF + ", " + COL_VPA;
+        String newValues = "new." + COL_SENDER + ", new." + COL_BODY + ", new." + COL_UPI_REF + ", new." + COL_VPA;
+        db.execSQL("CREATE INDEX idx_messages_amount ON " + TABLE + " (" + COL_AMOUNT_PAISE + ", " + COL_TIMESTAMP + ")");
+        db.execSQL("CREATE VIRTUAL TABLE " + FTS_TABLE + " USING fts4(content=\"" + TABLE + "\", " + columns + ")");
+        db.execSQL("CREATE TRIGGER messages_fts_ai AFTER INSERT ON " + TABLE + " BEGIN "
+                + "INSERT INTO " + FTS_TABLE + " (docid, " + columns + ") VALUES (new." + COL_ID + ", " + newValues + "); END");
+        db.execSQL("CREATE TRIGGER messages_fts_bd BEFORE DELETE ON " + TABLE + " BEGIN "
+                + "DELETE FROM " + FTS_TABLE + " WHERE docid = old." + COL_ID + "; END");
+        db.execSQL("CREATE TRIGGER messages_fts_bu BEFORE UPDATE ON " + TABLE + " BEGIN "
+                + "DELETE FROM " + FTS_TABLE + " WHERE docid = old." + COL_ID + "; END");
+        db.execSQL("CREATE TRIGGER messages_fts_au AFTER UPDATE ON " + TABLE + " BEGIN "
+                + "INSERT INTO " + FTS_TABLE + " (docid, " + columns + ") VALUES (new." + COL_ID + ", " + newValues + "); END");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            // Rows saved before this keep nulls.
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_AMOUNT_PAISE + " INTEGER");
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_VPA + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_BANK + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_PAID_AT + " INTEGER");
+        }
+        if (oldVersion < 3) {
+            createSearchIndex(db);
+            db.execSQL("INSERT INTO " + FTS_TABLE + " (" + FTS_TABLE + ") VALUES ('rebuild')");
+        }
+        if (oldVersion < 4) {
+            createRollups(db);
+            recountRollups(db);
+        }
+        if (oldVersion < 5) {
+            createMigrations(db);
+        }
+    }
+
+    /**
+     * Saves a message, with its payment fields, in the background. reason is
+     * why an IGNORED message was ignored, or null.
+     */
+    void append(Message message, String reason) {
+        ContentValues values = toValues(message, reason);
+        writer.execute(() -> {
+            try {
+                SQLiteDatabase db = getWritableDatabase();
+                long id = db.insert(TABLE, null, values);
+                if (id != -1) appendToLog(db, toRecord(id, message));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to save message", e);
+            }
+        });
+    }
+
+    /**
+     * The newest messages as the history log has them, as a first page, or
+     * null when there is no log to read. Reads no database; the page may be
+     * behind it if an append to the log failed, so callers check it against
+     * {@link #loadPage} once that is affordable.
+     */
+    Page loadNewestFromLog(int limit) {
+        List<HistoryRecord> records;
+        synchronized (logLock) {
+            try {
+                if (log == null) {
+                    File file = logFile();
+                    if (!file.exists()) return null;
+                    log = HistoryLog.open(file, true);
+                }
+                records = log.newest(limit);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Could not read the history log", e);
+                return null;
+            }
+        }
+        if (records.isEmpty()) return null;
+        List<Message> out = new ArrayList<>(records.size());
+        for (HistoryRecord r : records) out.add(toMessage(r));
+        Message last = out.get(out.size() - 1);
+        return new Page(out, last.timestamp, last.id, false);
+    }
+
+    private File logFile() {
+        return new File(context.getFilesDir(), LOG_FILE);
+    }
+
+    // Writer thread only. A failure here never fails the insert; the log is
+    // written again from the database next time.
+    private void appendToLog(SQLiteDatabase db, HistoryRecord record) {
+        synchronized (logLock) {
+            try {
+                if (log == null && logFile().exists()) log = HistoryLog.open(logFile(), true);
+                if (log != null && log.size() < 2L * LOG_ROWS) {
+                    log.append(record);
+                    return;
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Could not append to the history log", e);
+            }
+        }
+        rewriteLog(db);
+    }
+
+    // Writer thread only: replaces the log with the newest LOG_ROWS messages.
+    private void rewriteLog(SQLiteDatabase db) {
+        List<HistoryRecord> records = new ArrayList<>(LOG_ROWS);
+        try (Cursor c = db.query(TABLE, new String[]{COL_ID, COL_SENDER, COL_BODY, COL_STATUS, COL_TIMESTAMP,
+                        COL_AMOUNT_PAISE, COL_UPI_REF, COL_VPA, COL_BANK, COL_PAID_AT}, null, null, null, null,
+                COL_TIMESTAMP + " DESC, " + COL_ID + " DESC", String.valueOf(LOG_ROWS))) {
+            while (c.moveToNext()) {
+                records.add(new HistoryRecord.Builder()
+                        .id(c.getLong(0))
+                        .sender(c.getString(1))
+                        .body(c.getString(2))
+                        .status(c.getString(3))
+                        .timestamp(c.getLong(4))
+                        .amountPaise(c.isNull(5) ? PaymentDetails.NO_AMOUNT : c.getLong(5))
+                        .upiRefId(c.getString(6))
+                        .senderVpa(c.getString(7))
+                        .bank(c.getString(8))
+                        .paidAtMillis(c.isNull(9) ? 0L : c.getLong(9))
+                        .build());
+            }
+        }
+        Collections.reverse(records);
+        synchronized (logLock) {
+            try {
+                if (log != null) log.close();
+                log = null;
+                HistoryLog.rewrite(logFile(), records);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Could not write the history log", e);
+                // Better no log than one that is behind.
+                if (!logFile().delete()) Log.w(TAG, "Could not delete the history log");
+            }
+        }
+    }
+
+    private static HistoryRecord toRecord(long id, Message m) {
+        return new HistoryRecord.Builder()
+                .id(id)
+                .timestamp(m.timestamp)
+                .sender(m.sender)
+                .body(m.getContent())
+                .status(m.status.label)
+                .amountPaise(m.amountPaise)
+                .upiRefId(m.upiRefId)
+                .senderVpa(m.senderVpa)
+                .bank(m.bank)
+                .paidAtMillis(m.paidAtMillis)
+                .build();
+    }
+
+    private static Message toMessage(HistoryRecord r) {
+        Message m = new Message(r.id, r.sender, r.body, true, Message.Status.of(r.status), r.timestamp);
+        m.amountPaise = r.amountPaise;
+        m.upiRefId = r.upiRefId;
+        m.senderVpa = r.senderVpa;
+        m.bank = r.bank;
+        m.paidAtMillis = r.paidAtMillis;
+        return m;
+    }
+
+    /**
+     * Up to limit messages older than the given position, newest first. Pass
+     * Long.MAX_VALUE for both to start from the newest message; each page
+     * carries the position the next one starts from. Pages are read straight
+     * off the timestamp index, so a deep page costs no more than the first.
+     */
+    Page loadPage(long beforeTimestamp, long beforeId, int limit) {
+        try (Cursor c = getReadableDatabase().query(TABLE, pageColumns(""),
+                // The plain bound gives the index scan its starting point.
+                COL_TIMESTAMP + " <= ? AND (" + COL_TIMESTAMP + ", " + COL_ID + ") < (?, ?)",
+                new String[]{String.valueOf(beforeTimestamp), String.valueOf(beforeTimestamp), String.valueOf(beforeId)},
+                null, null, COL_TIMESTAMP + " DESC, " + COL_ID + " DESC", String.valueOf(limit))) {
+            return readPage(c, limit, beforeTimestamp, beforeId);
+        }
+    }
+
+    /**
+     * Up to limit messages matching the query, newest saved first, from
+     * before the given row id (Long.MAX_VALUE for the first page). Only the
+     * page's nextId is meaningful for the next call.
+     */
+    Page search(SearchQuery query, long beforeId, int limit) {
+        List<String> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT ").append(String.join(", ", pageColumns("m.")));
+        String match = query.matchExpression();
+        if (match != null) {
+            // Driven by the full-text index in docid order, which is row id order.
+            sql.append(" FROM ").append(FTS_TABLE).append(" JOIN ").append(TABLE).append(" m ON m.").append(COL_ID)
+                    .append(" = ").append(FTS_TABLE).append(".docid WHERE ").append(FTS_TABLE).append(" MATCH ? AND ")
+                    .append(FTS_TABLE).append(".docid < ?");
+            args.add(match);
+        } else {
+            sql.append(" FROM ").append(TABLE).append(" m WHERE m.").append(COL_ID).append(" < ?");
+        }
+        args.add(String.valueOf(beforeId));
+        if (query.hasAmount()) {
+            sql.append(" AND m.").append(COL_AMOUNT_PAISE).append(" BETWEEN ? AND ?");
+            args.add(String.valueOf(query.minPaise));
+            args.add(String.valueOf(query.maxPaise));
+        }
+        if (query.fromMillis > 0L || query.toMillis != Long.MAX_VALUE) {
+            sql.append(" AND m.").append(COL_TIMESTAMP).append(" >= ? AND m.").append(COL_TIMESTAMP).append(" < ?");
+            args.add(String.valueOf(query.fromMillis));
+            args.add(String.valueOf(query.toMillis));
+        }
+        sql.append(" ORDER BY ").append(match != null ? FTS_TABLE + ".docid" : "m." + COL_ID).append(" DESC LIMIT ").append(limit);
+
+        try (Cursor c = getReadableDatabase().rawQuery(sql.toString(), args.toArray(new String[0]))) {
+            return readPage(c, limit, Long.MAX_VALUE, beforeId);
+        }
+    }
+
+    private static String[] pageColumns(String prefix) {
+        String[] columns = new String[PAGE_COLUMNS.length + 1];
+        for (int i = 0; i < PAGE_COLUMNS.length; i++) columns[i] = prefix + PAGE_COLUMNS[i];
+        columns[BODY_COLUMN] = "substr(" + prefix + COL_BODY + ", 1, " + PREVIEW_CHARS + ")";
+        columns[PAGE_COLUMNS.length] = "length(" + prefix + COL_BODY + ")";
+        return columns;
+    }
+
+    // Rows in pageColumns order.
+    private static Page readPage(Cursor c, int limit, long beforeTimestamp, long beforeId) {
+        List<Message> out = new ArrayList<>(limit);
+        long lastTimestamp = beforeTimestamp;
+        long lastId = beforeId;
+        while (c.moveToNext()) {
+            lastTimestamp = c.getLong(3);
+            lastId = c.getLong(4);
+            String body = c.getString(BODY_COLUMN);
+            boolean complete = c.getLong(PAGE_COLUMNS.length) <= body.length();
+            Message m = new Message(lastId, c.getString(0), body, complete, Message.Status.of(c.getString(2)), lastTimestamp);
+            if (!c.isNull(5)) m.amountPaise = c.getLong(5);
+            m.upiRefId = c.getString(6);
+            m.senderVpa = c.getString(7);
+            m.bank = c.getString(8);
+            m.paidAtMillis = c.isNull(9) ? 0L : c.getLong(9);
+            out.add(m);
+        }
+        return new Page(out, lastTimestamp, lastId, out.size() < limit);
+    }
+
+    /**
+     * Reads the whole body of a message that came from a page, if it still
+     * exists. Call off the main thread.
+     */
+    void loadFullContent(Message message) {
+        if (message.isContentComplete() || message.id == 0L) return;
+        try (Cursor c = getReadableDatabase().query(TABLE, new String[]{COL_BODY}, COL_ID + " = ?",
+                new String[]{String.valueOf(message.id)}, null, null, null)) {
+            if (c.moveToFirst()) message.setFullContent(c.getString(0));
+        }
+    }
+
+    /** Told how many rows an export has written, after each chunk. */
+    interface ExportProgress {
+        void onExported(long rows);
+    }
+
+    /**
+     * Writes the messages the export selects to out, oldest first, and
+     * returns how many it wrote. Call off the main thread.
+     *
+     * Rows are read EXPORT_CHUNK_ROWS at a time by keyset on (timestamp, id),
+     * each chunk in its own short read, so memory stays flat and the writer
+     * thread's checkpoints are not held up for the whole export. Stops early,
+     * without an error, once the export is cancelled.
+     */
+    long export(HistoryExport export, Writer out, ExportProgress progress) throws IOException {
+        StringBuilder where = new StringBuilder(COL_TIMESTAMP + " >= ? AND " + COL_TIMESTAMP + " < ? AND ("
+                + COL_TIMESTAMP + ", " + COL_ID + ") > (?, ?)");
+        if (!export.statuses.isEmpty()) {
+            where.append(" AND ").append(COL_STATUS).append(" IN (");
+            for (int i = 0; i < export.statuses.size(); i++) where.append(i == 0 ? "?" : ", ?");
+            where.append(")");
+        }
+        String[] args = new String[4 + export.statuses.size()];
+        args[1] = String.valueOf(export.toMillis);
+        int n = 4;
+        for (String status : export.statuses) args[n++] = status;
+
+        String[] columns = {COL_ID, COL_TIMESTAMP, COL_SENDER, COL_STATUS, COL_AMOUNT_PAISE, COL_UPI_REF, COL_VPA,
+                COL_BANK, COL_PAID_AT, COL_BODY};
+        HistoryExport.Row row = new HistoryExport.Row();
+        long afterTimestamp = export.fromMillis;
+        long afterId = Long.MIN_VALUE;
+        long written = 0;
+        export.writeHeader(out);
+        while (!export.isCancelled()) {
+            args[0] = String.valueOf(afterTimestamp);
+            args[2] = String.valueOf(afterTimestamp);
+            args[3] = String.valueOf(afterId);
+            int read = 0;
+            try (Cursor c = getReadableDatabase().query(TABLE, columns, where.toString(), args, null, null,
+                    COL_TIMESTAMP + ", " + COL_ID, String.valueOf(EXPORT_CHUNK_ROWS))) {
+                while (c.moveToNext() && !export.isCancelled()) {
+                    row.id = c.getLong(0);
+                    row.timestamp = c.getLong(1);
+                    row.sender = c.getString(2);
+                    row.status = c.getString(3);
+                    row.amountPaise = c.isNull(4) ? PaymentDetails.NO_AMOUNT : c.getLong(4);
+                    row.upiRefId = c.getString(5);
+                    row.senderVpa = c.getString(6);
+                    row.bank = c.getString(7);
+                    row.paidAtMillis = c.isNull(8) ? 0L : c.getLong(8);
+                    row.body = c.getString(9);
+                    export.write(row, out);
+                    afterTimestamp = row.timestamp;
+                    afterId = row.id;
+                    read++;
+                }
+            }
+            written += read;
+            if (progress != null) progress.onExported(written);
+            if (read < EXPORT_CHUNK_ROWS) break;
+        }
+        out.flush();
+        return written;
+    }
+
+    /**
+     * The buckets of one rollup kind (ROLLUP_DAY, ...), at most limit of
+     * them: the latest days and months first, banks and VPAs by total.
+     */
+    List<Rollup> rollups(String kind, int limit) {
+        String order = ROLLUP_DAY.equals(kind) || ROLLUP_MONTH.equals(kind) ? "bucket DESC" : "total_paise DESC";
+        List<Rollup> out = new ArrayList<>();
+        try (Cursor c = getReadableDatabase().query(ROLLUPS_TABLE, new String[]{"bucket", "count", "total_paise"},
+                "kind = ?", new String[]{kind}, null, null, order, String.valueOf(limit))) {
+            while (c.moveToNext()) out.add(new Rollup(c.getString(0), c.getLong(1), c.getLong(2)));
+        }
+        return out;
+    }
+
+    /** One rollup bucket, "" for payments with no bank or VPA. */
+    static final class Rollup {
+        final String bucket;
+        final long count;
+        final long totalPaise;
+
+        Rollup(String bucket, long count, long totalPaise) {
+            this.bucket = bucket;
+            this.count = count;
+            this.totalPaise = totalPaise;
+        }
+    }
+
+    /**
+     * Recounts the rollups from the messages, on the writer thread and in one
+     * transaction, then runs done there if it is not null.
+     */
+    void rebuildRollups(Runnable done) {
+        writer.execute(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                SQLiteDatabase db = getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    recountRollups(db);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                Log.d(TAG, "Rebuilt rollups in " + (System.currentTimeMillis() - start) + " ms.");
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to rebuild rollups", e);
+            }
+            if (done != null) done.run();
+        });
+    }
+
+    // Each kind with the SQL for a row's bucket; row is "new", "old" or a
+    // table name. The 330 minutes put days and months in IST.
+    private static String[][] rollupBuckets(String row) {
+        String localTime = row + "." + COL_TIMESTAMP + " / 1000, 'unixepoch', '+330 minutes'";
+        return new String[][]{
+                {ROLLUP_DAY, "strftime('%Y-%m-%d', " + localTime + ")"},
+                {ROLLUP_MONTH, "strftime('%Y-%m', " + localTime + ")"},
+                {ROLLUP_BANK, "IFNULL(" + row + "." + COL_BANK + ", '')"},
+                {ROLLUP_VPA, "IFNULL(" + row + "." + COL_VPA + ", '')"},
+        };
+    }
+
+    // Trigger body adding (sign "+") or taking away (sign "-") one row. Platform
+    // SQLite before 3.24 has no upsert, hence INSERT OR IGNORE then UPDATE.
+    private static String rollupUpdates(String row, String sign) {
+        StringBuilder sql = new StringBuilder();
+        for (String[] bucket : rollupBuckets(row)) {
+            String where = " WHERE kind = '" + bucket[0] + "' AND bucket = " + bucket[1] + "; ";
+            sql.append("INSERT OR IGNORE INTO ").append(ROLLUPS_TABLE).append(" VALUES ('").append(bucket[0])
+                    .append("', ").append(bucket[1]).append(", 0, 0); ");
+            sql.append("UPDATE ").append(ROLLUPS_TABLE).append(" SET count = count ").append(sign).append(" 1, ")
+                    .append("total_paise = total_paise ").append(sign).append(" ").append(row).append(".")
+                    .append(COL_AMOUNT_PAISE).append(where);
+            if (sign.equals("-")) {
+                sql.append("DELETE FROM ").append(ROLLUPS_TABLE).append(where.replace(";", " AND count <= 0;"));
+            }
+        }
+        return sql.toString();
+    }
+
+    private static void createRollups(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + ROLLUPS_TABLE + " ("
+                + "kind TEXT NOT NULL, "
+                + "bucket TEXT NOT NULL, "
+                + "count INTEGER NOT NULL, "
+                + "total_paise INTEGER NOT NULL, "
+                + "PRIMARY KEY (kind, bucket)) WITHOUT ROWID");
+        String hasAmount = "." + COL_AMOUNT_PAISE + " IS NOT NULL";
+        String changed = COL_AMOUNT_PAISE + ", " + COL_TIMESTAMP + ", " + COL_BANK + ", " + COL_VPA;
+        db.execSQL("CREATE TRIGGER rollups_ai AFTER INSERT ON " + TABLE + " WHEN new" + hasAmount
+                + " BEGIN " + rollupUpdates("new", "+") + "END");
+        db.execSQL("CREATE TRIGGER rollups_ad AFTER DELETE ON " + TABLE + " WHEN old" + hasAmount
+                + " BEGIN " + rollupUpdates("old", "-") + "END");
+        db.execSQL("CREATE TRIGGER rollups_au_old AFTER UPDATE OF " + changed + " ON " + TABLE + " WHEN old" + hasAmount
+                + " BEGIN " + rollupUpdates("old", "-") + "END");
+        db.execSQL("CREATE TRIGGER rollups_au_new AFTER UPDATE OF " + changed + " ON " + TABLE + " WHEN new" + hasAmount
+                + " BEGIN " + rollupUpdates("new", "+") + "END");
+    }
+
+    // One GROUP BY pass over the messages per kind; SQLite streams the rows
+    // rather than loading them.
+    private static void recountRollups(SQLiteDatabase db) {
+        db.delete(ROLLUPS_TABLE, null, null);
+        for (String[] bucket : rollupBuckets(TABLE)) {
+            db.execSQL("INSERT INTO " + ROLLUPS_TABLE + " SELECT '" + bucket[0] + "', " + bucket[1] + ", COUNT(*), SUM("
+                    + COL_AMOUNT_PAISE + ") FROM " + TABLE + " WHERE " + COL_AMOUNT_PAISE + " IS NOT NULL GROUP BY 2");
+        }
+    }
+
+    /** One page of history and where the next one starts. */
+    static final class Page {
+        final List<Message> messages;
+        final long nextTimestamp;
+        final long nextId;
+        final boolean last;
+
+        Page(List<Message> messages, long nextTimestamp, long nextId, boolean last) {
+            this.messages = messages;
+            this.nextTimestamp = nextTimestamp;
+            this.nextId = nextId;
+            this.last = last;
+        }
+    }
+
+    /** Told how an import of the old history is going; on the writer thread. */
+    interface ImportListener {
+        /** imported counts old messages read so far, including unreadable ones. */
+        void onImportProgress(int imported, boolean finished);
+    }
+
+    void setImportListener(ImportListener listener) {
+        importListener = listener;
+    }
+
+    /** True while old history is still being imported. */
+    synchronized boolean isImporting() {
+        return importing;
+    }
+
+    private synchronized void startLegacyImport() {
+        if (importing) return;
+        SharedPreferences prefs = context.getSharedPreferences(MainActivity.SHARED_PREFS, Context.MODE_PRIVATE);
+        if (!prefs.contains(MainActivity.MESSAGES)) return;
+        importing = true;
+        writer.execute(new LegacyMigration(prefs));
+    }
+
+    // Imports the old SharedPreferences history. Like Compaction, each run()
+    // does one chunk and queues the next behind whatever arrived meanwhile.
+    private final class LegacyMigration implements Runnable {
+        private final SharedPreferences prefs;
+        private LegacyImport source;
+
+        LegacyMigration(SharedPreferences prefs) {
+            this.prefs = prefs;
+        }
+
+        @Override
+        public void run() {
+            boolean more;
+            try {
+                more = runChunk(getWritableDatabase());
+            } catch (RuntimeException e) {
+                // The checkpoint is intact; the next start carries on from it.
+                Log.e(TAG, "Import of the old history failed", e);
+                synchronized (MessageStore.this) {
+                    importing = false;
+                }
+                return;
+            }
+            ImportListener listener = importListener;
+            if (more) {
+                if (listener != null) listener.onImportProgress(source.position(), false);
+                writer.execute(this);
+            } else {
+                finish();
+            }
+        }
+
+        private boolean runChunk(SQLiteDatabase db) {
+            if (source == null) {
+                String stored;
+                try {
+                    stored = prefs.getString(MainActivity.MESSAGES, "");
+                } catch (ClassCastException e) {
+                    Log.d(TAG, "Dropping message history in an unknown format.");
+                    stored = "";
+                }
+                source = new LegacyImport(stored);
+                int resumeAt = (int) DatabaseUtils.longForQuery(db, "SELECT coalesce(max(position), 0) FROM "
+                        + MIGRATIONS_TABLE + " WHERE name = ?", new String[]{LEGACY_PREFS_MIGRATION});
+                // Re-reading what was imported costs parsing only.
+                if (resumeAt > 0) {
+                    source.next(resumeAt);
+                    Log.d(TAG, "Resuming the import of the old history at " + resumeAt + ".");
+                }
+            }
+
+            List<LegacyImport.Entry> entries = source.next(IMPORT_CHUNK_ROWS);
+            ContentValues progress = new ContentValues();
+            progress.put("name", LEGACY_PREFS_MIGRATION);
+            progress.put("position", source.position());
+            db.beginTransaction();
+            try {
+                for (LegacyImport.Entry e : entries) {
+                    ContentValues values = toValues(e.message, e.reason);
+                    values.put(COL_ID, LegacyImport.rowId(e.index));
+                    db.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+                }
+                db.insertWithOnConflict(MIGRATIONS_TABLE, null, progress, SQLiteDatabase.CONFLICT_REPLACE);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            return !source.isFinished();
+        }
+
+        private void finish() {
+            prefs.edit().remove(MainActivity.MESSAGES).commit();
+            try {
+                SQLiteDatabase db = getWritableDatabase();
+                db.delete(MIGRATIONS_TABLE, "name = ?", new String[]{LEGACY_PREFS_MIGRATION});
+                rewriteLog(db);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Could not clear the import checkpoint", e);
+            }
+            Log.d(TAG, "Imported " + source.position() + " messages from SharedPreferences.");
+            synchronized (MessageStore.this) {
+                importing = false;
+            }
+            ImportListener listener = importListener;
+            if (listener != null) listener.onImportProgress(source.position(), true);
+        }
+    }
+
+    /**
+     * Runs {@link #compact} when the last run is more than a day old and the
+     * policy deletes anything at all.
+     */
+    void compactIfDue(RetentionPolicy policy) {
+        if (policy.keepsEverything()) return;
+        SharedPreferences prefs = context.getSharedPreferences(MainActivity.SHARED_PREFS, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        if (now - prefs.getLong(LAST_COMPACTION_AT, 0L) >= COMPACT_INTERVAL_MILLIS) compact(policy, now);
+    }
+
+    /**
+     * Deletes what the policy no longer keeps, in the background. A run that
+     * is already going is not started twice.
+     */
+    synchronized void compact(RetentionPolicy policy, long nowMillis) {
+        if (compacting) return;
+        compacting = true;
+        writer.execute(new Compaction(policy, nowMillis));
+    }
+
+    /** The policy the settings describe. */
+    static RetentionPolicy retentionPolicy(SharedPreferences prefs) {
+        return RetentionPolicy.fromSettings(
+                prefs.getString(MainActivity.RETENTION_MAX_COUNT, ""),
+                prefs.getString(MainActivity.RETENTION_MAX_AGE_DAYS, ""),
+                prefs.getString(MainActivity.RETENTION_STATUS_AGES, RetentionPolicy.DEFAULT_STATUS_AGES));
+    }
+
+    // One compaction run. Each run() does one chunk and queues the next, so
+    // inserts queued meanwhile go first.
+    private final class Compaction implements Runnable {
+        private final List<String> wheres = new ArrayList<>();
+        private final List<String[]> whereArgs = new ArrayList<>();
+        private final int maxCount;
+        private final long startedAt = System.currentTimeMillis();
+        private int step;
+        private boolean countLimitAdded;
+        private long rowsDeleted;
+        private long pagesBefore = -1;
+
+        Compaction(RetentionPolicy policy, long nowMillis) {
+            for (Map.Entry<String, Integer> e : policy.maxAgeDaysByStatus.entrySet()) {
+                wheres.add(COL_STATUS + " = ? AND " + COL_TIMESTAMP + " < ?");
+                whereArgs.add(new String[]{e.getKey(), String.valueOf(RetentionPolicy.cutoffMillis(e.getValue(), nowMillis))});
+            }
+            if (policy.maxAgeDays > 0) {
+                wheres.add(COL_TIMESTAMP + " < ?");
+                whereArgs.add(new String[]{String.valueOf(RetentionPolicy.cutoffMillis(policy.maxAgeDays, nowMillis))});
+            }
+            maxCount = policy.maxCount;
+        }
+
+        @Override
+        public void run() {
+            boolean more;
+            try {
+                more = runChunk(getWritableDatabase());
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Compaction failed", e);
+                more = false;
+            }
+            if (more) {
+                writer.execute(this);
+            } else {
+                finish();
+            }
+        }
+
+        private boolean runChunk(SQLiteDatabase db) {
+            if (pagesBefore < 0) pagesBefore = pageCount(db);
+
+            // The count limit is resolved once the age limits are applied, as
+            // "older than the maxCount-th newest message".
+            if (step == wheres.size() && maxCount > 0 && !countLimitAdded) {
+                countLimitAdded = true;
+                try (Cursor c = db.query(TABLE, new String[]{COL_TIMESTAMP, COL_ID}, null, null, null, null,
+                        COL_TIMESTAMP + " DESC, " + COL_ID + " DESC", maxCount + ",1")) {
+                    if (c.moveToFirst()) {
+                        String ts = String.valueOf(c.getLong(0));
+                        wheres.add(COL_TIMESTAMP + " < ? OR (" + COL_TIMESTAMP + " = ? AND " + COL_ID + " <= ?)");
+                        whereArgs.add(new String[]{ts, ts, String.valueOf(c.getLong(1))});
+                    }
+                }
+            }
+
+            if (step < wheres.size()) {
+                int deleted = db.delete(TABLE, COL_ID + " IN (SELECT " + COL_ID + " FROM " + TABLE
+                        + " WHERE " + wheres.get(step) + " LIMIT " + COMPACT_CHUNK_ROWS + ")", whereArgs.get(step));
+                rowsDeleted += deleted;
+                if (deleted < COMPACT_CHUNK_ROWS) step++;
+                return true;
+            }
+
+            if (DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null) == 0) return false;
+            long pages = pageCount(db);
+            // Each row of the pragma's result is one page handed back.
+            try (Cursor c = db.rawQuery("PRAGMA incremental_vacuum(" + VACUUM_CHUNK_PAGES + ")", null)) {
+                while (c.moveToNext()) {
+                    // stepping does the work
+                }
+            }
+            // Without auto-vacuum (databases created before it was turned on)
+            // the free pages stay in the file and are reused by later inserts.
+            return pageCount(db) < pages;
+        }
+
+        private void finish() {
+            long bytes = 0;
+            try {
+                SQLiteDatabase db = getWritableDatabase();
+                bytes = (pagesBefore - pageCount(db)) * DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+                if (rowsDeleted > 0) rewriteLog(db);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Could not measure compaction", e);
+            }
+            context.getSharedPreferences(MainActivity.SHARED_PREFS, Context.MODE_PRIVATE).edit()
+                    .putLong(LAST_COMPACTION_AT, startedAt)
+                    .putLong(LAST_COMPACTION_ROWS, rowsDeleted)
+                    .putLong(LAST_COMPACTION_BYTES, Math.max(0, bytes))
+                    .apply();
+            Log.d(TAG, "Compaction deleted " + rowsDeleted + " messages and reclaimed " + bytes + " bytes in "
+                    + (System.currentTimeMillis() - startedAt) + " ms.");
+            synchronized (MessageStore.this) {
+                compacting = false;
+            }
+        }
+    }
+
+    private static long pageCount(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+    }
+
+    private static ContentValues toValues(Message message, String reason) {
+        ContentValues values = new ContentValues();
+        values.put(COL_SENDER, message.sender);
+        values.put(COL_BODY, message.getContent());
+        values.put(COL_STATUS, message.status.label);
+        values.put(COL_REASON, reason);
+        values.put(COL_TIMESTAMP, message.timestamp);
+        values.put(COL_UPI_REF, message.upiRefId);
+        if (message.amountPaise != PaymentDetails.NO_AMOUNT) values.put(COL_AMOUNT_PAISE, message.amountPaise);
+        values.put(COL_VPA, message.senderVpa);
+        values.put(COL_BANK, message.bank);
+        if (message.paidAtMillis != 0L) values.put(COL_PAID_AT, message.paidAtMillis);
+        return values;
+    }
+}
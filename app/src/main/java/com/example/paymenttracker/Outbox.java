@@ -0,0 +1,785 @@
+package com.example.paymenttracker;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Every payment notification on its way to a {@link Forwarder}.
+ *
+ * {@link #dispatch} writes the payment to its own small database (outbox.db,
+ * so deliveries never wait behind a history compaction) once per forwarder,
+ * in one transaction, before anything is sent. Each forwarder then has its
+ * own sender thread (a lane), so the forwarders are sent to in parallel and
+ * a slow, throttled or dead one never holds up another. A lane's thread
+ * stops once nothing is pending for it. In a lane the oldest
+ * row goes first and nothing behind it is sent until it has gone, so each
+ * forwarder sees payments in the order they arrived. A row is deleted once
+ * the forwarder accepts it. Delivery is at least once: a process killed
+ * between the reply and the delete sends that row again.
+ *
+ * A failed send is retried after backoffMillis, which doubles per attempt up
+ * to MAX_DELAY_MILLIS with jitter so a fleet of phones coming back online does
+ * not retry in step. Waiting rows are woken by an alarm and after a reboot
+ * (see {@link OutboxReceiver}). When the network comes back, rows that failed
+ * for want of one are sent straight away. Rows that the server itself failed
+ * keep their backoff. After MAX_ATTEMPTS a row is dead-lettered: kept, with
+ * its last error, but no longer sent, so the rows behind it move on. Sends
+ * that found no network are not counted as attempts, only in the backoff, so
+ * a phone that is offline for days still has its payments when it is back.
+ * A reply that a retry would not change dead-letters the row at once. That is
+ * any 4xx except 408 Request Timeout and 429 Too Many Requests. Dead letters
+ * are dropped after DEAD_KEEP_MILLIS.
+ * A forwarder with MAX_PENDING rows already waiting has new ones
+ * dead-lettered straight away, so one that is down for days cannot grow the
+ * outbox without bound.
+ *
+ * With {@link WebhookBatching} on, webhook rows wait out the linger time
+ * after being queued and then go as one POST with the rows behind them, or
+ * sooner once a full batch is waiting. A batch that fails is retried whole.
+ * One refused with a reply a retry would not change, such as 413 Payload Too
+ * Large or a 400 over one bad row, is not dead-lettered but sent again in
+ * halves, down to single rows, so only a row refused on its own is. The ids
+ * a reply lists as failed stay first in line and, once their backoff ends,
+ * go again together with the rows behind them.
+ *
+ * A forwarder can also hold a send back, as Telegram does for its rate
+ * limits ({@link TelegramRateLimiter}). A send held back, or answered with a
+ * request to slow down, waits in its lane for as long as asked; it does not
+ * count as a failed attempt.
+ *
+ * Rows name their forwarder by {@link Forwarder#id}, and the forwarder is
+ * looked up in the settings when a row is sent, not when it is queued, so
+ * fixing the settings also fixes what is still waiting. Rows for a
+ * forwarder that has been removed are dead-lettered.
+ */
+final class Outbox extends SQLiteOpenHelper {
+    private static final String TAG = "Outbox";
+
+    private static final String DATABASE_NAME = "outbox.db";
+    private static final int DATABASE_VERSION = 2;
+
+    private static final String TABLE = "outbox";
+    private static final String COL_ID = "_id";
+    // The forwarder's id.
+    private static final String COL_DESTINATION = "destination";
+    private static final String COL_PAYLOAD = "payload";
+    private static final String COL_STATE = "state";
+    private static final String COL_ATTEMPTS = "attempts";
+    private static final String COL_NEXT_ATTEMPT_AT = "next_attempt_at";
+    private static final String COL_CREATED_AT = "created_at";
+    private static final String COL_LAST_ERROR = "last_error";
+    // How many failed sends in a row, up to the last, found no network; those
+    // are not counted in attempts.
+    private static final String COL_OFFLINE = "offline";
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_DEAD = 1;
+
+    static final int MAX_ATTEMPTS = 15;
+    static final long BASE_DELAY_MILLIS = 5_000L;
+    static final long MAX_DELAY_MILLIS = 60L * 60 * 1000;
+    static final int MAX_PENDING = 5_000;
+    private static final long DEAD_KEEP_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    private static final int MAX_ERROR_CHARS = 200;
+
+    static final String ACTION_RETRY = "com.example.paymenttracker.OUTBOX_RETRY";
+
+    private static Outbox instance;
+
+    private final Context context;
+    // Writes new rows and finds the lanes with work, so neither waits on a send.
+    private final ExecutorService intake = Executors.newSingleThreadExecutor();
+    // Guarded by itself, so a lane is never retired while work is handed to it.
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private final Random random = new Random();
+    private final Map<String, Depth> depths = new ConcurrentHashMap<>();
+
+    // One forwarder's sender thread. wakeUp, its in-process wake-up for its
+    // earliest pending row, is only touched on that thread; the alarm backs
+    // it up.
+    private static final class Lane {
+        final ScheduledThreadPoolExecutor thread = new ScheduledThreadPoolExecutor(1);
+        ScheduledFuture<?> wakeUp;
+
+        Lane() {
+            thread.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    static synchronized Outbox get(Context context) {
+        if (instance == null) {
+            instance = new Outbox(context.getApplicationContext());
+            instance.watchNetwork();
+            // Picks up whatever a killed process left behind.
+            instance.kick(null);
+        }
+        return instance;
+    }
+
+    private Outbox(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COL_DESTINATION + " TEXT NOT NULL, "
+                + COL_PAYLOAD + " TEXT NOT NULL, "
+                + COL_STATE + " INTEGER NOT NULL, "
+                + COL_ATTEMPTS + " INTEGER NOT NULL, "
+                + COL_NEXT_ATTEMPT_AT + " INTEGER NOT NULL, "
+                + COL_CREATED_AT + " INTEGER NOT NULL, "
+                + COL_LAST_ERROR + " TEXT, "
+                + COL_OFFLINE + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX idx_outbox_head ON " + TABLE + " (" + COL_DESTINATION + ", " + COL_STATE + ", " + COL_ID + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_OFFLINE + " INTEGER NOT NULL DEFAULT 0");
+        }
+    }
+
+    // Runs task on the forwarder's lane, starting one if it has none.
+    private void submit(String forwarderId, Runnable task) {
+        synchronized (lanes) {
+            lanes.computeIfAbsent(forwarderId, id -> new Lane()).thread.execute(task);
+        }
+    }
+
+    // On the lane's own thread: stops it if nothing else has been handed to
+    // it. Work handed over later starts a new lane.
+    private void retire(String forwarderId, Lane lane) {
+        synchronized (lanes) {
+            if (lanes.get(forwarderId) == lane && lane.thread.getQueue().isEmpty()) {
+                lanes.remove(forwarderId);
+                lane.thread.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Queues a payment for each forwarder and starts their lanes on it. A
+     * forwarder's row is sent as soon as it is first in line, or once it has
+     * lingered if the forwarder batches.
+     */
+    void dispatch(List<Forwarder> forwarders, PaymentDetails details, String fullSms) {
+        long now = System.currentTimeMillis();
+        intake.execute(() -> {
+            List<String> queued = new ArrayList<>(forwarders.size());
+            Map<Forwarder, String> refused = new HashMap<>();
+            try {
+                SQLiteDatabase db = getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    for (Forwarder forwarder : forwarders) {
+                        String payload;
+                        try {
+                            payload = forwarder.payload(details, fullSms);
+                        } catch (JSONException e) {
+                            refused.put(forwarder, "Error creating JSON payload: " + e.getMessage());
+                            continue;
+                        }
+                        boolean full = DatabaseUtils.queryNumEntries(db, TABLE, COL_DESTINATION + " = ? AND "
+                                + COL_STATE + " = " + STATE_PENDING, new String[]{forwarder.id()}) >= MAX_PENDING;
+                        ContentValues values = new ContentValues();
+                        values.put(COL_DESTINATION, forwarder.id());
+                        values.put(COL_PAYLOAD, payload);
+                        values.put(COL_STATE, full ? STATE_DEAD : STATE_PENDING);
+                        values.put(COL_ATTEMPTS, 0);
+                        values.put(COL_NEXT_ATTEMPT_AT, now + forwarder.batching().lingerMillis);
+                        values.put(COL_CREATED_AT, now);
+                        if (full) {
+                            values.put(COL_LAST_ERROR, "Queue full");
+                            refused.put(forwarder, MAX_PENDING + " payments are already waiting; not queued");
+                        }
+                        db.insertOrThrow(TABLE, null, values);
+                        if (!full) queued.add(forwarder.id());
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Could not queue a payment", e);
+                for (Forwarder forwarder : forwarders) {
+                    broadcastFailure(forwarder.kind(), forwarder.label(), "Could not queue the delivery: " + e.getMessage());
+                }
+                return;
+            }
+            for (Map.Entry<Forwarder, String> r : refused.entrySet()) {
+                Log.e(TAG, r.getKey().label() + ": " + r.getValue());
+                broadcastFailure(r.getKey().kind(), r.getKey().label(), r.getValue());
+            }
+            for (String id : queued) {
+                submit(id, () -> drain(id));
+            }
+        });
+    }
+
+    /**
+     * Starts every lane with something pending, then runs done (if any). The
+     * sends themselves carry on after done. If the process is killed before
+     * they finish, the alarm set here wakes the outbox again.
+     */
+    void kick(Runnable done) {
+        intake.execute(() -> drainAll(done));
+    }
+
+    /**
+     * Rows that failed for want of a network are sent now rather than when
+     * their backoff ends. Rows a server failed keep waiting, so a network
+     * that keeps dropping does not hammer a server that is down.
+     */
+    void retryNow() {
+        intake.execute(() -> {
+            try {
+                ContentValues values = new ContentValues();
+                values.put(COL_NEXT_ATTEMPT_AT, System.currentTimeMillis());
+                getWritableDatabase().update(TABLE, values, COL_STATE + " = " + STATE_PENDING + " AND "
+                        + COL_OFFLINE + " > 0", null);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Could not reset the backoff", e);
+            }
+            drainAll(null);
+        });
+    }
+
+    // On the intake thread: starts every lane that has pending rows.
+    private void drainAll(Runnable done) {
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            List<String> ids = new ArrayList<>();
+            try (Cursor c = db.rawQuery("SELECT DISTINCT " + COL_DESTINATION + " FROM " + TABLE
+                    + " WHERE " + COL_STATE + " = " + STATE_PENDING, null)) {
+                while (c.moveToNext()) ids.add(c.getString(0));
+            }
+            scheduleAlarm(db);
+            for (String id : ids) {
+                submit(id, () -> drain(id));
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not open the outbox", e);
+        } finally {
+            if (done != null) done.run();
+        }
+    }
+
+    /** What is queued for one forwarder, as of the last time its lane looked. */
+    static final class Depth {
+        static final Depth EMPTY = new Depth(0, 0, 0L);
+
+        final int pending;
+        final int dead;
+        // When the oldest pending row was queued; 0 when none are.
+        final long oldestPendingAt;
+
+        Depth(int pending, int dead, long oldestPendingAt) {
+            this.pending = pending;
+            this.dead = dead;
+            this.oldestPendingAt = oldestPendingAt;
+        }
+    }
+
+    Depth depth(String forwarderId) {
+        Depth depth = depths.get(forwarderId);
+        return depth != null ? depth : Depth.EMPTY;
+    }
+
+    /** Every forwarder id with rows in the outbox, including removed ones. */
+    Set<String> queuedForwarderIds() {
+        return depths.keySet();
+    }
+
+    /**
+     * How long to wait after the given number of failed attempts: half the
+     * doubled delay plus a random share of the other half, so never less
+     * than half of it.
+     */
+    static long backoffMillis(int attempts, Random random) {
+        long ceiling = BASE_DELAY_MILLIS << Math.min(Math.max(attempts - 1, 0), 20);
+        ceiling = Math.min(ceiling, MAX_DELAY_MILLIS);
+        long half = ceiling / 2;
+        return half + (long) (random.nextDouble() * (ceiling - half));
+    }
+
+    /**
+     * A row's attempts after a failed send. A send that found no network is
+     * not charged, so being offline never runs a row out of attempts.
+     */
+    static int attemptsAfter(int attempts, Failure failure) {
+        return failure == Failure.OFFLINE ? attempts : attempts + 1;
+    }
+
+    /** A row's failed sends in a row that found no network, after one more failed send. */
+    static int offlineAfter(int offline, Failure failure) {
+        return failure == Failure.OFFLINE ? offline + 1 : 0;
+    }
+
+    /** Whether a row with these attempts, counting the send that just failed, is dead-lettered. */
+    static boolean deadLetters(int attempts, Failure failure) {
+        return failure == Failure.PERMANENT || attempts >= MAX_ATTEMPTS;
+    }
+
+    /** The batching the settings describe; off unless a batch size over 1 is set. */
+    static WebhookBatching webhookBatching(SharedPreferences prefs) {
+        return WebhookBatching.fromSettings(
+                prefs.getString(MainActivity.WEBHOOK_BATCH_SIZE, ""),
+                prefs.getString(MainActivity.WEBHOOK_BATCH_LINGER_SECONDS, ""),
+                prefs.getBoolean(MainActivity.WEBHOOK_GZIP, false));
+    }
+
+    // On the forwarder's lane only.
+    private void drain(String forwarderId) {
+        SQLiteDatabase db;
+        try {
+            db = getWritableDatabase();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not open the outbox", e);
+            return;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(MainActivity.SHARED_PREFS, Context.MODE_PRIVATE);
+        Forwarder forwarder = null;
+        for (Forwarder f : Forwarders.fromSettings(prefs)) {
+            if (f.id().equals(forwarderId)) forwarder = f;
+        }
+        long throttledUntil = 0L;
+        try {
+            throttledUntil = drain(db, forwarderId, forwarder);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Delivery to " + forwarderId + " stopped", e);
+        }
+        try {
+            db.delete(TABLE, COL_DESTINATION + " = ? AND " + COL_STATE + " = ? AND " + COL_CREATED_AT + " < ?",
+                    new String[]{forwarderId, String.valueOf(STATE_DEAD),
+                            String.valueOf(System.currentTimeMillis() - DEAD_KEEP_MILLIS)});
+            countDepth(db, forwarderId);
+            scheduleNext(db, forwarderId, throttledUntil);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not schedule the next delivery", e);
+        }
+    }
+
+    static final class Row {
+        final long id;
+        final String payload;
+        final int attempts;
+        final int offline;
+        final long nextAttemptAt;
+
+        Row(long id, String payload, int attempts, int offline, long nextAttemptAt) {
+            this.id = id;
+            this.payload = payload;
+            this.attempts = attempts;
+            this.offline = offline;
+            this.nextAttemptAt = nextAttemptAt;
+        }
+    }
+
+    // The first limit pending rows for a forwarder, oldest first.
+    private static List<Row> pending(SQLiteDatabase db, String forwarderId, int limit) {
+        List<Row> rows = new ArrayList<>(Math.min(limit, 64));
+        try (Cursor c = db.query(TABLE, new String[]{COL_ID, COL_PAYLOAD, COL_ATTEMPTS, COL_OFFLINE, COL_NEXT_ATTEMPT_AT},
+                COL_DESTINATION + " = ? AND " + COL_STATE + " = ?",
+                new String[]{forwarderId, String.valueOf(STATE_PENDING)},
+                null, null, COL_ID, String.valueOf(limit))) {
+            while (c.moveToNext()) {
+                rows.add(new Row(c.getLong(0), c.getString(1), c.getInt(2), c.getInt(3), c.getLong(4)));
+            }
+        }
+        return rows;
+    }
+
+    // Returns when a throttled lane may send again, or 0 when it is not
+    // throttled. forwarder is null when the settings no longer have it.
+    private long drain(SQLiteDatabase db, String forwarderId, Forwarder forwarder) {
+        WebhookBatching batching = forwarder instanceof WebhookForwarder ? forwarder.batching() : WebhookBatching.OFF;
+        HttpClients.Destination kind = forwarder != null ? forwarder.kind() : kindOf(forwarderId);
+        String label = forwarder != null ? forwarder.label() : forwarderId;
+        int limit = batching.maxSize;
+        while (true) {
+            List<Row> rows = pending(db, forwarderId, limit);
+            if (rows.isEmpty()) return 0L;
+            Row head = rows.get(0);
+            long now = System.currentTimeMillis();
+            if (!due(rows, batching, now)) return 0L;
+
+            if (!batching.enabled()) {
+                if (forwarder != null) {
+                    long wait = forwarder.waitBeforeSend(now);
+                    if (wait > 0) return now + wait;
+                }
+                Outcome outcome = send(forwarder, head.payload);
+                if (outcome.error == null) {
+                    delete(db, rows);
+                    continue;
+                }
+                if (outcome.retryAfterMillis > 0) {
+                    Log.w(TAG, label + " delivery " + head.id + " throttled for "
+                            + outcome.retryAfterMillis / 1000 + " s");
+                    return System.currentTimeMillis() + outcome.retryAfterMillis;
+                }
+                if (!fail(db, kind, label, rows, outcome)) return 0L;
+                continue;
+            }
+
+            List<Row> failed = new ArrayList<>();
+            Outcome outcome = sendBatch((WebhookForwarder) forwarder, rows, batching, failed);
+            int before = limit;
+            limit = batchSizeAfter(limit, rows.size(), outcome.failure, batching.maxSize);
+            if (outcome.error == null) {
+                delete(db, rows);
+                continue;
+            }
+            if (limit < before) {
+                Log.w(TAG, label + " refused a batch of " + rows.size() + ", sending " + limit
+                        + " at a time: " + outcome.error);
+                continue;
+            }
+            List<Row> accepted = new ArrayList<>(rows);
+            accepted.removeAll(failed);
+            delete(db, accepted);
+            if (!fail(db, kind, label, failed, outcome)) return 0L;
+        }
+    }
+
+    /**
+     * Whether a lane sends now, from its first pending rows, oldest first:
+     * once the head is past its backoff or linger, or straight away when a
+     * full batch of rows never tried is waiting. Otherwise the rows behind
+     * the head wait with it, so none goes before it.
+     */
+    static boolean due(List<Row> rows, WebhookBatching batching, long now) {
+        Row head = rows.get(0);
+        boolean full = batching.enabled() && rows.size() == batching.maxSize
+                && head.attempts == 0 && head.offline == 0;
+        return full || head.nextAttemptAt <= now;
+    }
+
+    /**
+     * How many rows the next batch may hold after sent rows went with this
+     * failure (null when accepted). A batch refused with a reply a retry would
+     * not change is halved, since the server may take smaller ones or be
+     * refusing one bad row; a batch of one is not, and takes the failure.
+     * Accepted batches double the size again, up to maxSize.
+     */
+    static int batchSizeAfter(int limit, int sent, Failure failure, int maxSize) {
+        if (failure == null) return Math.min(limit * 2, maxSize);
+        return failure == Failure.PERMANENT && sent > 1 ? sent / 2 : limit;
+    }
+
+    // The kind a removed forwarder was, from its id.
+    private static HttpClients.Destination kindOf(String forwarderId) {
+        return forwarderId.regionMatches(true, 0, "telegram", 0, 8)
+                ? HttpClients.Destination.TELEGRAM : HttpClients.Destination.WEBHOOK;
+    }
+
+    private static void delete(SQLiteDatabase db, List<Row> rows) {
+        if (rows.isEmpty()) return;
+        db.beginTransaction();
+        try {
+            for (Row row : rows) db.delete(TABLE, COL_ID + " = ?", new String[]{String.valueOf(row.id)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Counts a failed attempt against each row (unless it found no network):
+     * backed off together, or dead-lettered once out of attempts or at once
+     * for a permanent failure. True when they were all dead-lettered, so the
+     * rows behind them can go.
+     */
+    private boolean fail(SQLiteDatabase db, HttpClients.Destination kind, String label, List<Row> rows,
+                         Outcome outcome) {
+        String error = outcome.error;
+        Failure failure = outcome.failure;
+        boolean permanent = failure == Failure.PERMANENT;
+        String lastError = error.length() > MAX_ERROR_CHARS ? error.substring(0, MAX_ERROR_CHARS) : error;
+        Row head = rows.get(0);
+        // offline failures still grow the backoff, up to its cap
+        int failures = attemptsAfter(head.attempts, failure) + offlineAfter(head.offline, failure);
+        long retryAt = System.currentTimeMillis() + backoffMillis(failures, random);
+        int dead = 0;
+        boolean firstFailure = false;
+        db.beginTransaction();
+        try {
+            for (Row row : rows) {
+                int rowAttempts = attemptsAfter(row.attempts, failure);
+                int rowOffline = offlineAfter(row.offline, failure);
+                ContentValues values = new ContentValues();
+                values.put(COL_ATTEMPTS, rowAttempts);
+                values.put(COL_LAST_ERROR, lastError);
+                values.put(COL_OFFLINE, rowOffline);
+                if (deadLetters(rowAttempts, failure)) {
+                    values.put(COL_STATE, STATE_DEAD);
+                    dead++;
+                } else {
+                    values.put(COL_NEXT_ATTEMPT_AT, retryAt);
+                    firstFailure |= row.attempts == 0 && row.offline == 0;
+                }
+                db.update(TABLE, values, COL_ID + " = ?", new String[]{String.valueOf(row.id)});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        String what = rows.size() == 1 ? "delivery " + rows.get(0).id : rows.size() + " deliveries";
+        if (dead > 0) {
+            Log.e(TAG, label + " " + what + ": " + dead + " dead-lettered: " + error);
+            broadcastFailure(kind, label, "Gave up on " + dead
+                    + (permanent ? "" : " after " + MAX_ATTEMPTS + " attempts") + ": " + error);
+        }
+        if (dead < rows.size()) {
+            Log.w(TAG, label + " " + what + " failed (" + (failure == Failure.OFFLINE ? "no network"
+                    : "attempt " + attemptsAfter(head.attempts, failure)) + "), retrying in "
+                    + (retryAt - System.currentTimeMillis()) / 1000 + " s: " + error);
+            if (firstFailure) broadcastFailure(kind, label, error + ". It will be retried.");
+        }
+        return dead == rows.size();
+    }
+
+    /** Why a send failed, which decides when, or whether, it is tried again. */
+    enum Failure {
+        // Retried after a backoff: a 5xx, 408 or 429, or the connection broke.
+        TEMPORARY,
+        // Not counted as an attempt; retried after a backoff, or as soon as
+        // the network is back.
+        OFFLINE,
+        // Would fail the same way again, so the rows are dead-lettered at once.
+        PERMANENT
+    }
+
+    static Failure failureOf(int httpCode) {
+        boolean clientError = httpCode >= 400 && httpCode < 500;
+        return clientError && httpCode != 408 && httpCode != 429 ? Failure.PERMANENT : Failure.TEMPORARY;
+    }
+
+    static Failure failureOf(IOException e) {
+        return e instanceof UnknownHostException || e instanceof ConnectException
+                || e instanceof NoRouteToHostException ? Failure.OFFLINE : Failure.TEMPORARY;
+    }
+
+    // What one send came to: accepted (no error), failed, or throttled.
+    private static final class Outcome {
+        static final Outcome ACCEPTED = new Outcome(null, null, 0L);
+
+        final String error;
+        final Failure failure;
+        // Above 0 when the forwarder asked for a pause rather than failing.
+        final long retryAfterMillis;
+
+        Outcome(String error, Failure failure, long retryAfterMillis) {
+            this.error = error;
+            this.failure = failure;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+    }
+
+    private static Outcome send(Forwarder forwarder, String payload) {
+        if (forwarder == null) return new Outcome("No longer configured", Failure.PERMANENT, 0L);
+        Request request;
+        try {
+            request = forwarder.request(payload);
+        } catch (JSONException e) {
+            return new Outcome("Unreadable payload: " + e.getMessage(), Failure.PERMANENT, 0L);
+        }
+        try (Response response = HttpClients.get(forwarder.kind()).newCall(request).execute()) {
+            if (response.isSuccessful()) return Outcome.ACCEPTED;
+            String body = response.body() != null ? response.body().string() : "empty";
+            long retryAfter = forwarder.retryAfterMillis(response.code(), body, response.header("Retry-After"),
+                    System.currentTimeMillis());
+            return new Outcome("HTTP " + response.code() + ", Body: " + body, failureOf(response.code()), retryAfter);
+        } catch (IOException e) {
+            return new Outcome(e.getClass().getSimpleName() + ": " + e.getMessage(), failureOf(e), 0L);
+        }
+    }
+
+    /**
+     * Sends rows as one webhook POST. Accepted when all were; else why not,
+     * with the rows to retry added to failed.
+     */
+    private static Outcome sendBatch(WebhookForwarder forwarder, List<Row> rows, WebhookBatching batching,
+                                    List<Row> failed) {
+        List<Long> ids = new ArrayList<>(rows.size());
+        List<String> payloads = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            ids.add(row.id);
+            payloads.add(row.payload);
+        }
+        Request request;
+        try {
+            byte[] body = WebhookBatching.body(ids, payloads).getBytes(StandardCharsets.UTF_8);
+            if (batching.gzip) body = WebhookBatching.gzip(body);
+            request = forwarder.request(RequestBody.create(body, HttpClients.JSON), batching.gzip);
+        } catch (JSONException | IOException e) {
+            failed.addAll(rows);
+            return new Outcome("Could not build the batch: " + e.getMessage(), Failure.PERMANENT, 0L);
+        }
+        try (Response response = HttpClients.get(HttpClients.Destination.WEBHOOK).newCall(request).execute()) {
+            String body = response.body() != null ? response.body().string() : "";
+            if (!response.isSuccessful()) {
+                failed.addAll(rows);
+                return new Outcome("HTTP " + response.code() + ", Body: " + (body.isEmpty() ? "empty" : body),
+                        failureOf(response.code()), 0L);
+            }
+            Set<Long> rejected = WebhookBatching.failedIds(body);
+            if (rejected.isEmpty()) return Outcome.ACCEPTED;
+            for (Row row : rows) {
+                if (rejected.contains(row.id)) failed.add(row);
+            }
+            return failed.isEmpty() ? Outcome.ACCEPTED : new Outcome(
+                    "Rejected " + failed.size() + " of " + rows.size() + " in the batch", Failure.TEMPORARY, 0L);
+        } catch (IOException e) {
+            failed.addAll(rows);
+            return new Outcome(e.getClass().getSimpleName() + ": " + e.getMessage(), failureOf(e), 0L);
+        }
+    }
+
+    private void countDepth(SQLiteDatabase db, String forwarderId) {
+        int pending = 0;
+        int dead = 0;
+        long oldestPendingAt = 0L;
+        try (Cursor c = db.rawQuery("SELECT " + COL_STATE + ", count(*), min(" + COL_CREATED_AT + ") FROM " + TABLE
+                + " WHERE " + COL_DESTINATION + " = ? GROUP BY " + COL_STATE, new String[]{forwarderId})) {
+            while (c.moveToNext()) {
+                if (c.getInt(0) == STATE_PENDING) {
+                    pending = c.getInt(1);
+                    oldestPendingAt = c.getLong(2);
+                } else {
+                    dead = c.getInt(1);
+                }
+            }
+        }
+        if (pending == 0 && dead == 0) {
+            depths.remove(forwarderId);
+        } else {
+            depths.put(forwarderId, new Depth(pending, dead, oldestPendingAt));
+        }
+    }
+
+    // Wakes this lane for its earliest pending row, or when its throttle
+    // ends, or retires it when nothing is pending; and sets the alarm for the
+    // earliest row of any lane.
+    private void scheduleNext(SQLiteDatabase db, String forwarderId, long throttledUntil) {
+        long next = nextAttemptAt(db, forwarderId);
+        if (throttledUntil > 0 && next >= 0) next = Math.max(next, throttledUntil);
+        Lane lane;
+        synchronized (lanes) {
+            lane = lanes.get(forwarderId);
+        }
+        if (lane != null) {
+            if (lane.wakeUp != null) lane.wakeUp.cancel(false);
+            lane.wakeUp = null;
+            if (next >= 0) {
+                long delay = Math.max(next - System.currentTimeMillis(), 0L);
+                lane.wakeUp = lane.thread.schedule(() -> drain(forwarderId), delay, TimeUnit.MILLISECONDS);
+            } else {
+                retire(forwarderId, lane);
+            }
+        }
+        scheduleAlarm(db);
+    }
+
+    // Null forwarderId for any lane; -1 when nothing is pending.
+    private static long nextAttemptAt(SQLiteDatabase db, String forwarderId) {
+        String where = COL_STATE + " = " + STATE_PENDING;
+        String[] args = null;
+        if (forwarderId != null) {
+            where += " AND " + COL_DESTINATION + " = ?";
+            args = new String[]{forwarderId};
+        }
+        try (Cursor c = db.rawQuery("SELECT min(" + COL_NEXT_ATTEMPT_AT + ") FROM " + TABLE + " WHERE " + where, args)) {
+            return c.moveToFirst() && !c.isNull(0) ? c.getLong(0) : -1L;
+        }
+    }
+
+    // One alarm, for the earliest pending row; none when nothing is pending.
+    // Synchronized so two lanes cannot set it out of order.
+    private synchronized void scheduleAlarm(SQLiteDatabase db) {
+        long next = nextAttemptAt(db, null);
+        AlarmManager alarms = context.getSystemService(AlarmManager.class);
+        if (alarms == null) return;
+        Intent intent = new Intent(context, OutboxReceiver.class).setAction(ACTION_RETRY);
+        PendingIntent retry = PendingIntent.getBroadcast(context, 0, intent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+        if (next < 0) {
+            alarms.cancel(retry);
+        } else {
+            // Inexact, so Doze may hold it back a little; the network callback covers the common case.
+            alarms.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, Math.max(next, System.currentTimeMillis() + 1000L), retry);
+        }
+    }
+
+    private void watchNetwork() {
+        ConnectivityManager connectivity = context.getSystemService(ConnectivityManager.class);
+        if (connectivity == null) return;
+        try {
+            connectivity.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(@NonNull Network network) {
+                    if (hasPending()) retryNow();
+                }
+            });
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Not watching the network; retries wait for their backoff", e);
+        }
+    }
+
+    private boolean hasPending() {
+        for (Depth depth : depths.values()) {
+            if (depth.pending > 0) return true;
+        }
+        return false;
+    }
+
+    private void broadcastFailure(HttpClients.Destination kind, String label, String message) {
+        Intent statusIntent = new Intent(SmsForwardingService.ACTION_FORWARDING_STATUS);
+        statusIntent.putExtra(SmsForwardingService.EXTRA_STATUS_TYPE, kind == HttpClients.Destination.WEBHOOK
+                ? SmsForwardingService.STATUS_WEBHOOK_FAILURE : SmsForwardingService.STATUS_TELEGRAM_FAILURE);
+        statusIntent.putExtra(SmsForwardingService.EXTRA_MESSAGE, label + " failed: " + message);
+        context.sendBroadcast(statusIntent);
+    }
+}
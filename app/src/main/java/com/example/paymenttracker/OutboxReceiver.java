@@ -0,0 +1,23 @@
+package com.example.paymenttracker;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Wakes the {@link Outbox}: when its retry alarm goes off, and after a reboot
+ * or an app update, which clear alarms. The broadcast is finished as soon as
+ * the lanes have been started, well inside a receiver's time limit; the
+ * sends carry on after it, and the alarm picks up any the process does not
+ * live to finish.
+ *
+ * Not exported: only the system sends it these broadcasts, and no other
+ * app can make the outbox drain.
+ */
+public class OutboxReceiver extends BroadcastReceiver {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        PendingResult result = goAsync();
+        Outbox.get(context).kick(result::finish);
+    }
+}
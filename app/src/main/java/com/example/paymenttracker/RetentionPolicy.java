@@ -0,0 +1,61 @@
+package com.example.paymenttracker;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * How much message history to keep: at most maxCount messages, none older
+ * than maxAgeDays, and per status (IGNORED, SUBMITTED, ...) none older than
+ * that status's own limit. A limit of 0 means no limit.
+ *
+ * Built from the settings strings, so unreadable input is skipped rather
+ * than failing; the per-status limits are written "IGNORED:7, SUBMITTED:365".
+ */
+final class RetentionPolicy {
+
+    static final String DEFAULT_STATUS_AGES = "IGNORED:7";
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    final int maxCount;
+    final int maxAgeDays;
+    final Map<String, Integer> maxAgeDaysByStatus;
+
+    RetentionPolicy(int maxCount, int maxAgeDays, Map<String, Integer> maxAgeDaysByStatus) {
+        this.maxCount = Math.max(0, maxCount);
+        this.maxAgeDays = Math.max(0, maxAgeDays);
+        this.maxAgeDaysByStatus = Collections.unmodifiableMap(new LinkedHashMap<>(maxAgeDaysByStatus));
+    }
+
+    static RetentionPolicy fromSettings(String maxCount, String maxAgeDays, String statusAges) {
+        Map<String, Integer> byStatus = new LinkedHashMap<>();
+        for (String entry : SmsPreFilter.splitList(statusAges)) {
+            int colon = entry.indexOf(':');
+            if (colon <= 0) continue;
+            int days = parseLimit(entry.substring(colon + 1));
+            if (days > 0) byStatus.put(entry.substring(0, colon).toUpperCase(Locale.ROOT), days);
+        }
+        return new RetentionPolicy(parseLimit(maxCount), parseLimit(maxAgeDays), byStatus);
+    }
+
+    /** True when nothing would ever be deleted. */
+    boolean keepsEverything() {
+        return maxCount == 0 && maxAgeDays == 0 && maxAgeDaysByStatus.isEmpty();
+    }
+
+    /** Messages stamped before this are past the given age limit. */
+    static long cutoffMillis(int days, long nowMillis) {
+        return nowMillis - days * DAY_MILLIS;
+    }
+
+    private static int parseLimit(String s) {
+        if (s == null) return 0;
+        try {
+            return Math.max(0, Integer.parseInt(s.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.paymenttracker;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * What was typed into the search box, split into the parts MessageStore can
+ * answer from an index:
+ *
+ *  - amounts, written with a currency ("₹1,499", "rs 500", "inr 200-500") or
+ *    as a bound (">1000", "<=250"), become a range on amount_paise;
+ *  - days ("today", "yesterday", "tuesday", "last tue", "12-10-2025",
+ *    "2025-10-12") become a range on the received timestamp;
+ *  - everything else is a prefix term for the full-text index, which holds
+ *    the sender, body, UPI ref and VPA ("5285", "foo@okaxis", "hdfc").
+ *
+ * All parts must match.
+ */
+final class SearchQuery {
+
+    // In Calendar.DAY_OF_WEEK order.
+    private static final String[] WEEKDAYS = {"sunday", "monday", "tuesday", "wednesday", "thursday", "friday", "saturday"};
+    // Only read as days after "last": on their own they are as likely a name ("sun pharma").
+    private static final String[][] WEEKDAY_ABBREVIATIONS = {
+            {"sun"}, {"mon"}, {"tue", "tues"}, {"wed"}, {"thu", "thur", "thurs"}, {"fri"}, {"sat"}};
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    // Full-text terms, already in MATCH syntax ("foo*", "\"foo okaxis*\"").
+    final List<String> terms;
+    // Inclusive; PaymentDetails.NO_AMOUNT when the query names no amount.
+    final long minPaise;
+    final long maxPaise;
+    // Inclusive start, exclusive end; 0 and Long.MAX_VALUE when unbounded.
+    final long fromMillis;
+    final long toMillis;
+
+    private SearchQuery(List<String> terms, long minPaise, long maxPaise, long fromMillis, long toMillis) {
+        this.terms = Collections.unmodifiableList(terms);
+        this.minPaise = minPaise;
+        this.maxPaise = maxPaise;
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+    }
+
+    static SearchQuery parse(String text, long nowMillis, TimeZone zone) {
+        List<String> terms = new ArrayList<>();
+        long minPaise = PaymentDetails.NO_AMOUNT;
+        long maxPaise = PaymentDetails.NO_AMOUNT;
+        long fromMillis = 0L;
+        long toMillis = Long.MAX_VALUE;
+
+        String[] words = text == null ? new String[0] : text.trim().toLowerCase(Locale.ROOT).split("\\s+");
+        boolean currencyPending = false;
+        for (int i = 0; i < words.length; i++) {
+            String word = words[i];
+            if (word.isEmpty()) continue;
+
+            // Amounts
+            String amount = stripCurrency(word);
+            if (amount != null && amount.isEmpty()) {
+                currencyPending = true;
+                continue;
+            }
+            boolean hasCurrency = amount != null || currencyPending;
+            currencyPending = false;
+            if (amount == null) amount = word;
+            long[] range = amountRange(amount, hasCurrency);
+            if (range != null) {
+                minPaise = range[0];
+                maxPaise = range[1];
+                continue;
+            }
+
+            // Days
+            if (word.equals("last") && i + 1 < words.length && weekday(words[i + 1], true) >= 0) {
+                fromMillis = weekdayStart(weekday(words[++i], true), nowMillis, zone);
+                toMillis = fromMillis + DAY_MILLIS;
+                continue;
+            }
+            long day = dayStart(word, nowMillis, zone);
+            if (day != Long.MIN_VALUE) {
+                fromMillis = day;
+                toMillis = day + DAY_MILLIS;
+                continue;
+            }
+
+            String term = matchTerm(word);
+            if (term != null) terms.add(term);
+        }
+        return new SearchQuery(terms, minPaise, maxPaise, fromMillis, toMillis);
+    }
+
+    boolean isEmpty() {
+        return terms.isEmpty() && minPaise == PaymentDetails.NO_AMOUNT && fromMillis == 0L && toMillis == Long.MAX_VALUE;
+    }
+
+    boolean hasAmount() {
+        return minPaise != PaymentDetails.NO_AMOUNT;
+    }
+
+    /** The full-text MATCH expression, or null when there are no terms. */
+    String matchExpression() {
+        return terms.isEmpty() ? null : String.join(" ", terms);
+    }
+
+    // The word without its leading currency marker, "" for a bare marker, or
+    // null when it has none.
+    private static String stripCurrency(String word) {
+        for (String marker : new String[]{"₹", "rs.", "rs", "inr"}) {
+            if (word.startsWith(marker)) {
+                String rest = word.substring(marker.length());
+                if (rest.isEmpty() || Character.isDigit(rest.charAt(0)) || rest.charAt(0) == '.') return rest;
+            }
+        }
+        return null;
+    }
+
+    // {min, max} in paise for "1,499", "500-1000", ">1000" or "<=250"; a
+    // plain number only counts as an amount after a currency marker.
+    private static long[] amountRange(String word, boolean hasCurrency) {
+        if (word.startsWith(">") || word.startsWith("<")) {
+            boolean above = word.charAt(0) == '>';
+            String number = word.substring(word.startsWith(">=") || word.startsWith("<=") ? 2 : 1);
+            String stripped = stripCurrency(number);
+            long paise = paise(stripped != null ? stripped : number);
+            if (paise == PaymentDetails.NO_AMOUNT) return null;
+            return above ? new long[]{paise, Long.MAX_VALUE} : new long[]{0L, paise};
+        }
+        if (!hasCurrency) return null;
+        int dash = word.indexOf('-', 1);
+        if (dash > 0) {
+            long low = paise(word.substring(0, dash));
+            long high = paise(word.substring(dash + 1));
+            if (low == PaymentDetails.NO_AMOUNT || high == PaymentDetails.NO_AMOUNT) return null;
+            return new long[]{Math.min(low, high), Math.max(low, high)};
+        }
+        long paise = paise(word);
+        return paise == PaymentDetails.NO_AMOUNT ? null : new long[]{paise, paise};
+    }
+
+    private static long paise(String number) {
+        String plain = number.replace(",", "");
+        if (plain.endsWith("/-")) plain = plain.substring(0, plain.length() - 2);
+        if (plain.isEmpty() || !plain.matches("\\d*\\.?\\d+|\\d+\\.")) return PaymentDetails.NO_AMOUNT;
+        return PaymentDetails.toPaise(new BigDecimal(plain));
+    }
+
+    // Midnight starting today.
+    private static Calendar today(long nowMillis, TimeZone zone) {
+        Calendar c = Calendar.getInstance(zone, Locale.ROOT);
+        c.setTimeInMillis(nowMillis);
+        c.set(Calendar.HOUR_OF_DAY, 0);
+        c.set(Calendar.MINUTE, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        return c;
+    }
+
+    // Midnight starting the most recent such weekday before today.
+    private static long weekdayStart(int weekday, long nowMillis, TimeZone zone) {
+        Calendar c = today(nowMillis, zone);
+        int back = (c.get(Calendar.DAY_OF_WEEK) - 1 - weekday + 7) % 7;
+        c.add(Calendar.DAY_OF_MONTH, back == 0 ? -7 : -back);
+        return c.getTimeInMillis();
+    }
+
+    // Midnight starting the day the word names, or Long.MIN_VALUE.
+    private static long dayStart(String word, long nowMillis, TimeZone zone) {
+        Calendar c = today(nowMillis, zone);
+        if (word.equals("today")) return c.getTimeInMillis();
+        if (word.equals("yesterday")) {
+            c.add(Calendar.DAY_OF_MONTH, -1);
+            return c.getTimeInMillis();
+        }
+        int weekday = weekday(word, false);
+        if (weekday >= 0) return weekdayStart(weekday, nowMillis, zone);
+
+        String[] parts = word.split("[-/.]");
+        if (parts.length != 3) return Long.MIN_VALUE;
+        int[] n = new int[3];
+        for (int i = 0; i < 3; i++) {
+            if (parts[i].isEmpty() || parts[i].length() > 4 || !parts[i].chars().allMatch(Character::isDigit)) {
+                return Long.MIN_VALUE;
+            }
+            n[i] = Integer.parseInt(parts[i]);
+        }
+        int year, month, dayOfMonth;
+        if (parts[0].length() == 4) {
+            year = n[0];
+            month = n[1];
+            dayOfMonth = n[2];
+        } else {
+            dayOfMonth = n[0];
+            month = n[1];
+            year = parts[2].length() == 2 ? 2000 + n[2] : n[2];
+        }
+        if (month < 1 || month > 12 || dayOfMonth < 1 || year < 2000) return Long.MIN_VALUE;
+        // not lenient: "31-02-2025" is no date rather than 3 March
+        c.set(year, month - 1, 1);
+        if (dayOfMonth > c.getActualMaximum(Calendar.DAY_OF_MONTH)) return Long.MIN_VALUE;
+        c.set(Calendar.DAY_OF_MONTH, dayOfMonth);
+        return c.getTimeInMillis();
+    }
+
+    // 0 for Sunday to 6 for Saturday, or -1. "tuesday" counts; "tue" and
+    // "tues" only when abbreviations are allowed.
+    private static int weekday(String word, boolean abbreviated) {
+        for (int i = 0; i < WEEKDAYS.length; i++) {
+            if (WEEKDAYS[i].equals(word)) return i;
+            if (abbreviated && Arrays.asList(WEEKDAY_ABBREVIATIONS[i]).contains(word)) return i;
+        }
+        return -1;
+    }
+
+    // The full-text index splits text at ASCII punctuation and lower-cases
+    // it, so a word is split the same way; "foo@okaxis" becomes the phrase
+    // "foo okaxis*". Nothing but letters and digits reaches MATCH, and in
+    // lower case OR, NOT and NEAR are plain words.
+    private static String matchTerm(String word) {
+        StringBuilder tokens = new StringBuilder();
+        int count = 0;
+        boolean inToken = false;
+        for (int i = 0; i < word.length(); i++) {
+            char ch = word.charAt(i);
+            boolean tokenChar = ch >= 128 || Character.isLetterOrDigit(ch);
+            if (tokenChar) {
+                if (!inToken && tokens.length() > 0) tokens.append(' ');
+                if (!inToken) count++;
+                tokens.append(ch);
+            }
+            inToken = tokenChar;
+        }
+        if (count == 0) return null;
+        tokens.append('*');
+        return count == 1 ? tokens.toString() : "\"" + tokens + "\"";
+    }
+}
@@ -17,23 +17,10 @@ import android.telephony.SmsMessage;
 import android.util.Log;
 import android.widget.Toast;
 
-import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.IOException;
-
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
+import java.util.List;
 
 public class SmsForwardingService extends Service {
     private static final String TAG = "SmsForwardingService";
@@ -45,12 +32,18 @@ public class SmsForwardingService extends Service {
     public static final String STATUS_WEBHOOK_FAILURE = "webhookFailure";
 
     private Handler mainHandler;
+    private SmsPreFilter preFilter;
+    private String preFilterConfig;
 
     @Override
     public void onCreate() {
         super.onCreate();
         mainHandler = new Handler(Looper.getMainLooper());
         createNotificationChannel();
+        SharedPreferences sharedPreferences = getSharedPreferences(MainActivity.SHARED_PREFS, Context.MODE_PRIVATE);
+        MessageStore.get(this).compactIfDue(MessageStore.retentionPolicy(sharedPreferences));
+        // Resumes deliveries a killed process left queued.
+        Outbox.get(this);
     }
 
     @Override
@@ -94,7 +87,6 @@ public class SmsForwardingService extends Service {
         }
 
         String fullMessage = sb.toString();
-        String dateString = String.valueOf(timestampMillis);
 
         if (fullMessage == null || fullMessage.isEmpty() || originatingAddress == null) {
             Log.w(TAG, "Received SMS with null/empty body or sender. Skipping...");
@@ -103,65 +95,58 @@ public class SmsForwardingService extends Service {
 
         // Load forwarding / config settings once
         SharedPreferences sharedPreferences = getSharedPreferences(MainActivity.SHARED_PREFS, Context.MODE_PRIVATE);
-        String webhookUrl = sharedPreferences.getString(MainActivity.WEBHOOK_URL, "");
-        String telegramBotToken = sharedPreferences.getString(MainActivity.TELEGRAM_BOT_TOKEN, "");
-        String telegramChatId = sharedPreferences.getString(MainActivity.TELEGRAM_CHAT_ID, "");
-        String secretKey = sharedPreferences.getString(MainActivity.SECRET_KEY, "");
+        List<Forwarder> forwarders = Forwarders.fromSettings(sharedPreferences);
+
+        // Turn away OTPs, promos and blocked senders before parsing
+        SmsPreFilter.Reason rejection = preFilter(sharedPreferences).check(originatingAddress, fullMessage);
 
         // Parse the full message (do this once)
         PaymentDetails details = null;
-        try {
-            details = SmsParser.parse(fullMessage);
-        } catch (Exception e) {
-            Log.e(TAG, "Error parsing SMS: " + e.getMessage(), e);
+        String parseFailure = null;
+        if (rejection == null) {
+            try {
+                ParseResult result = SmsParser.parseResult(fullMessage, originatingAddress, timestampMillis);
+                details = result.details();
+                if (result.status() == ParseResult.Status.OVER_BUDGET) {
+                    Log.w(TAG, "SMS not parsed: " + result.reason());
+                    parseFailure = "BUDGET_EXCEEDED";
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error parsing SMS: " + e.getMessage(), e);
+            }
         }
 
         Message newMessage;
+        String ignoreReason = null;
         if (details != null) {
-            boolean hasWebhook = webhookUrl != null && !webhookUrl.isEmpty();
-            boolean hasTelegram = telegramBotToken != null && !telegramBotToken.isEmpty() &&
-                    telegramChatId != null && !telegramChatId.isEmpty();
-
-            if (!hasWebhook && !hasTelegram) {
+            if (forwarders.isEmpty()) {
                 Log.d(TAG, "Parsed payment SMS but no forwarding options set.");
-                newMessage = new Message(originatingAddress, fullMessage, "SET FORWARDER!", dateString);
+                newMessage = new Message(originatingAddress, fullMessage, Message.Status.SET_FORWARDER, timestampMillis);
                 // Also broadcast an error status to MainActivity
                 broadcastForwardingStatus(STATUS_TELEGRAM_FAILURE, "Please configure Telegram or Webhook settings.");
             } else {
                 Log.d(TAG, "Successfully parsed payment SMS.");
 
-                // Attempt to send webhook (don't let one failure stop processing)
-                if (hasWebhook) {
-                    try {
-                        sendWebhook(details, fullMessage, webhookUrl, secretKey);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Failed to send webhook: " + e.getMessage(), e);
-                        broadcastForwardingStatus(STATUS_WEBHOOK_FAILURE, "Failed to send webhook: " + e.getMessage());
-                    }
-                }
-
-                // Attempt to send Telegram message
-                if (hasTelegram) {
-                    try {
-                        sendTelegramMessage(details, fullMessage, telegramBotToken, telegramChatId);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Failed to send Telegram message: " + e.getMessage(), e);
-                        broadcastForwardingStatus(STATUS_TELEGRAM_FAILURE, "Failed to send Telegram message: " + e.getMessage());
-                    }
-                }
+                // Queued for every forwarder at once; each is sent to on its own lane
+                Outbox.get(this).dispatch(forwarders, details, fullMessage);
 
-                newMessage = new Message(originatingAddress, fullMessage, "SUBMITTED", dateString);
+                newMessage = new Message(originatingAddress, fullMessage, Message.Status.SUBMITTED, timestampMillis);
             }
         } else {
-            Log.d(TAG, "SMS ignored (not a payment message): " + fullMessage);
-            newMessage = new Message(originatingAddress, fullMessage, "IGNORED", dateString);
+            String reason = rejection != null ? rejection.name() : parseFailure != null ? parseFailure : "NOT_A_PAYMENT";
+            Log.d(TAG, "SMS ignored (" + reason + "): " + fullMessage);
+            newMessage = new Message(originatingAddress, fullMessage, Message.Status.IGNORED, timestampMillis);
+            ignoreReason = reason;
         }
 
         // Save & broadcast once
         try {
-            saveMessageToPrefs(newMessage);
+            MessageStore store = MessageStore.get(this);
+            if (details != null) newMessage.withPayment(details);
+            store.append(newMessage, ignoreReason);
+            store.compactIfDue(MessageStore.retentionPolicy(sharedPreferences));
         } catch (Exception e) {
-            Log.e(TAG, "Failed to save message to prefs: " + e.getMessage(), e);
+            Log.e(TAG, "Failed to save message: " + e.getMessage(), e);
         }
 
         try {
@@ -175,10 +160,11 @@ public class SmsForwardingService extends Service {
 
     private void broadcastNewMessage(Message message) {
         Intent broadcastIntent = new Intent("com.example.paymenttracker.NEW_MESSAGE");
-        broadcastIntent.putExtra("sender", message.sender != null ? message.sender : "UNKNOWN");
-        broadcastIntent.putExtra("body", message.content != null ? message.content : "");
-        broadcastIntent.putExtra("status", message.status != null ? message.status : "UNKNOWN");
-        broadcastIntent.putExtra("timestamp", message.timestamp != null ? message.timestamp : String.valueOf(System.currentTimeMillis()));
+        broadcastIntent.putExtra("sender", message.sender);
+        broadcastIntent.putExtra("body", message.getContent());
+        broadcastIntent.putExtra("status", message.status.label);
+        broadcastIntent.putExtra("timestamp", String.valueOf(message.timestamp));
+        broadcastIntent.putExtra("com.example.paymenttracker.MESSAGE_OBJECT", message);
         sendBroadcast(broadcastIntent);
         Log.d(TAG, "New message broadcasted: " + message.sender);
     }
@@ -191,136 +177,16 @@ public class SmsForwardingService extends Service {
         Log.d(TAG, "Forwarding status broadcasted: " + statusType + " - " + errorMessage);
     }
 
-    private void saveMessageToPrefs(Message message) {
-        SharedPreferences sharedPreferences = getSharedPreferences(MainActivity.SHARED_PREFS, Context.MODE_PRIVATE);
-        String messagesJson = sharedPreferences.getString(MainActivity.MESSAGES, "[]");
-
-        JSONArray existingArray;
-        try {
-            existingArray = new JSONArray(messagesJson);
-        } catch (JSONException e) {
-            existingArray = new JSONArray();
-        }
-
-        JSONObject obj = new JSONObject();
-        try {
-            obj.put("sender", message.sender != null ? message.sender : "UNKNOWN");
-            obj.put("body", message.content != null ? message.content : "");
-            obj.put("status", message.status != null ? message.status : "UNKNOWN");
-            obj.put("timestamp", message.timestamp != null ? message.timestamp : String.valueOf(System.currentTimeMillis()));
-        } catch (JSONException e) {
-            Log.e(TAG, "Error creating message JSON", e);
-        }
-
-        JSONArray newArray = new JSONArray();
-        newArray.put(obj);
-        for (int i = 0; i < existingArray.length(); i++) {
-            try {
-                newArray.put(existingArray.get(i));
-            } catch (JSONException ignore) {
-            }
-        }
-
-        sharedPreferences.edit().putString(MainActivity.MESSAGES, newArray.toString()).apply();
-        Log.d(TAG, "Message saved to SharedPreferences successfully.");
-    }
-
-    private void sendWebhook(PaymentDetails details, String fullSms, String webhookUrl, String secretKey) {
-        JSONObject jsonPayload = new JSONObject();
-        try {
-            jsonPayload.put("amount_received", details.amount);
-            jsonPayload.put("upi_ref_id", details.upiRefId);
-            jsonPayload.put("sender_vpa", details.senderVpa);
-            jsonPayload.put("full_sms_body", fullSms);
-        } catch (JSONException e) {
-            broadcastForwardingStatus(STATUS_WEBHOOK_FAILURE, "Error creating JSON payload for webhook: " + e.getMessage());
-            Log.e(TAG, "Error creating JSON payload", e);
-            return;
+    // Rebuilt only when the sender lists in settings change.
+    private SmsPreFilter preFilter(SharedPreferences sharedPreferences) {
+        String allowed = sharedPreferences.getString(MainActivity.SENDER_ALLOWLIST, "");
+        String denied = sharedPreferences.getString(MainActivity.SENDER_DENYLIST, "");
+        String config = allowed + "\n--\n" + denied;
+        if (preFilter == null || !config.equals(preFilterConfig)) {
+            preFilter = SmsPreFilter.fromSettings(allowed, denied);
+            preFilterConfig = config;
         }
-
-        OkHttpClient client = new OkHttpClient();
-        MediaType JSON = MediaType.get("application/json; charset=utf-8");
-        RequestBody body = RequestBody.create(jsonPayload.toString(), JSON);
-
-        Request request = new Request.Builder()
-                .url(webhookUrl)
-                .post(body)
-                .addHeader("X-My-App-Signature", secretKey != null ? secretKey : "")
-                .build();
-
-        client.newCall(request).enqueue(new Callback() {
-            @Override public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                broadcastForwardingStatus(STATUS_WEBHOOK_FAILURE, "Webhook failed to send: " + e.getMessage());
-                Log.e(TAG, "Webhook failed to send", e);
-            }
-            @Override public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
-                if (!response.isSuccessful()) {
-                    String errorBody = response.body() != null ? response.body().string() : "empty";
-                    broadcastForwardingStatus(STATUS_WEBHOOK_FAILURE, "Webhook failed: " + response.code() + ", Body: " + errorBody);
-                    Log.e(TAG, "Webhook failed with code: " + response.code());
-                } else {
-                    Log.d(TAG, "Webhook sent successfully. Response code: " + response.code());
-                }
-                response.close();
-            }
-        });
-    }
-
-    private void sendTelegramMessage(PaymentDetails details, String fullSms, String botToken, String chatId) {
-        String telegramUrl = "https://api.telegram.org/bot" + botToken + "/sendMessage";
-        OkHttpClient client = new OkHttpClient();
-
-        String jsonString;
-        try {
-            JSONObject json = new JSONObject();
-            json.put("amount", details.amount != null ? details.amount : "");
-            json.put("upiRefId", details.upiRefId != null ? details.upiRefId : "");
-            json.put("senderVpa", details.senderVpa != null ? details.senderVpa : "");
-            json.put("fullSmsBody", fullSms != null ? fullSms : "");
-            json.put("bank", details.bank != null ? details.bank : "");
-            json.put("dateTime", details.dateTime != null ? details.dateTime : "");
-            jsonString = "<pre>" + json.toString(4) + "</pre>"; // Pretty print with HTML parse mode
-        } catch (JSONException e) {
-            broadcastForwardingStatus(STATUS_TELEGRAM_FAILURE, "Error creating JSON payload for Telegram: " + e.getMessage());
-            Log.e(TAG, "Error creating JSON payload", e);
-            return;
-        }
-
-        JSONObject requestJson = new JSONObject();
-        try {
-            requestJson.put("chat_id", chatId);
-            requestJson.put("text", jsonString);
-            requestJson.put("parse_mode", "HTML");
-        } catch (JSONException e) {
-            Log.e(TAG, "Error creating request JSON", e);
-            broadcastForwardingStatus(STATUS_TELEGRAM_FAILURE, "Error creating request JSON for Telegram: " + e.getMessage());
-            return;
-        }
-
-        MediaType JSON_MEDIA = MediaType.get("application/json; charset=utf-8");
-        RequestBody requestBody = RequestBody.create(requestJson.toString(), JSON_MEDIA);
-
-        Request request = new Request.Builder()
-                .url(telegramUrl)
-                .post(requestBody)
-                .build();
-
-        client.newCall(request).enqueue(new Callback() {
-            @Override public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                broadcastForwardingStatus(STATUS_TELEGRAM_FAILURE, "Failed to send message to Telegram: " + e.getMessage());
-                Log.e(TAG, "Failed to send message to Telegram", e);
-            }
-            @Override public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
-                if (!response.isSuccessful()) {
-                    String errorBody = response.body() != null ? response.body().string() : "empty";
-                    broadcastForwardingStatus(STATUS_TELEGRAM_FAILURE, "Telegram send failed: " + response.code() + ", Body: " + errorBody);
-                    Log.e(TAG, "Error: " + response.code() + ", Body: " + errorBody);
-                } else {
-                    Log.d(TAG, "Message sent to Telegram successfully. Response code: " + response.code());
-                }
-                response.close();
-            }
-        });
+        return preFilter;
     }
 
     private void showForegroundNotification() {
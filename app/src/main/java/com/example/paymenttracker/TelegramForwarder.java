@@ -0,0 +1,96 @@
+package com.example.paymenttracker;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+/**
+ * Sends each payment to a Telegram chat through the bot, under the shared
+ * {@link TelegramRateLimiter}. The chat id is added when a payload is sent.
+ */
+final class TelegramForwarder implements Forwarder {
+
+    private final String id;
+    private final String botToken;
+    private final String chatId;
+
+    TelegramForwarder(String id, String botToken, String chatId) {
+        this.id = id;
+        this.botToken = botToken;
+        this.chatId = chatId;
+    }
+
+    @Override
+    public String id() {
+        return id;
+    }
+
+    @Override
+    public HttpClients.Destination kind() {
+        return HttpClients.Destination.TELEGRAM;
+    }
+
+    @Override
+    public String label() {
+        return "Telegram chat " + chatId;
+    }
+
+    @Override
+    public String payload(PaymentDetails details, String fullSms) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("amount", details.amount != null ? details.amount : "");
+        json.put("upiRefId", details.upiRefId != null ? details.upiRefId : "");
+        json.put("senderVpa", details.senderVpa != null ? details.senderVpa : "");
+        json.put("fullSmsBody", fullSms != null ? fullSms : "");
+        json.put("bank", details.bank != null ? details.bank : "");
+        json.put("dateTime", details.dateTime != null ? details.dateTime : "");
+        JSONObject requestJson = new JSONObject();
+        requestJson.put("text", "<pre>" + escapeHtml(json.toString(4)) + "</pre>"); // Pretty print with HTML parse mode
+        requestJson.put("parse_mode", "HTML");
+        return requestJson.toString();
+    }
+
+    @Override
+    public Request request(String payload) throws JSONException {
+        JSONObject body = new JSONObject(payload);
+        body.put("chat_id", chatId);
+        return new Request.Builder()
+                .url("https://api.telegram.org/bot" + botToken + "/sendMessage")
+                .post(RequestBody.create(body.toString(), HttpClients.JSON))
+                .build();
+    }
+
+    @Override
+    public long waitBeforeSend(long now) {
+        return TelegramRateLimiter.shared().reserve(botToken, chatId, now);
+    }
+
+    @Override
+    public long retryAfterMillis(int code, String body, String retryAfterHeader, long now) {
+        if (code != 429) return 0L;
+        long retryAfter = TelegramRateLimiter.retryAfterMillis(body, retryAfterHeader);
+        TelegramRateLimiter.shared().backOff(botToken, chatId, retryAfter, now);
+        return retryAfter;
+    }
+
+    // Telegram rejects the whole message with a 400 if an SMS brings its own
+    // <, > or & into the HTML.
+    static String escapeHtml(String text) {
+        StringBuilder out = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '<') out.append("&lt;");
+            else if (c == '>') out.append("&gt;");
+            else if (c == '&') out.append("&amp;");
+            else out.append(c);
+        }
+        return out.toString();
+    }
+
+    /** Milliseconds until this chat may be sent to again. */
+    long waitMillis(long now) {
+        return TelegramRateLimiter.shared().waitMillis(botToken, chatId, now);
+    }
+}
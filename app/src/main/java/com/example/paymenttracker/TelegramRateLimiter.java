@@ -0,0 +1,126 @@
+package com.example.paymenttracker;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps Telegram sends under the Bot API limits: about one message a second
+ * per chat and thirty a second per bot. Each chat and each bot token has a
+ * token bucket; a send takes one token from both, and {@link #reserve} says
+ * how long to wait when either is empty. A 429 reply's retry_after holds
+ * both buckets shut for that long ({@link #backOff}).
+ *
+ * Callers wait and send later; nothing is dropped here. Times are passed in,
+ * so the buckets can be driven by a test clock.
+ */
+final class TelegramRateLimiter {
+
+    static final double CHAT_PER_SECOND = 1.0;
+    static final int CHAT_BURST = 1;
+    static final double BOT_PER_SECOND = 30.0;
+    static final int BOT_BURST = 30;
+
+    private static final TelegramRateLimiter SHARED = new TelegramRateLimiter();
+
+    // Keyed by bot token, and by bot token and chat id; guarded by this.
+    private final Map<String, Bucket> bots = new HashMap<>();
+    private final Map<String, Bucket> chats = new HashMap<>();
+
+    /** The limiter every Telegram send in this process goes through. */
+    static TelegramRateLimiter shared() {
+        return SHARED;
+    }
+
+    private static final class Bucket {
+        final double perMilli;
+        final int burst;
+        double tokens;
+        long updatedAt;
+        long closedUntil;
+
+        Bucket(double perSecond, int burst, long now) {
+            this.perMilli = perSecond / 1000.0;
+            this.burst = burst;
+            this.tokens = burst;
+            this.updatedAt = now;
+        }
+
+        void refill(long now) {
+            if (now > updatedAt) {
+                tokens = Math.min(burst, tokens + (now - updatedAt) * perMilli);
+                updatedAt = now;
+            }
+        }
+
+        long waitMillis(long now) {
+            if (closedUntil > now) return closedUntil - now;
+            refill(now);
+            if (tokens >= 1.0) return 0L;
+            return (long) Math.ceil((1.0 - tokens) / perMilli);
+        }
+    }
+
+    /**
+     * Takes a send's tokens and returns 0 if it may go now; otherwise takes
+     * nothing and returns the milliseconds until it may.
+     */
+    synchronized long reserve(String botToken, String chatId, long now) {
+        Bucket bot = bot(botToken, now);
+        Bucket chat = chat(botToken, chatId, now);
+        long wait = Math.max(bot.waitMillis(now), chat.waitMillis(now));
+        if (wait > 0) return wait;
+        bot.tokens -= 1.0;
+        chat.tokens -= 1.0;
+        return 0L;
+    }
+
+    /** Milliseconds until a send to this chat may go, without taking anything. */
+    synchronized long waitMillis(String botToken, String chatId, long now) {
+        return Math.max(bot(botToken, now).waitMillis(now), chat(botToken, chatId, now).waitMillis(now));
+    }
+
+    /** Holds sends for this bot and chat back for as long as Telegram asked. */
+    synchronized void backOff(String botToken, String chatId, long retryAfterMillis, long now) {
+        long until = now + Math.max(retryAfterMillis, 0L);
+        Bucket bot = bot(botToken, now);
+        Bucket chat = chat(botToken, chatId, now);
+        bot.closedUntil = Math.max(bot.closedUntil, until);
+        chat.closedUntil = Math.max(chat.closedUntil, until);
+    }
+
+    /**
+     * The wait a 429 reply asks for, in milliseconds: parameters.retry_after
+     * from the body, else the Retry-After header, else one second.
+     */
+    static long retryAfterMillis(String responseBody, String retryAfterHeader) {
+        if (responseBody != null && !responseBody.isEmpty()) {
+            try {
+                JSONObject parameters = new JSONObject(responseBody).optJSONObject("parameters");
+                if (parameters != null && parameters.has("retry_after")) {
+                    return Math.max(1L, parameters.getLong("retry_after")) * 1000L;
+                }
+            } catch (JSONException e) {
+                // Fall back to the header.
+            }
+        }
+        if (retryAfterHeader != null) {
+            try {
+                return Math.max(1L, Long.parseLong(retryAfterHeader.trim())) * 1000L;
+            } catch (NumberFormatException e) {
+                // An HTTP date; the default is close enough.
+            }
+        }
+        return 1000L;
+    }
+
+    private Bucket bot(String botToken, long now) {
+        return bots.computeIfAbsent(botToken, k -> new Bucket(BOT_PER_SECOND, BOT_BURST, now));
+    }
+
+    private Bucket chat(String botToken, String chatId, long now) {
+        return chats.computeIfAbsent(botToken + '\n' + chatId, k -> new Bucket(CHAT_PER_SECOND, CHAT_BURST, now));
+    }
+}
@@ -1,7 +1,6 @@
 package com.example.paymenttracker;
 
 import android.util.Log;
-import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -13,11 +12,15 @@ import android.os.Looper;
 
 /**
  * Handles sending payment JSON as text to a Telegram chat via sendMessage.
+ * Sends go through the shared {@link TelegramRateLimiter}, so a test send
+ * neither trips Telegram's limits nor gets in the way of queued payments.
  */
 public class TelegramSender {
 
     private static final String TAG = "TelegramSender";
     private static final String TELEGRAM_API_BASE_URL = "https://api.telegram.org/bot";
+    // Longer than this and the user is told to try again instead.
+    private static final long MAX_WAIT_MILLIS = 5_000L;
 
     // Interface to define a callback for success/failure
     public interface TelegramSendCallback {
@@ -52,7 +55,7 @@ public class TelegramSender {
             jsonPayload = "{}";
         }
 
-        OkHttpClient client = new OkHttpClient();
+        OkHttpClient client = HttpClients.get(HttpClients.Destination.TELEGRAM);
         String telegramUrl = TELEGRAM_API_BASE_URL + botToken + "/sendMessage";
 
         try {
@@ -65,8 +68,7 @@ public class TelegramSender {
             jsonObject.put("text", formattedMessage);
             jsonObject.put("parse_mode", "HTML");
 
-            MediaType JSON = MediaType.parse("application/json; charset=utf-8");
-            RequestBody body = RequestBody.create(jsonObject.toString(), JSON);
+            RequestBody body = RequestBody.create(jsonObject.toString(), HttpClients.JSON);
 
             Request request = new Request.Builder()
                     .url(telegramUrl)
@@ -75,9 +77,33 @@ public class TelegramSender {
 
             // Run network call off the main thread
             new Thread(() -> {
+                TelegramRateLimiter limiter = TelegramRateLimiter.shared();
+                long wait = limiter.reserve(botToken, chatId, System.currentTimeMillis());
+                if (wait > MAX_WAIT_MILLIS) {
+                    long seconds = (wait + 999) / 1000;
+                    Log.w(TAG, "Rate limited for another " + seconds + " s; not sending.");
+                    if (callback != null) {
+                        new Handler(Looper.getMainLooper()).post(() ->
+                                callback.onTelegramSendFailure("Telegram is rate limited. Try again in " + seconds + " s."));
+                    }
+                    return;
+                }
+                try {
+                    while (wait > 0) {
+                        Thread.sleep(wait);
+                        wait = limiter.reserve(botToken, chatId, System.currentTimeMillis());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
                 try (Response response = client.newCall(request).execute()) {
                     if (!response.isSuccessful()) {
                         String responseBody = response.body() != null ? response.body().string() : "No response body";
+                        if (response.code() == 429) {
+                            limiter.backOff(botToken, chatId, TelegramRateLimiter.retryAfterMillis(responseBody,
+                                    response.header("Retry-After")), System.currentTimeMillis());
+                        }
                         String errorMessage = "Failed to send JSON text to Telegram: " + response.code() + " " + response.message();
                         Log.e(TAG, errorMessage);
                         Log.e(TAG, "Response body: " + responseBody);
@@ -0,0 +1,104 @@
+package com.example.paymenttracker;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * How the {@link Outbox} groups webhook deliveries: up to maxSize payments
+ * in one POST, the first of them waiting at most lingerMillis for the rest,
+ * optionally gzip-compressed. A maxSize of 1 sends each payment on its own,
+ * as before.
+ *
+ * A batch is a JSON array of the usual payloads, each with a delivery_id
+ * that stays the same across retries. A 2xx reply accepts the whole batch
+ * unless its body is an object listing some of those ids under "failed";
+ * only those are retried.
+ */
+final class WebhookBatching {
+
+    static final WebhookBatching OFF = new WebhookBatching(1, 0L, false);
+
+    static final int MAX_SIZE = 500;
+    static final int DEFAULT_LINGER_SECONDS = 10;
+    static final int MAX_LINGER_SECONDS = 300;
+
+    static final String DELIVERY_ID = "delivery_id";
+
+    final int maxSize;
+    final long lingerMillis;
+    final boolean gzip;
+
+    WebhookBatching(int maxSize, long lingerMillis, boolean gzip) {
+        this.maxSize = Math.max(1, Math.min(maxSize, MAX_SIZE));
+        this.lingerMillis = Math.max(0L, lingerMillis);
+        this.gzip = gzip;
+    }
+
+    /** An empty or unreadable size turns batching off; an empty linger is the default. */
+    static WebhookBatching fromSettings(String maxSize, String lingerSeconds, boolean gzip) {
+        int size = parse(maxSize, 1);
+        if (size <= 1) return OFF;
+        int linger = Math.min(parse(lingerSeconds, DEFAULT_LINGER_SECONDS), MAX_LINGER_SECONDS);
+        return new WebhookBatching(size, linger * 1000L, gzip);
+    }
+
+    boolean enabled() {
+        return maxSize > 1;
+    }
+
+    /** The request body for these payloads, in this order. */
+    static String body(List<Long> ids, List<String> payloads) throws JSONException {
+        JSONArray batch = new JSONArray();
+        for (int i = 0; i < payloads.size(); i++) {
+            JSONObject item = new JSONObject(payloads.get(i));
+            item.put(DELIVERY_ID, ids.get(i));
+            batch.put(item);
+        }
+        return batch.toString();
+    }
+
+    /** The delivery ids a 2xx reply says it did not take; empty for any other reply. */
+    static Set<Long> failedIds(String responseBody) {
+        if (responseBody == null || responseBody.isEmpty()) return Collections.emptySet();
+        JSONArray failed;
+        try {
+            Object reply = new JSONObject(responseBody).opt("failed");
+            if (!(reply instanceof JSONArray)) return Collections.emptySet();
+            failed = (JSONArray) reply;
+        } catch (JSONException e) {
+            return Collections.emptySet();
+        }
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < failed.length(); i++) {
+            long id = failed.optLong(i, Long.MIN_VALUE);
+            if (id != Long.MIN_VALUE) ids.add(id);
+        }
+        return ids;
+    }
+
+    static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static int parse(String s, int fallback) {
+        if (s == null || s.trim().isEmpty()) return fallback;
+        try {
+            return Math.max(0, Integer.parseInt(s.trim()));
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
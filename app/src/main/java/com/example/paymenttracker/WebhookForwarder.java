@@ -0,0 +1,68 @@
+package com.example.paymenttracker;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+/** POSTs each payment as JSON to a URL, signed with the secret key if there is one. */
+final class WebhookForwarder implements Forwarder {
+
+    private final String id;
+    private final String url;
+    private final String secretKey;
+    private final WebhookBatching batching;
+
+    WebhookForwarder(String id, String url, String secretKey, WebhookBatching batching) {
+        this.id = id;
+        this.url = url;
+        this.secretKey = secretKey != null ? secretKey : "";
+        this.batching = batching;
+    }
+
+    @Override
+    public String id() {
+        return id;
+    }
+
+    @Override
+    public HttpClients.Destination kind() {
+        return HttpClients.Destination.WEBHOOK;
+    }
+
+    @Override
+    public String label() {
+        return "Webhook " + url;
+    }
+
+    @Override
+    public String payload(PaymentDetails details, String fullSms) throws JSONException {
+        JSONObject jsonPayload = new JSONObject();
+        jsonPayload.put("amount_received", details.amount);
+        jsonPayload.put("upi_ref_id", details.upiRefId);
+        jsonPayload.put("sender_vpa", details.senderVpa);
+        jsonPayload.put("full_sms_body", fullSms);
+        return jsonPayload.toString();
+    }
+
+    @Override
+    public Request request(String payload) {
+        return request(RequestBody.create(payload, HttpClients.JSON), false);
+    }
+
+    @Override
+    public WebhookBatching batching() {
+        return batching;
+    }
+
+    /** A POST of a body already built, such as a batch; gzipped says it is compressed. */
+    Request request(RequestBody body, boolean gzipped) {
+        Request.Builder request = new Request.Builder()
+                .url(url)
+                .post(body)
+                .addHeader("X-My-App-Signature", secretKey);
+        if (gzipped) request.addHeader("Content-Encoding", "gzip");
+        return request.build();
+    }
+}
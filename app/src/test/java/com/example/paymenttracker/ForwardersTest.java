@@ -0,0 +1,68 @@
+package com.example.paymenttracker;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ForwardersTest {
+
+    private static List<Forwarder> parse(String webhookUrl, String secretKey, String extraWebhooks,
+                                         String botToken, String chatId, String extraChats) {
+        return Forwarders.fromSettings(webhookUrl, secretKey, extraWebhooks, botToken, chatId, extraChats,
+                WebhookBatching.OFF);
+    }
+
+    @Test
+    public void mainFieldsKeepTheirOldIds() {
+        List<Forwarder> forwarders = parse("https://a.example/hook", "s3cret", "", "123:abc", "-10042", "");
+        assertEquals(2, forwarders.size());
+        assertEquals("WEBHOOK", forwarders.get(0).id());
+        assertEquals(HttpClients.Destination.WEBHOOK, forwarders.get(0).kind());
+        assertEquals("TELEGRAM", forwarders.get(1).id());
+        assertEquals(HttpClients.Destination.TELEGRAM, forwarders.get(1).kind());
+    }
+
+    @Test
+    public void extrasAreKeyedByTargetAndSkipDuplicates() throws Exception {
+        List<Forwarder> forwarders = parse("https://a.example/hook", "",
+                "https://b.example/in other-secret\nhttps://a.example/hook\nftp://c.example/x\n\nhttps://b.example/in",
+                "123:abc", "-10042", "-10042, -10043;-10044");
+        assertEquals(5, forwarders.size());
+        assertEquals("WEBHOOK", forwarders.get(0).id());
+        assertEquals("webhook:https://b.example/in", forwarders.get(1).id());
+        assertEquals("other-secret", forwarders.get(1).request("{}").header("X-My-App-Signature"));
+        assertEquals("TELEGRAM", forwarders.get(2).id());
+        assertEquals("telegram:-10043", forwarders.get(3).id());
+        assertEquals("telegram:-10044", forwarders.get(4).id());
+    }
+
+    @Test
+    public void extrasAreCapped() {
+        StringBuilder webhooks = new StringBuilder();
+        StringBuilder chats = new StringBuilder();
+        for (int i = 0; i < Forwarders.MAX_EXTRA + 3; i++) {
+            webhooks.append("https://h").append(i).append(".example/\n");
+            chats.append(i).append(',');
+        }
+        List<Forwarder> forwarders = parse("", "", webhooks.toString(), "123:abc", "", chats.toString());
+        assertEquals(2 * Forwarders.MAX_EXTRA, forwarders.size());
+    }
+
+    @Test
+    public void noBotTokenMeansNoTelegram() {
+        assertTrue(parse("", "", "", "", "-10042", "-10043").isEmpty());
+        assertTrue(parse("not a url", "", "", "  ", "", "").isEmpty());
+    }
+
+    @Test
+    public void telegramTextIsEscapedForHtml() throws Exception {
+        Forwarder telegram = parse("", "", "", "123:abc", "-10042", "").get(0);
+        PaymentDetails details = new PaymentDetails.Builder().upiRefId("123456789012").build();
+        String text = new JSONObject(telegram.payload(details, "Rs 10 <credited> to A&B")).getString("text");
+        assertTrue(text.startsWith("<pre>") && text.endsWith("</pre>"));
+        assertTrue(text.contains("Rs 10 &lt;credited&gt; to A&amp;B"));
+    }
+}
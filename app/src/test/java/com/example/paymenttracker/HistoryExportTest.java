@@ -0,0 +1,91 @@
+package com.example.paymenttracker;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class HistoryExportTest {
+
+    private static final TimeZone IST = TimeZone.getTimeZone("Asia/Kolkata");
+
+    private static HistoryExport.Row row() {
+        HistoryExport.Row row = new HistoryExport.Row();
+        row.id = 42;
+        row.timestamp = 1760257980000L;
+        row.sender = "VM-HDFCBK";
+        row.status = "SUBMITTED";
+        row.amountPaise = 149905;
+        row.upiRefId = "528512345678";
+        row.senderVpa = "ravi@okaxis";
+        row.body = "Rs.1,499.05 credited, \"thanks\"\nUPI Ref 528512345678";
+        return row;
+    }
+
+    @Test
+    public void writesCsvWithQuoting() throws Exception {
+        HistoryExport export = new HistoryExport(HistoryExport.Format.CSV, 0L, Long.MAX_VALUE, Collections.emptySet(), IST);
+        StringWriter out = new StringWriter();
+        export.writeHeader(out);
+        export.write(row(), out);
+        assertEquals("id,received_at,sender,status,amount,upi_ref,vpa,bank,paid_at,body\r\n"
+                + "42,2025-10-12T14:03:00+05:30"
+                + ",VM-HDFCBK,SUBMITTED,1499.05,528512345678,ravi@okaxis,,,"
+                + "\"Rs.1,499.05 credited, \"\"thanks\"\"\nUPI Ref 528512345678\"\r\n", out.toString());
+    }
+
+    @Test
+    public void guardsCsvFieldsThatLookLikeFormulas() throws Exception {
+        StringWriter out = new StringWriter();
+        HistoryExport.writeCsv("=HYPERLINK(\"x\")", out);
+        assertEquals("\"'=HYPERLINK(\"\"x\"\")\"", out.toString());
+    }
+
+    @Test
+    public void writesOneJsonObjectPerLine() throws Exception {
+        HistoryExport export = new HistoryExport(HistoryExport.Format.JSONL, 0L, Long.MAX_VALUE, Collections.emptySet(), IST);
+        StringWriter out = new StringWriter();
+        export.writeHeader(out);
+        HistoryExport.Row row = row();
+        export.write(row, out);
+        row.amountPaise = PaymentDetails.NO_AMOUNT;
+        row.body = "tab\there \\ \u2028";
+        export.write(row, out);
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"id\":42,\"received_at\":\"2025-10-12T14:03:00+05:30\",\"sender\":\"VM-HDFCBK\""));
+        assertTrue(lines[0].contains("\"amount\":1499.05,"));
+        assertTrue(lines[0].contains("\"bank\":null,"));
+        assertTrue(lines[0].endsWith("\"body\":\"Rs.1,499.05 credited, \\\"thanks\\\"\\nUPI Ref 528512345678\"}"));
+        assertTrue(lines[1].contains("\"amount\":null,"));
+        assertTrue(lines[1].endsWith("\"body\":\"tab\\there \\\\ \\u2028\"}"));
+    }
+
+    @Test
+    public void formatsPaiseWithoutRounding() {
+        assertEquals("1499.00", HistoryExport.rupees(149900));
+        assertEquals("0.05", HistoryExport.rupees(5));
+        assertEquals("12.50", HistoryExport.rupees(1250));
+    }
+
+    @Test
+    public void readsFiltersFromTheDialog() {
+        long now = 1760257980000L;
+        HistoryExport export = HistoryExport.fromSettings(HistoryExport.Format.CSV, "2025-10-01", "2025-10-12",
+                "submitted, SET FORWARDER!, ignored, nonsense", now, IST);
+        // 2025-10-01 00:00 IST to the end of 2025-10-12 IST.
+        assertEquals(1759257000000L, export.fromMillis);
+        assertEquals(1760293800000L, export.toMillis);
+        assertEquals(3, export.statuses.size());
+        assertTrue(export.statuses.contains(Message.Status.SET_FORWARDER.label));
+        assertTrue(export.statuses.contains("IGNORED"));
+
+        HistoryExport all = HistoryExport.fromSettings(HistoryExport.Format.JSONL, "", " ", "", now, IST);
+        assertEquals(0L, all.fromMillis);
+        assertEquals(Long.MAX_VALUE, all.toMillis);
+        assertTrue(all.statuses.isEmpty());
+    }
+}
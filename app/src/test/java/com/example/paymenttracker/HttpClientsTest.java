@@ -0,0 +1,107 @@
+package com.example.paymenttracker;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import static org.junit.Assert.*;
+
+public class HttpClientsTest {
+
+    private HttpServer server;
+
+    @Before
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] ok = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, ok.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(ok);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void destinationsShareOneConnectionPool() {
+        OkHttpClient webhook = HttpClients.get(HttpClients.Destination.WEBHOOK);
+        OkHttpClient telegram = HttpClients.get(HttpClients.Destination.TELEGRAM);
+        assertSame(webhook, HttpClients.get(HttpClients.Destination.WEBHOOK));
+        assertSame(webhook.connectionPool(), telegram.connectionPool());
+        assertSame(webhook.dispatcher(), telegram.dispatcher());
+    }
+
+    @Test
+    public void destinationsHaveTheirOwnTimeouts() {
+        OkHttpClient webhook = HttpClients.get(HttpClients.Destination.WEBHOOK);
+        OkHttpClient telegram = HttpClients.get(HttpClients.Destination.TELEGRAM);
+        assertEquals(HttpClients.Destination.WEBHOOK.callSeconds * 1000, webhook.callTimeoutMillis());
+        assertEquals(HttpClients.Destination.TELEGRAM.readSeconds * 1000, telegram.readTimeoutMillis());
+        assertTrue(telegram.callTimeoutMillis() < webhook.callTimeoutMillis());
+    }
+
+    @Test
+    public void laterSendsReuseTheConnection() throws Exception {
+        HttpClients.Stats before = HttpClients.stats(HttpClients.Destination.WEBHOOK);
+        OkHttpClient client = HttpClients.get(HttpClients.Destination.WEBHOOK);
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/hook";
+        for (int i = 0; i < 3; i++) {
+            Request request = new Request.Builder()
+                    .url(url)
+                    .post(RequestBody.create("{\"n\":" + i + "}", HttpClients.JSON))
+                    .build();
+            try (Response response = client.newCall(request).execute()) {
+                assertEquals(200, response.code());
+                response.body().string();
+            }
+        }
+        HttpClients.Stats after = HttpClients.stats(HttpClients.Destination.WEBHOOK);
+        assertEquals(3, after.calls - before.calls);
+        assertEquals(0, after.failed - before.failed);
+        assertEquals(1, after.newConnections - before.newConnections);
+        assertEquals(2, after.reused - before.reused);
+    }
+
+    @Test
+    public void failedSendsAreKeptOutOfTheTimings() throws Exception {
+        HttpClients.Stats before = HttpClients.stats(HttpClients.Destination.TELEGRAM);
+        OkHttpClient client = HttpClients.get(HttpClients.Destination.TELEGRAM);
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"))) {
+            closedPort = socket.getLocalPort();
+        }
+        String[] urls = {"http://no-such-host.invalid/", "http://127.0.0.1:" + closedPort + "/"};
+        for (String url : urls) {
+            try (Response response = client.newCall(new Request.Builder().url(url).build()).execute()) {
+                fail("answered " + response.code());
+            } catch (IOException expected) {
+            }
+        }
+        HttpClients.Stats after = HttpClients.stats(HttpClients.Destination.TELEGRAM);
+        assertEquals(2, after.calls - before.calls);
+        assertEquals(2, after.failed - before.failed);
+        assertEquals(before.newConnections, after.newConnections);
+        assertEquals(before.reused, after.reused);
+    }
+}
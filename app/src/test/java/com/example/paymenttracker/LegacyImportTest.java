@@ -0,0 +1,79 @@
+package com.example.paymenttracker;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LegacyImportTest {
+
+    @Test
+    public void readsJsonInChunksNewestFirst() {
+        LegacyImport source = new LegacyImport("[{\"sender\":\"VM-HDFCBK\",\"body\":\"Rs.10 credited\",\"status\":\"SUBMITTED\",\"timestamp\":\"3000\"},"
+                + "{\"sender\":\"AD-ICICIT\",\"body\":\"Rs.20 credited\",\"status\":\"IGNORED\",\"timestamp\":\"2000\",\"reason\":\"no amount\"},"
+                + "{\"sender\":\"JD-SBIUPI\",\"body\":\"Rs.30 credited\",\"status\":\"ERROR\",\"timestamp\":\"1000\"}]");
+        List<LegacyImport.Entry> first = source.next(2);
+        assertEquals(2, first.size());
+        assertEquals(0, first.get(0).index);
+        assertEquals("VM-HDFCBK", first.get(0).message.sender);
+        assertEquals(3000L, first.get(0).message.timestamp);
+        assertNull(first.get(0).reason);
+        assertEquals("no amount", first.get(1).reason);
+        assertEquals(Message.Status.IGNORED, first.get(1).message.status);
+        assertFalse(source.isFinished());
+        assertEquals(2, source.position());
+
+        List<LegacyImport.Entry> rest = source.next(2);
+        assertEquals(1, rest.size());
+        assertEquals(2, rest.get(0).index);
+        assertTrue(source.isFinished());
+        assertTrue(source.next(2).isEmpty());
+    }
+
+    @Test
+    public void resumesAtTheSamePositions() {
+        String stored = "[{\"sender\":\"A\",\"timestamp\":\"3\"}, 7, {\"sender\":\"B\",\"timestamp\":\"2\"}, {\"sender\":\"C\",\"timestamp\":\"1\"}]";
+        LegacyImport source = new LegacyImport(stored);
+        // The 7 is counted but not returned.
+        assertEquals(1, source.next(2).size());
+        assertEquals(2, source.position());
+
+        LegacyImport resumed = new LegacyImport(stored);
+        resumed.next(2);
+        List<LegacyImport.Entry> rest = resumed.next(10);
+        assertEquals(2, rest.size());
+        assertEquals(2, rest.get(0).index);
+        assertEquals("B", rest.get(0).message.sender);
+        assertEquals(-3L, LegacyImport.rowId(2));
+        assertTrue(LegacyImport.rowId(0) > LegacyImport.rowId(1));
+    }
+
+    @Test
+    public void keepsWhatPrecedesDamagedJson() {
+        LegacyImport source = new LegacyImport("[{\"sender\":\"A\",\"timestamp\":\"3\"},{\"sender\":\"B\",\"ti");
+        List<LegacyImport.Entry> read = source.next(10);
+        assertEquals(1, read.size());
+        assertEquals("A", read.get(0).message.sender);
+        assertTrue(source.isFinished());
+
+        assertTrue(new LegacyImport("[]").isFinished());
+        assertTrue(new LegacyImport("").isFinished());
+    }
+
+    @Test
+    public void readsTheFlatFormat() {
+        LegacyImport source = new LegacyImport("VM-HDFCBK|||Rs.10 credited|||SUBMITTED|||3000|||"
+                + "AD-ICICIT|||Rs.20 credited|||INVALID_FORMAT|||2000|||JD-SBIUPI|||cut");
+        List<LegacyImport.Entry> first = source.next(1);
+        assertEquals(1, first.size());
+        assertEquals("Rs.10 credited", first.get(0).message.getContent());
+        assertEquals(3000L, first.get(0).message.timestamp);
+
+        List<LegacyImport.Entry> rest = source.next(5);
+        assertEquals(1, rest.size());
+        assertEquals(Message.Status.IGNORED, rest.get(0).message.status);
+        assertEquals(1, rest.get(0).index);
+        assertTrue(source.isFinished());
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.paymenttracker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MessageCodecTest {
+
+    @Test
+    public void readsTheOriginalFormat() {
+        Message m = Message.fromString("VM-HDFCBK|||Rs.1499 credited|||INVALID_FORMAT|||1760257980000");
+        assertEquals("VM-HDFCBK", m.sender);
+        assertEquals("Rs.1499 credited", m.getContent());
+        assertEquals(Message.Status.IGNORED, m.status);
+        assertEquals(1760257980000L, m.timestamp);
+        assertEquals(PaymentDetails.NO_AMOUNT, m.amountPaise);
+        assertFalse(m.hasPayment());
+    }
+
+    @Test
+    public void roundTripsPaymentFields() {
+        Message m = new Message("AD-ICICIT", "Rs 25.50 received", Message.Status.SET_FORWARDER, 1760257980000L);
+        m.amountPaise = 2550L;
+        m.upiRefId = "528512345678";
+        m.bank = "ICICI Bank";
+
+        String encoded = m.toString();
+        assertTrue(encoded.startsWith(MessageCodec.VERSION + "|||"));
+        Message back = Message.fromString(encoded);
+        assertEquals("AD-ICICIT", back.sender);
+        assertEquals("Rs 25.50 received", back.getContent());
+        assertEquals(Message.Status.SET_FORWARDER, back.status);
+        assertEquals(1760257980000L, back.timestamp);
+        assertEquals(2550L, back.amountPaise);
+        assertEquals("528512345678", back.upiRefId);
+        assertNull(back.senderVpa);
+        assertEquals("ICICI Bank", back.bank);
+        assertEquals(0L, back.paidAtMillis);
+    }
+
+    @Test
+    public void unreadableInputBecomesAnErrorRow() {
+        assertEquals(Message.Status.ERROR, Message.fromString("just text").status);
+        assertEquals(Message.Status.UNKNOWN, Message.Status.of("SOMETHING NEW"));
+        assertEquals(0L, Message.fromString("a|||b|||SUBMITTED|||soon").timestamp);
+    }
+
+    @Test
+    public void sendersAreShared() {
+        String a = new String("VM-HDFCBK");
+        String b = new String("VM-HDFCBK");
+        Message first = new Message(a, "", Message.Status.SUBMITTED, 0L);
+        Message second = new Message(b, "", Message.Status.SUBMITTED, 0L);
+        assertSame(first.sender, second.sender);
+        assertEquals("UNKNOWN", new Message(null, null, null, 0L).sender);
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.paymenttracker;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OutboxTest {
+
+    @Test
+    public void backoffDoublesWithinJitter() {
+        Random random = new Random(7);
+        for (int attempts = 1; attempts <= 6; attempts++) {
+            long ceiling = Outbox.BASE_DELAY_MILLIS << (attempts - 1);
+            for (int i = 0; i < 100; i++) {
+                long delay = Outbox.backoffMillis(attempts, random);
+                assertTrue(delay >= ceiling / 2);
+                assertTrue(delay <= ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void backoffIsCapped() {
+        Random random = new Random(7);
+        for (int attempts = 10; attempts <= 100; attempts++) {
+            long delay = Outbox.backoffMillis(attempts, random);
+            assertTrue(delay >= Outbox.MAX_DELAY_MILLIS / 2);
+            assertTrue(delay <= Outbox.MAX_DELAY_MILLIS);
+        }
+    }
+
+    @Test
+    public void jitterSpreadsRetries() {
+        Random random = new Random(7);
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 200; i++) {
+            long delay = Outbox.backoffMillis(5, random);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        // 80 s ceiling: retries land across most of 40..80 s, not on one instant.
+        assertTrue(max - min > 30_000L);
+    }
+
+    @Test
+    public void clientErrorsAreNotRetried() {
+        assertEquals(Outbox.Failure.PERMANENT, Outbox.failureOf(400));
+        assertEquals(Outbox.Failure.PERMANENT, Outbox.failureOf(401));
+        assertEquals(Outbox.Failure.PERMANENT, Outbox.failureOf(404));
+        assertEquals(Outbox.Failure.TEMPORARY, Outbox.failureOf(408));
+        assertEquals(Outbox.Failure.TEMPORARY, Outbox.failureOf(429));
+        assertEquals(Outbox.Failure.TEMPORARY, Outbox.failureOf(500));
+        assertEquals(Outbox.Failure.TEMPORARY, Outbox.failureOf(503));
+    }
+
+    @Test
+    public void onlyMissingNetworksCountAsOffline() {
+        assertEquals(Outbox.Failure.OFFLINE, Outbox.failureOf(new UnknownHostException("api.example")));
+        assertEquals(Outbox.Failure.OFFLINE, Outbox.failureOf(new ConnectException("refused")));
+        assertEquals(Outbox.Failure.TEMPORARY, Outbox.failureOf(new SocketTimeoutException("timeout")));
+        assertEquals(Outbox.Failure.TEMPORARY, Outbox.failureOf(new IOException("stream reset")));
+    }
+
+    @Test
+    public void goingOfflineIsNotChargedAnAttempt() {
+        Random random = new Random(7);
+        int attempts = 0;
+        int offline = 0;
+        // hourly failures for a month without a network
+        for (int i = 0; i < 24 * 30; i++) {
+            attempts = Outbox.attemptsAfter(attempts, Outbox.Failure.OFFLINE);
+            offline = Outbox.offlineAfter(offline, Outbox.Failure.OFFLINE);
+            assertFalse(Outbox.deadLetters(attempts, Outbox.Failure.OFFLINE));
+        }
+        assertEquals(0, attempts);
+        // but the backoff still grows to its cap
+        assertTrue(Outbox.backoffMillis(attempts + offline, random) >= Outbox.MAX_DELAY_MILLIS / 2);
+    }
+
+    @Test
+    public void serverFailuresDeadLetterAfterMaxAttempts() {
+        int attempts = 0;
+        int offline = 0;
+        int sends = 0;
+        while (true) {
+            Outbox.Failure failure = sends++ % 3 == 0 ? Outbox.Failure.OFFLINE : Outbox.Failure.TEMPORARY;
+            attempts = Outbox.attemptsAfter(attempts, failure);
+            offline = Outbox.offlineAfter(offline, failure);
+            if (Outbox.deadLetters(attempts, failure)) break;
+        }
+        assertEquals(Outbox.MAX_ATTEMPTS, attempts);
+        assertEquals(0, offline);
+        assertTrue(Outbox.deadLetters(Outbox.attemptsAfter(0, Outbox.Failure.PERMANENT), Outbox.Failure.PERMANENT));
+    }
+
+    @Test
+    public void theHeadHoldsBackTheRowsBehindIt() {
+        long now = 1_000_000L;
+        Outbox.Row backingOff = new Outbox.Row(1, "{}", 2, 0, now + 60_000L);
+        Outbox.Row ready = new Outbox.Row(2, "{}", 0, 0, now - 1);
+        assertFalse(Outbox.due(Arrays.asList(backingOff, ready), WebhookBatching.OFF, now));
+        assertTrue(Outbox.due(Arrays.asList(ready, backingOff), WebhookBatching.OFF, now));
+        assertTrue(Outbox.due(Arrays.asList(new Outbox.Row(1, "{}", 2, 0, now)), WebhookBatching.OFF, now));
+    }
+
+    @Test
+    public void aFullBatchOfNewRowsSkipsTheLinger() {
+        long now = 1_000_000L;
+        WebhookBatching batching = new WebhookBatching(3, 10_000L, false);
+        Outbox.Row lingering = new Outbox.Row(1, "{}", 0, 0, now + 10_000L);
+        Outbox.Row retried = new Outbox.Row(1, "{}", 1, 0, now + 10_000L);
+        Outbox.Row offline = new Outbox.Row(1, "{}", 0, 1, now + 10_000L);
+        Outbox.Row next = new Outbox.Row(2, "{}", 0, 0, now + 10_000L);
+        assertTrue(Outbox.due(Arrays.asList(lingering, next, next), batching, now));
+        assertFalse(Outbox.due(Arrays.asList(lingering, next), batching, now));
+        // a head waiting out a backoff keeps it, however many rows are behind
+        assertFalse(Outbox.due(Arrays.asList(retried, next, next), batching, now));
+        assertFalse(Outbox.due(Arrays.asList(offline, next, next), batching, now));
+    }
+
+    @Test
+    public void aBatchRefusedForOneRowIsHalvedDownToThatRow() {
+        List<Long> accepted = new ArrayList<>();
+        List<Long> dead = new ArrayList<>();
+        int posts = drainBatches(500, batch -> !batch.contains(137L), accepted, dead);
+        assertEquals(Arrays.asList(137L), dead);
+        assertEquals(499, accepted.size());
+        for (int i = 1; i < accepted.size(); i++) assertTrue(accepted.get(i - 1) < accepted.get(i));
+        assertTrue(posts < 40);
+    }
+
+    @Test
+    public void aBatchTooLargeForTheServerGoesInSmallerOnes() {
+        List<Long> accepted = new ArrayList<>();
+        List<Long> dead = new ArrayList<>();
+        int posts = drainBatches(2000, batch -> batch.size() <= 100, accepted, dead);
+        assertTrue(dead.isEmpty());
+        assertEquals(2000, accepted.size());
+        assertTrue(posts < 100);
+    }
+
+    @Test
+    public void onlyPermanentRepliesSplitABatch() {
+        assertEquals(250, Outbox.batchSizeAfter(500, 500, Outbox.Failure.PERMANENT, 500));
+        assertEquals(1, Outbox.batchSizeAfter(2, 2, Outbox.Failure.PERMANENT, 500));
+        assertEquals(1, Outbox.batchSizeAfter(1, 1, Outbox.Failure.PERMANENT, 500));
+        assertEquals(500, Outbox.batchSizeAfter(500, 500, Outbox.Failure.TEMPORARY, 500));
+        assertEquals(500, Outbox.batchSizeAfter(500, 500, Outbox.Failure.OFFLINE, 500));
+        assertEquals(500, Outbox.batchSizeAfter(300, 3, null, 500));
+    }
+
+    private interface Server {
+        boolean takes(List<Long> batch);
+    }
+
+    // Drains rows 1..count the way a batching lane does, against a server
+    // that takes a batch whole or refuses it with a 4xx. Returns the POSTs made.
+    private static int drainBatches(int count, Server server, List<Long> accepted, List<Long> dead) {
+        List<Long> queue = new ArrayList<>();
+        for (long id = 1; id <= count; id++) queue.add(id);
+        int limit = WebhookBatching.MAX_SIZE;
+        int posts = 0;
+        while (!queue.isEmpty()) {
+            List<Long> batch = new ArrayList<>(queue.subList(0, Math.min(limit, queue.size())));
+            posts++;
+            Outbox.Failure failure = server.takes(batch) ? null : Outbox.failureOf(400);
+            int before = limit;
+            limit = Outbox.batchSizeAfter(limit, batch.size(), failure, WebhookBatching.MAX_SIZE);
+            if (failure == null) {
+                accepted.addAll(batch);
+                queue.removeAll(batch);
+            } else if (limit >= before) {
+                assertEquals(1, batch.size());
+                dead.addAll(batch);
+                queue.removeAll(batch);
+            }
+        }
+        return posts;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.paymenttracker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RetentionPolicyTest {
+
+    @Test
+    public void readsLimitsFromSettings() {
+        RetentionPolicy p = RetentionPolicy.fromSettings(" 5000 ", "365", "ignored:7, SUBMITTED:400;ERROR:30");
+        assertEquals(5000, p.maxCount);
+        assertEquals(365, p.maxAgeDays);
+        assertEquals(Integer.valueOf(7), p.maxAgeDaysByStatus.get("IGNORED"));
+        assertEquals(Integer.valueOf(400), p.maxAgeDaysByStatus.get("SUBMITTED"));
+        assertEquals(Integer.valueOf(30), p.maxAgeDaysByStatus.get("ERROR"));
+        assertFalse(p.keepsEverything());
+    }
+
+    @Test
+    public void skipsWhatItCannotRead() {
+        RetentionPolicy p = RetentionPolicy.fromSettings("lots", "-3", "IGNORED, :5, SPAM:x, OLD:0, KEEP:2");
+        assertEquals(0, p.maxCount);
+        assertEquals(0, p.maxAgeDays);
+        assertEquals(1, p.maxAgeDaysByStatus.size());
+        assertEquals(Integer.valueOf(2), p.maxAgeDaysByStatus.get("KEEP"));
+
+        assertTrue(RetentionPolicy.fromSettings("", null, "").keepsEverything());
+    }
+
+    @Test
+    public void cutoffIsWholeDaysBack() {
+        long now = 1760257980000L;
+        assertEquals(now - 7L * 86_400_000L, RetentionPolicy.cutoffMillis(7, now));
+        assertEquals(now - 3650L * 86_400_000L, RetentionPolicy.cutoffMillis(3650, now));
+    }
+}
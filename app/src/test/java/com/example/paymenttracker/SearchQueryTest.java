@@ -0,0 +1,91 @@
+package com.example.paymenttracker;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class SearchQueryTest {
+
+    private static final TimeZone IST = TimeZone.getTimeZone("Asia/Kolkata");
+    // Saturday 2025-10-18 15:30 IST
+    private static final long NOW = 1760781600000L;
+    private static final long DAY = 86_400_000L;
+    // Midnight starting 2025-10-18 in IST
+    private static final long TODAY = 1760725800000L;
+
+    @Test
+    public void readsAmountsVpasAndDays() {
+        SearchQuery q = SearchQuery.parse("₹1,499 from foo@okaxis last Tuesday", NOW, IST);
+        assertEquals(149900L, q.minPaise);
+        assertEquals(149900L, q.maxPaise);
+        assertEquals(Arrays.asList("from*", "\"foo okaxis*\""), q.terms);
+        assertEquals(TODAY - 4 * DAY, q.fromMillis);
+        assertEquals(TODAY - 3 * DAY, q.toMillis);
+    }
+
+    @Test
+    public void readsAmountRangesAndBounds() {
+        SearchQuery q = SearchQuery.parse("rs 500-1,000.50", NOW, IST);
+        assertEquals(50000L, q.minPaise);
+        assertEquals(100050L, q.maxPaise);
+        assertTrue(q.terms.isEmpty());
+
+        q = SearchQuery.parse(">2000", NOW, IST);
+        assertEquals(200000L, q.minPaise);
+        assertEquals(Long.MAX_VALUE, q.maxPaise);
+
+        q = SearchQuery.parse("<=Rs.250", NOW, IST);
+        assertEquals(0L, q.minPaise);
+        assertEquals(25000L, q.maxPaise);
+    }
+
+    @Test
+    public void plainNumbersAreRefPrefixes() {
+        SearchQuery q = SearchQuery.parse("528512 1499.00", NOW, IST);
+        assertFalse(q.hasAmount());
+        assertEquals("528512* \"1499 00*\"", q.matchExpression());
+    }
+
+    @Test
+    public void readsDates() {
+        assertEquals(TODAY, SearchQuery.parse("today", NOW, IST).fromMillis);
+        assertEquals(TODAY - DAY, SearchQuery.parse("yesterday", NOW, IST).fromMillis);
+        assertEquals(TODAY - 7 * DAY, SearchQuery.parse("last sat", NOW, IST).fromMillis);
+        assertEquals(TODAY - 7 * DAY, SearchQuery.parse("saturday", NOW, IST).fromMillis);
+        assertEquals(TODAY - 2 * DAY, SearchQuery.parse("last thurs", NOW, IST).fromMillis);
+        assertEquals(TODAY - 6 * DAY, SearchQuery.parse("12-10-2025", NOW, IST).fromMillis);
+        assertEquals(TODAY - 6 * DAY, SearchQuery.parse("2025-10-12", NOW, IST).fromMillis);
+        assertEquals(TODAY - 6 * DAY, SearchQuery.parse("12/10/25", NOW, IST).toMillis - DAY);
+    }
+
+    @Test
+    public void weekdayAbbreviationsNeedLast() {
+        SearchQuery q = SearchQuery.parse("sun sat wed mon satu", NOW, IST);
+        assertEquals(0L, q.fromMillis);
+        assertEquals("sun* sat* wed* mon* satu*", q.matchExpression());
+        assertEquals("last* satu*", SearchQuery.parse("last satu", NOW, IST).matchExpression());
+    }
+
+    @Test
+    public void daysPastTheEndOfTheMonthAreNotDates() {
+        SearchQuery q = SearchQuery.parse("31-02-2025", NOW, IST);
+        assertEquals(0L, q.fromMillis);
+        assertEquals("\"31 02 2025*\"", q.matchExpression());
+        assertEquals(0L, SearchQuery.parse("29-02-2025", NOW, IST).fromMillis);
+        assertEquals(0L, SearchQuery.parse("2025-04-31", NOW, IST).fromMillis);
+        assertNotEquals(0L, SearchQuery.parse("29-02-2024", NOW, IST).fromMillis);
+        assertEquals(TODAY - 18 * DAY, SearchQuery.parse("30/09/25", NOW, IST).fromMillis);
+    }
+
+    @Test
+    public void onlyLettersAndDigitsReachMatch() {
+        SearchQuery q = SearchQuery.parse("\"x* OR y\" -- NEAR(", NOW, IST);
+        // Lower case, so OR and NEAR are plain words to the full-text index.
+        assertEquals("x* or* y* near*", q.matchExpression());
+        assertTrue(SearchQuery.parse("  ", NOW, IST).isEmpty());
+        assertTrue(SearchQuery.parse("-- ''", NOW, IST).isEmpty());
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.paymenttracker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TelegramRateLimiterTest {
+
+    private static final String BOT = "123:abc";
+
+    @Test
+    public void spacesSendsToOneChat() {
+        TelegramRateLimiter limiter = new TelegramRateLimiter();
+        long now = 1_000_000L;
+        assertEquals(0L, limiter.reserve(BOT, "42", now));
+        long wait = limiter.reserve(BOT, "42", now);
+        assertEquals(1000L, wait);
+        // Waiting took nothing, so the next send goes once the second is up.
+        assertEquals(500L, limiter.reserve(BOT, "42", now + 500));
+        assertEquals(0L, limiter.reserve(BOT, "42", now + 1000));
+    }
+
+    @Test
+    public void chatsShareTheBotBudget() {
+        TelegramRateLimiter limiter = new TelegramRateLimiter();
+        long now = 1_000_000L;
+        for (int chat = 0; chat < TelegramRateLimiter.BOT_BURST; chat++) {
+            assertEquals(0L, limiter.reserve(BOT, "chat" + chat, now));
+        }
+        long wait = limiter.reserve(BOT, "another", now);
+        assertTrue(wait > 0 && wait <= 34);
+        // Another bot has its own budget.
+        assertEquals(0L, limiter.reserve("456:def", "another", now));
+    }
+
+    @Test
+    public void honoursRetryAfter() {
+        TelegramRateLimiter limiter = new TelegramRateLimiter();
+        long now = 1_000_000L;
+        limiter.backOff(BOT, "42", 7000L, now);
+        assertEquals(7000L, limiter.waitMillis(BOT, "42", now));
+        assertEquals(2000L, limiter.reserve(BOT, "42", now + 5000));
+        assertEquals(0L, limiter.reserve(BOT, "42", now + 7000));
+    }
+
+    @Test
+    public void readsRetryAfterFromTheReply() {
+        String body = "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after 5\","
+                + "\"parameters\":{\"retry_after\":5}}";
+        assertEquals(5000L, TelegramRateLimiter.retryAfterMillis(body, "9"));
+        assertEquals(9000L, TelegramRateLimiter.retryAfterMillis("not json", "9"));
+        assertEquals(1000L, TelegramRateLimiter.retryAfterMillis("", "Wed, 21 Oct 2026 07:28:00 GMT"));
+        assertEquals(1000L, TelegramRateLimiter.retryAfterMillis(null, null));
+    }
+}
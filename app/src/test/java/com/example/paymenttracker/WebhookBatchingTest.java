@@ -0,0 +1,69 @@
+package com.example.paymenttracker;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class WebhookBatchingTest {
+
+    @Test
+    public void readsTheSettings() {
+        WebhookBatching batching = WebhookBatching.fromSettings("25", "", true);
+        assertTrue(batching.enabled());
+        assertEquals(25, batching.maxSize);
+        assertEquals(WebhookBatching.DEFAULT_LINGER_SECONDS * 1000L, batching.lingerMillis);
+        assertTrue(batching.gzip);
+
+        WebhookBatching capped = WebhookBatching.fromSettings("100000", "9999", false);
+        assertEquals(WebhookBatching.MAX_SIZE, capped.maxSize);
+        assertEquals(WebhookBatching.MAX_LINGER_SECONDS * 1000L, capped.lingerMillis);
+
+        assertSame(WebhookBatching.OFF, WebhookBatching.fromSettings("", "30", true));
+        assertSame(WebhookBatching.OFF, WebhookBatching.fromSettings("1", "30", true));
+        assertSame(WebhookBatching.OFF, WebhookBatching.fromSettings("lots", "30", true));
+        assertFalse(WebhookBatching.OFF.enabled());
+    }
+
+    @Test
+    public void tagsEachPayloadWithItsDeliveryId() throws Exception {
+        String body = WebhookBatching.body(Arrays.asList(7L, 9L),
+                Arrays.asList("{\"upi_ref_id\":\"111\"}", "{\"upi_ref_id\":\"222\"}"));
+        JSONArray batch = new JSONArray(body);
+        assertEquals(2, batch.length());
+        assertEquals(7L, batch.getJSONObject(0).getLong(WebhookBatching.DELIVERY_ID));
+        assertEquals("111", batch.getJSONObject(0).getString("upi_ref_id"));
+        assertEquals(9L, batch.getJSONObject(1).getLong(WebhookBatching.DELIVERY_ID));
+    }
+
+    @Test
+    public void readsWhichItemsFailed() {
+        Set<Long> failed = WebhookBatching.failedIds("{\"failed\":[12, \"15\", \"x\"]}");
+        assertEquals(2, failed.size());
+        assertTrue(failed.contains(12L));
+        assertTrue(failed.contains(15L));
+
+        assertTrue(WebhookBatching.failedIds("").isEmpty());
+        assertTrue(WebhookBatching.failedIds("OK").isEmpty());
+        assertTrue(WebhookBatching.failedIds("[1,2]").isEmpty());
+        assertTrue(WebhookBatching.failedIds("{\"failed\":\"all\"}").isEmpty());
+    }
+
+    @Test
+    public void gzipRoundTrips() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 50; i++) json.append(i == 0 ? "" : ",").append("{\"amount_received\":\"1499.00\"}");
+        byte[] raw = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        byte[] packed = WebhookBatching.gzip(raw);
+        assertTrue(packed.length < raw.length / 4);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(packed))) {
+            assertArrayEquals(raw, in.readAllBytes());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.paymenttracker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crafted bodies that used to make the parser backtrack, at growing lengths.
+ * Linear parsing means the time per op grows in step with length, so ns/op
+ * divided by length should stay flat from 512 chars to 10 KB.
+ *
+ * tokenize runs the tokenizer directly, past SmsParser.MAX_BODY_LENGTH, to
+ * show the scan itself is linear; parse goes through the public entry point,
+ * which turns away bodies over the cap before reading them.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AdversarialBenchmark {
+
+    @Param({"512", "2048", "10240"})
+    public int length;
+
+    // What the body repeats: long hyphenated ids, ref labels with no value,
+    // chained '@'s, digit groups, a run of combining marks, and real payment
+    // SMS concatenated like a long multipart message.
+    @Param({"hyphens", "labels", "ats", "digits", "marks", "multipart"})
+    public String shape;
+
+    private String body;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String unit;
+        switch (shape) {
+            case "hyphens": unit = "UPI Ref No -a1-b2-c3-d4-e5-f6-g7-h8-"; break;
+            case "labels": unit = "Ref: Txn ID: "; break;
+            case "ats": unit = "a.b@c-d@"; break;
+            case "digits": unit = "Rs 1,234,567.8,"; break;
+            case "marks": unit = "\u0301"; break;
+            case "multipart": unit = "Rs.1,499.00 credited to your A/c XX1234 on 12-Oct-2025 by UPI Ref No 528512345678 from foo@okaxis. "; break;
+            default: throw new IllegalArgumentException(shape);
+        }
+        StringBuilder sb = new StringBuilder(length);
+        sb.append("a");
+        while (sb.length() < length) sb.append(unit);
+        sb.setLength(length);
+        body = sb.toString();
+    }
+
+    @Benchmark
+    public SmsTokenizer tokenize() {
+        return SmsTokenizer.tokenize(body, SmsParser.bankMatcher());
+    }
+
+    @Benchmark
+    public ParseResult parse() {
+        return SmsParser.parseResult(body, "AD-CRAFTD", 0L);
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.paymenttracker;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start and save costs of the message history, old and new, at growing
+ * history sizes.
+ *
+ * The json* methods are what the app did with the JSON array it kept in
+ * SharedPreferences: parse all of it to show the first screen, and parse,
+ * prepend and serialize all of it to save one message. The log* methods
+ * open a HistoryLog and decode the newest page, or append one record.
+ * Appends are not forced to disk, since fsync time depends on the device.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistoryLogBenchmark {
+
+    // The first screen: MessagePager.PAGE_SIZE.
+    private static final int PAGE = 50;
+
+    @Param({"1000", "10000", "100000"})
+    public int messages;
+
+    private SmsCorpus corpus;
+    private String json;
+    private File file;
+    private File appendFile;
+    private HistoryLog appendLog;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = SmsCorpus.load("sms-corpus.tsv");
+        file = File.createTempFile("history", ".log");
+        Files.delete(file.toPath());
+        appendFile = new File(file.getPath() + ".append");
+        List<HistoryRecord> records = new ArrayList<>(messages);
+        JSONArray arr = new JSONArray();
+        for (int i = 0; i < messages; i++) {
+            HistoryRecord r = record(i);
+            records.add(r);
+            arr.put(toJson(r));
+        }
+        // The app kept the newest message first.
+        JSONArray newestFirst = new JSONArray();
+        for (int i = arr.length() - 1; i >= 0; i--) newestFirst.put(arr.get(i));
+        json = newestFirst.toString();
+        HistoryLog.rewrite(file, records);
+    }
+
+    // Appends go to a copy, so the cold start methods always read the
+    // same history.
+    @Setup(Level.Iteration)
+    public void openForAppends() throws IOException {
+        Files.copy(file.toPath(), appendFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        appendLog = HistoryLog.open(appendFile, false);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeAppends() throws IOException {
+        appendLog.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file.toPath());
+        Files.deleteIfExists(appendFile.toPath());
+    }
+
+    private HistoryRecord record(int i) {
+        int c = i % corpus.size();
+        return new HistoryRecord.Builder()
+                .id(i + 1)
+                .timestamp(1760257980000L + i * 60_000L)
+                .sender(corpus.senders[c])
+                .body(corpus.bodies[c])
+                .status("SUBMITTED")
+                .amountPaise(i % 4 == 0 ? -1L : 100L * (i % 5000))
+                .upiRefId(i % 4 == 0 ? null : String.valueOf(512_300_000_000L + i))
+                .senderVpa(i % 4 == 0 ? null : "payer" + (i % 97) + "@okaxis")
+                .bank(i % 4 == 0 ? null : "HDFC")
+                .paidAtMillis(1760257980000L + i * 60_000L)
+                .build();
+    }
+
+    private static JSONObject toJson(HistoryRecord r) {
+        JSONObject o = new JSONObject();
+        try {
+            o.put("sender", r.sender);
+            o.put("body", r.body);
+            o.put("status", r.status);
+            o.put("timestamp", String.valueOf(r.timestamp));
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return o;
+    }
+
+    @Benchmark
+    public List<HistoryRecord> jsonFirstScreen() throws JSONException {
+        JSONArray arr = new JSONArray(json);
+        List<HistoryRecord> out = new ArrayList<>(PAGE);
+        for (int i = 0; i < Math.min(PAGE, arr.length()); i++) {
+            JSONObject o = arr.getJSONObject(i);
+            out.add(new HistoryRecord.Builder()
+                    .sender(o.optString("sender"))
+                    .body(o.optString("body"))
+                    .status(o.optString("status"))
+                    .timestamp(Long.parseLong(o.optString("timestamp")))
+                    .build());
+        }
+        return out;
+    }
+
+    @Benchmark
+    public List<HistoryRecord> logFirstScreen() throws IOException {
+        try (HistoryLog log = HistoryLog.open(file, false)) {
+            return log.newest(PAGE);
+        }
+    }
+
+    @Benchmark
+    public String jsonAppend() throws JSONException {
+        JSONArray old = new JSONArray(json);
+        JSONArray arr = new JSONArray();
+        arr.put(toJson(record(next++ % messages)));
+        for (int i = 0; i < old.length(); i++) arr.put(old.get(i));
+        return arr.toString();
+    }
+
+    @Benchmark
+    public long logAppend() throws IOException {
+        appendLog.append(record(next++ % messages));
+        return appendLog.size();
+    }
+}
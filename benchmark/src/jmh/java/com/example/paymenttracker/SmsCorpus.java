@@ -0,0 +1,46 @@
+package com.example.paymenttracker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The checked-in benchmark corpus, sms-corpus.tsv. */
+final class SmsCorpus {
+
+    final String[] senders;
+    final String[] bodies;
+
+    private SmsCorpus(List<String> senders, List<String> bodies) {
+        this.senders = senders.toArray(new String[0]);
+        this.bodies = bodies.toArray(new String[0]);
+    }
+
+    int size() {
+        return bodies.length;
+    }
+
+    static SmsCorpus load(String resource) {
+        List<String> senders = new ArrayList<>();
+        List<String> bodies = new ArrayList<>();
+        InputStream in = SmsCorpus.class.getResourceAsStream("/" + resource);
+        if (in == null) throw new IllegalStateException("missing resource " + resource);
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                int tab = line.indexOf('\t');
+                if (tab < 0) throw new IllegalStateException("no sender in: " + line);
+                senders.add(line.substring(0, tab));
+                bodies.add(line.substring(tab + 1).replace("\\n", "\n"));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new SmsCorpus(senders, bodies);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.paymenttracker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+
+/**
+ * Parsing pipeline benchmarks over sms-corpus.tsv. Every operation handles the
+ * next message of the corpus, so results are an average over the whole mix of
+ * payment and non-payment SMS.
+ *
+ * The benchmark methods live here; {@link Throughput} and {@link Latency}
+ * only choose how JMH reports them (ops/s and ns/op). Run with
+ * {@code ./gradlew :benchmark:jmh}, which adds the gc profiler for B/op.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public abstract class SmsParserBenchmark {
+
+    private SmsCorpus corpus;
+    private SmsTokenizer[] tokenized;
+    private SmsPreFilter preFilter;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        corpus = SmsCorpus.load("sms-corpus.tsv");
+        tokenized = new SmsTokenizer[corpus.size()];
+        for (int i = 0; i < tokenized.length; i++) {
+            tokenized[i] = SmsTokenizer.tokenize(corpus.bodies[i], SmsParser.bankMatcher());
+        }
+        preFilter = SmsPreFilter.fromSettings("", "");
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = i + 1 == corpus.size() ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public PaymentDetails parse() {
+        return SmsParser.parse(corpus.bodies[nextIndex()]);
+    }
+
+    @Benchmark
+    public PaymentDetails parseWithSender() {
+        int i = nextIndex();
+        return SmsParser.parse(corpus.bodies[i], corpus.senders[i]);
+    }
+
+    @Benchmark
+    public Map<String, Object> parseToMap() {
+        return SmsParser.parseToMap(corpus.bodies[nextIndex()]);
+    }
+
+    @Benchmark
+    public SmsTokenizer tokenize() {
+        return SmsTokenizer.tokenize(corpus.bodies[nextIndex()], SmsParser.bankMatcher());
+    }
+
+    @Benchmark
+    public SmsToken extractRef() {
+        return SmsParser.extractRef(tokenized[nextIndex()]);
+    }
+
+    @Benchmark
+    public String extractBank() {
+        return SmsParser.extractBank(tokenized[nextIndex()]);
+    }
+
+    @Benchmark
+    public String extractDateIso() {
+        SmsDateScanner date = tokenized[nextIndex()].date();
+        return date != null ? date.iso() : null;
+    }
+
+    @Benchmark
+    public SmsPreFilter.Reason preFilter() {
+        int i = nextIndex();
+        return preFilter.check(corpus.senders[i], corpus.bodies[i]);
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.paymenttracker;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Just enough JSON for SMS dumps: reads one flat object per line (nested
+ * values are skipped) and escapes strings for output. org.json is part of
+ * Android, not the JDK, so it is not available here.
+ */
+final class Json {
+
+    private final String s;
+    private int p;
+
+    private Json(String s) {
+        this.s = s;
+    }
+
+    /**
+     * Reads the top-level members of a JSON object. Strings are unescaped,
+     * numbers/true/false are returned as written, null as null; arrays and
+     * objects are skipped.
+     */
+    static Map<String, String> readObject(String line) {
+        Json j = new Json(line);
+        Map<String, String> out = new HashMap<>();
+        j.skipSpace();
+        j.expect('{');
+        j.skipSpace();
+        if (j.peek() == '}') {
+            j.p++;
+        } else {
+            while (true) {
+                j.skipSpace();
+                String key = j.readString();
+                j.skipSpace();
+                j.expect(':');
+                j.skipSpace();
+                out.put(key, j.readValue());
+                j.skipSpace();
+                char c = j.next();
+                if (c == '}') break;
+                if (c != ',') throw j.error("expected ',' or '}'");
+            }
+        }
+        j.skipSpace();
+        if (j.p != line.length()) throw j.error("trailing characters");
+        return out;
+    }
+
+    static void appendString(StringBuilder sb, String v) {
+        if (v == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        sb.append("\\u");
+                        String hex = Integer.toHexString(c);
+                        for (int k = hex.length(); k < 4; k++) sb.append('0');
+                        sb.append(hex);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    private String readValue() {
+        char c = peek();
+        if (c == '"') return readString();
+        if (c == '{' || c == '[') {
+            skipNested();
+            return null;
+        }
+        int start = p;
+        while (p < s.length() && ",}] \t\r\n".indexOf(s.charAt(p)) < 0) p++;
+        String literal = s.substring(start, p);
+        if (literal.isEmpty()) throw error("expected a value");
+        return literal.equals("null") ? null : literal;
+    }
+
+    private String readString() {
+        expect('"');
+        StringBuilder sb = null;
+        int start = p;
+        while (true) {
+            if (p >= s.length()) throw error("unterminated string");
+            char c = s.charAt(p++);
+            if (c == '"') {
+                return sb == null ? s.substring(start, p - 1) : sb.toString();
+            }
+            if (c != '\\') {
+                if (sb != null) sb.append(c);
+                continue;
+            }
+            if (sb == null) sb = new StringBuilder(s.substring(start, p - 1));
+            if (p >= s.length()) throw error("unterminated escape");
+            char e = s.charAt(p++);
+            switch (e) {
+                case '"': case '\\': case '/': sb.append(e); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (p + 4 > s.length()) throw error("bad unicode escape");
+                    try {
+                        sb.append((char) Integer.parseInt(s.substring(p, p + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("bad unicode escape");
+                    }
+                    p += 4;
+                    break;
+                default:
+                    throw error("bad escape");
+            }
+        }
+    }
+
+    private void skipNested() {
+        int depth = 0;
+        do {
+            if (p >= s.length()) throw error("unterminated value");
+            char c = s.charAt(p);
+            if (c == '"') {
+                readString();
+                continue;
+            }
+            if (c == '{' || c == '[') depth++;
+            else if (c == '}' || c == ']') depth--;
+            p++;
+        } while (depth > 0);
+    }
+
+    private void skipSpace() {
+        while (p < s.length() && (s.charAt(p) == ' ' || s.charAt(p) == '\t' || s.charAt(p) == '\r' || s.charAt(p) == '\n')) p++;
+    }
+
+    private char peek() {
+        if (p >= s.length()) throw error("unexpected end");
+        return s.charAt(p);
+    }
+
+    private char next() {
+        char c = peek();
+        p++;
+        return c;
+    }
+
+    private void expect(char c) {
+        if (next() != c) throw error("expected '" + c + "'");
+    }
+
+    private IllegalArgumentException error(String what) {
+        return new IllegalArgumentException(what + " at column " + (p + 1));
+    }
+}
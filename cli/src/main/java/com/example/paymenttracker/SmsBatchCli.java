@@ -0,0 +1,281 @@
+package com.example.paymenttracker;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Re-processes an exported SMS dump (JSONL or CSV) and writes one JSON line
+ * per received payment, in input order.
+ *
+ * The input is streamed: the calling thread reads records into batches and
+ * hands each batch to a fixed pool of parser threads. The futures go into a
+ * bounded queue in submission order, and a single writer thread takes them
+ * from there, so output order matches input order and at most
+ * QUEUED_BATCHES_PER_THREAD batches per thread are in memory at once - the
+ * reader blocks when the writer falls behind.
+ */
+public final class SmsBatchCli {
+
+    private static final int BATCH_SIZE = 512;
+    private static final int QUEUED_BATCHES_PER_THREAD = 4;
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private static final Future<Batch> END = CompletableFuture.completedFuture(null);
+
+    private SmsBatchCli() {
+    }
+
+    /** Totals for one run; the error lines go to the report stream as they happen. */
+    static final class Stats {
+        long records;
+        long payments;
+        long filtered;
+        long ignored;
+        long overBudget;
+        long malformed;
+        long failed;
+        long elapsedNanos;
+
+        long perSecond() {
+            return elapsedNanos == 0 ? 0 : records * 1_000_000_000L / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "records=%d payments=%d filtered=%d ignored=%d overBudget=%d malformed=%d failed=%d elapsed=%.3fs rate=%d msg/s",
+                    records, payments, filtered, ignored, overBudget, malformed, failed, elapsedNanos / 1e9, perSecond());
+        }
+    }
+
+    // A slice of the input and, once parsed, its output text and counts.
+    private static final class Batch {
+        final SmsRecord[] records = new SmsRecord[BATCH_SIZE];
+        int size;
+        final StringBuilder out = new StringBuilder(BATCH_SIZE * 64);
+        final StringBuilder errors = new StringBuilder();
+        int payments;
+        int filtered;
+        int ignored;
+        int overBudget;
+        int malformed;
+        int failed;
+    }
+
+    public static void main(String[] args) {
+        String input = null;
+        String output = null;
+        String format = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-o": case "--output": output = args[++i]; break;
+                    case "-f": case "--format": format = args[++i]; break;
+                    case "-t": case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "-h": case "--help": usage(System.out); return;
+                    default:
+                        if (input != null) throw new IllegalArgumentException("unexpected argument " + args[i]);
+                        input = args[i];
+                }
+            }
+            if (input == null) throw new IllegalArgumentException("no input file");
+            if (threads < 1) throw new IllegalArgumentException("--threads must be at least 1");
+            if (format == null) format = input.toLowerCase(Locale.ROOT).endsWith(".csv") ? "csv" : "jsonl";
+            if (!format.equals("csv") && !format.equals("jsonl")) throw new IllegalArgumentException("unknown format " + format);
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("error: " + (e instanceof ArrayIndexOutOfBoundsException ? "missing option value" : e.getMessage()));
+            usage(System.err);
+            System.exit(2);
+            return;
+        }
+
+        try (InputStream in = input.equals("-") ? System.in : new FileInputStream(input);
+             OutputStream out = output == null || output.equals("-") ? System.out : new FileOutputStream(output)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+            SmsRecordReader records = format.equals("csv") ? SmsRecordReader.csv(reader) : SmsRecordReader.jsonl(reader);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+            Stats stats = run(records, writer, threads, System.err);
+            writer.flush();
+            System.err.println(stats);
+        } catch (IOException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("usage: cli <input.jsonl|input.csv|-> [-o output.jsonl] [--format jsonl|csv] [--threads N]");
+    }
+
+    /**
+     * Parses every record of the reader on the given number of threads and
+     * writes the payments to out in input order. Malformed and failed records
+     * are reported (the first few of each run) to report.
+     */
+    static Stats run(SmsRecordReader in, Writer out, int threads, PrintStream report) throws IOException {
+        long start = System.nanoTime();
+        Stats stats = new Stats();
+        // Everything goes through the parser without a sender, so the threads
+        // never share the synchronized template cache; the sender of each
+        // record is still written to the output. Sender lists are an app
+        // setting and are not applied here.
+        SmsPreFilter preFilter = SmsPreFilter.fromSettings("", "");
+        BlockingQueue<Future<Batch>> queue = new ArrayBlockingQueue<>(threads * QUEUED_BATCHES_PER_THREAD);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "sms-parser");
+            t.setDaemon(true);
+            return t;
+        });
+        IOException[] writeError = new IOException[1];
+        Thread writer = new Thread(() -> drain(queue, out, stats, report, writeError), "sms-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        try {
+            Batch batch = new Batch();
+            SmsRecord record;
+            while ((record = in.next()) != null) {
+                batch.records[batch.size++] = record;
+                if (batch.size == BATCH_SIZE) {
+                    submit(pool, queue, batch, preFilter);
+                    batch = new Batch();
+                }
+            }
+            if (batch.size > 0) submit(pool, queue, batch, preFilter);
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } finally {
+            writer.interrupt();
+            pool.shutdownNow();
+            in.close();
+        }
+        if (writeError[0] != null) throw writeError[0];
+        out.flush();
+        stats.elapsedNanos = System.nanoTime() - start;
+        return stats;
+    }
+
+    private static void submit(ExecutorService pool, BlockingQueue<Future<Batch>> queue, Batch batch, SmsPreFilter preFilter)
+            throws InterruptedException {
+        queue.put(pool.submit(() -> parse(batch, preFilter)));
+    }
+
+    // Writer thread: takes batches in submission order. After a write error it
+    // keeps taking (and dropping) batches so the reader never blocks on a full queue.
+    private static void drain(BlockingQueue<Future<Batch>> queue, Writer out, Stats stats, PrintStream report,
+                              IOException[] writeError) {
+        long reported = 0;
+        try {
+            while (true) {
+                Future<Batch> f = queue.take();
+                if (f == END) return;
+                Batch b;
+                try {
+                    b = f.get();
+                } catch (ExecutionException e) {
+                    // parse() catches per record, so this is a bug rather than bad input.
+                    if (writeError[0] == null) writeError[0] = new IOException("batch failed", e.getCause());
+                    continue;
+                }
+                stats.records += b.size;
+                stats.payments += b.payments;
+                stats.filtered += b.filtered;
+                stats.ignored += b.ignored;
+                stats.overBudget += b.overBudget;
+                stats.malformed += b.malformed;
+                stats.failed += b.failed;
+                if (writeError[0] != null) continue;
+                if (b.errors.length() > 0 && reported < MAX_REPORTED_ERRORS) {
+                    report.print(b.errors);
+                    reported += b.malformed + b.failed;
+                }
+                try {
+                    out.append(b.out);
+                } catch (IOException e) {
+                    writeError[0] = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Batch parse(Batch b, SmsPreFilter preFilter) {
+        for (int i = 0; i < b.size; i++) {
+            SmsRecord r = b.records[i];
+            b.records[i] = null;
+            if (r.error != null) {
+                b.malformed++;
+                b.errors.append("line ").append(r.line).append(": ").append(r.error).append('\n');
+                continue;
+            }
+            if (preFilter.check(null, r.body) != null) {
+                b.filtered++;
+                continue;
+            }
+            ParseResult result;
+            try {
+                result = SmsParser.parseResult(r.body, null, r.timestampMillis);
+            } catch (RuntimeException e) {
+                b.failed++;
+                b.errors.append("line ").append(r.line).append(": ").append(e).append('\n');
+                continue;
+            }
+            if (result.status() == ParseResult.Status.OVER_BUDGET) {
+                b.overBudget++;
+                continue;
+            }
+            PaymentDetails d = result.details();
+            if (d == null) {
+                b.ignored++;
+            } else {
+                b.payments++;
+                appendJson(b.out, r, d);
+            }
+        }
+        return b;
+    }
+
+    static void appendJson(StringBuilder sb, SmsRecord r, PaymentDetails d) {
+        sb.append("{\"line\":").append(r.line);
+        sb.append(",\"sender\":");
+        Json.appendString(sb, r.sender);
+        sb.append(",\"amount\":");
+        Json.appendString(sb, d.amount);
+        sb.append(",\"upiRefId\":");
+        Json.appendString(sb, d.upiRefId);
+        sb.append(",\"senderVpa\":");
+        Json.appendString(sb, d.senderVpa);
+        sb.append(",\"bank\":");
+        Json.appendString(sb, d.bank);
+        sb.append(",\"dateTime\":");
+        Json.appendString(sb, d.dateTime);
+        sb.append(",\"dateTimeMillis\":").append(d.dateTimeMillis);
+        sb.append(",\"receivedAtMillis\":").append(d.receivedAtMillis);
+        sb.append(",\"fullSmsBody\":");
+        Json.appendString(sb, d.fullSmsBody);
+        sb.append("}\n");
+    }
+}
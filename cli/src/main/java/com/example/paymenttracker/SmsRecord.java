@@ -0,0 +1,37 @@
+package com.example.paymenttracker;
+
+/** One SMS read from a dump, or the reason its input record could not be read. */
+final class SmsRecord {
+
+    final long line;
+    final String sender;
+    final String body;
+    final long timestampMillis;
+    final String error;
+
+    private SmsRecord(long line, String sender, String body, long timestampMillis, String error) {
+        this.line = line;
+        this.sender = sender;
+        this.body = body;
+        this.timestampMillis = timestampMillis;
+        this.error = error;
+    }
+
+    static SmsRecord of(long line, String sender, String body, long timestampMillis) {
+        return new SmsRecord(line, sender, body, timestampMillis, null);
+    }
+
+    static SmsRecord malformed(long line, String error) {
+        return new SmsRecord(line, null, null, 0L, error);
+    }
+
+    // Epoch millis, either as a number or a numeric string; 0 when absent or unreadable.
+    static long parseTimestamp(String s) {
+        if (s == null || s.isEmpty()) return 0L;
+        try {
+            return Long.parseLong(s.trim());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+}
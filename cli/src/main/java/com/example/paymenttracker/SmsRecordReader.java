@@ -0,0 +1,197 @@
+package com.example.paymenttracker;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streams {@link SmsRecord}s out of a JSONL or CSV dump, one record at a
+ * time, so a dump of any size is read in constant memory.
+ *
+ * Field names are matched case-insensitively: the body is "body", "message"
+ * or "text", the sender "sender", "address" or "from", and the arrival time
+ * (epoch millis) "timestamp", "date" or "time". A CSV dump must start with a
+ * header row naming its columns; quoted fields may span lines, and a quote
+ * left open at the end of the input makes its row malformed. A leading UTF-8
+ * byte order mark, as spreadsheet exports write, is skipped.
+ */
+abstract class SmsRecordReader implements Closeable {
+
+    private static final String[] BODY_KEYS = {"body", "message", "text"};
+    private static final String[] SENDER_KEYS = {"sender", "address", "from"};
+    private static final String[] TIME_KEYS = {"timestamp", "date", "time"};
+    private static final char BOM = '\uFEFF';
+
+    /** The next record, or null at the end of the input. */
+    abstract SmsRecord next() throws IOException;
+
+    static SmsRecordReader jsonl(BufferedReader in) {
+        return new JsonlReader(in);
+    }
+
+    static SmsRecordReader csv(Reader in) throws IOException {
+        return new CsvReader(in);
+    }
+
+    private static int indexOf(List<String> header, String[] names) {
+        for (String name : names) {
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).trim().toLowerCase(Locale.ROOT).equals(name)) return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String get(Map<String, String> obj, String[] names) {
+        for (String name : names) {
+            for (Map.Entry<String, String> e : obj.entrySet()) {
+                if (e.getKey().equalsIgnoreCase(name)) return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static final class JsonlReader extends SmsRecordReader {
+        private final BufferedReader in;
+        private long line;
+
+        JsonlReader(BufferedReader in) {
+            this.in = in;
+        }
+
+        @Override
+        SmsRecord next() throws IOException {
+            String text;
+            do {
+                text = in.readLine();
+                if (text == null) return null;
+                if (line++ == 0 && !text.isEmpty() && text.charAt(0) == BOM) text = text.substring(1);
+            } while (text.trim().isEmpty());
+
+            Map<String, String> obj;
+            try {
+                obj = Json.readObject(text);
+            } catch (IllegalArgumentException e) {
+                return SmsRecord.malformed(line, e.getMessage());
+            }
+            String body = get(obj, BODY_KEYS);
+            if (body == null) return SmsRecord.malformed(line, "no body field");
+            return SmsRecord.of(line, get(obj, SENDER_KEYS), body, SmsRecord.parseTimestamp(get(obj, TIME_KEYS)));
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static final class CsvReader extends SmsRecordReader {
+        private final Reader in;
+        private final char[] buf = new char[1 << 16];
+        private int pos;
+        private int limit;
+        private long line = 1;
+        // Set by readRow when the input ended inside a quoted field.
+        private boolean unterminated;
+        private final int bodyColumn;
+        private final int senderColumn;
+        private final int timeColumn;
+
+        CsvReader(Reader in) throws IOException {
+            this.in = in;
+            if (read() != BOM && limit > 0) pos--;    // put back the first char unless it is a BOM
+            List<String> header = readRow();
+            if (header == null) throw new IOException("empty CSV input");
+            if (unterminated) throw new IOException("CSV header has an unterminated quoted field");
+            bodyColumn = indexOf(header, BODY_KEYS);
+            senderColumn = indexOf(header, SENDER_KEYS);
+            timeColumn = indexOf(header, TIME_KEYS);
+            if (bodyColumn < 0) throw new IOException("CSV header has no body/message/text column");
+        }
+
+        @Override
+        SmsRecord next() throws IOException {
+            long start;
+            List<String> row;
+            do {
+                start = line;
+                row = readRow();
+                if (row == null) return null;
+            } while (row.size() == 1 && row.get(0).isEmpty() && !unterminated);
+
+            // the rest of the input went into the open field, so there is nothing to read on from
+            if (unterminated) return SmsRecord.malformed(start, "unterminated quoted field");
+            if (row.size() <= bodyColumn) return SmsRecord.malformed(start, "expected " + (bodyColumn + 1) + " columns, got " + row.size());
+            String sender = senderColumn >= 0 && senderColumn < row.size() ? row.get(senderColumn) : null;
+            String time = timeColumn >= 0 && timeColumn < row.size() ? row.get(timeColumn) : null;
+            return SmsRecord.of(start, sender, row.get(bodyColumn), SmsRecord.parseTimestamp(time));
+        }
+
+        // RFC 4180: fields separated by ',', quoted fields may hold ',', '"' (doubled) and line breaks.
+        private List<String> readRow() throws IOException {
+            int c = read();
+            if (c < 0) return null;
+            List<String> row = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c < 0) {
+                        unterminated = true;
+                        row.add(field.toString());
+                        return row;
+                    }
+                    if (c == '"') {
+                        int d = read();
+                        if (d == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            c = d;
+                            continue;
+                        }
+                    } else {
+                        if (c == '\n') line++;
+                        field.append((char) c);
+                    }
+                } else if (c < 0 || c == '\n') {
+                    if (c == '\n') line++;
+                    int n = field.length();
+                    if (n > 0 && field.charAt(n - 1) == '\r') field.setLength(n - 1);
+                    row.add(field.toString());
+                    return row;
+                } else if (c == ',') {
+                    row.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            if (pos == limit) {
+                limit = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buf[pos++];
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
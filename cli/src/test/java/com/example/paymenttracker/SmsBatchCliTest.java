@@ -0,0 +1,142 @@
+package com.example.paymenttracker;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SmsBatchCliTest {
+
+    private static final String[] BODIES = {
+            "Rs.1,499.00 credited to your A/c XX1234 on 12-Oct-2025 by UPI Ref No 528512345678 from foo@okaxis. -HDFC Bank",
+            "Your OTP for login is 482913. Do not share it with anyone.",
+            "Dear Customer, INR 250.00 credited to a/c **5678 on 12/10/25. UPI Ref: 412345678901 (ICICI Bank)",
+            "Rs 1000 debited from A/c XX9999 on 12-Oct-25. Not you? Call 18002586161",
+            "IMPS credit of 7,500.25 received from 9123456789@paytm Ref --12",
+    };
+
+    @Test
+    public void keepsInputOrderAcrossThreads() throws IOException {
+        StringBuilder jsonl = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            String body = BODIES[i % BODIES.length] + " #" + i;
+            jsonl.append("{\"sender\":\"VM-BANK").append(i).append("\",\"body\":");
+            Json.appendString(jsonl, body);
+            jsonl.append(",\"timestamp\":").append(1760000000000L + i).append("}\n");
+            PaymentDetails d = SmsParser.parse(body, null, 1760000000000L + i);
+            if (d != null) expected.add(d.fullSmsBody);
+        }
+
+        StringWriter out = new StringWriter();
+        SmsBatchCli.Stats stats = SmsBatchCli.run(
+                SmsRecordReader.jsonl(new BufferedReader(new StringReader(jsonl.toString()))), out, 4, quiet());
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(expected.size(), lines.length);
+        assertEquals(5000, stats.records);
+        assertEquals(expected.size(), stats.payments);
+        assertEquals(5000, stats.payments + stats.filtered + stats.ignored);
+        for (int i = 0; i < lines.length; i++) {
+            Map<String, String> obj = Json.readObject(lines[i]);
+            assertEquals(expected.get(i), obj.get("fullSmsBody"));
+            long line = Long.parseLong(obj.get("line"));
+            assertEquals("VM-BANK" + (line - 1), obj.get("sender"));
+            assertEquals(Long.toString(1760000000000L + line - 1), obj.get("receivedAtMillis"));
+        }
+    }
+
+    @Test
+    public void countsMalformedLinesAndCarriesOn() throws IOException {
+        String jsonl = "{\"body\":\"" + BODIES[0] + "\"}\n"
+                + "not json\n"
+                + "\n"
+                + "{\"sender\":\"AD-HDFCBK\"}\n"
+                + "{\"text\":\"" + BODIES[2] + "\",\"meta\":{\"a\":[1,2,\"}\"]}}\n";
+        StringWriter out = new StringWriter();
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        SmsBatchCli.Stats stats = SmsBatchCli.run(
+                SmsRecordReader.jsonl(new BufferedReader(new StringReader(jsonl))), out, 2, new PrintStream(report, true));
+
+        assertEquals(4, stats.records);
+        assertEquals(2, stats.payments);
+        assertEquals(2, stats.malformed);
+        String errors = report.toString();
+        assertTrue(errors, errors.contains("line 2:"));
+        assertTrue(errors, errors.contains("line 4: no body field"));
+        assertTrue(out.toString().contains("\"upiRefId\":\"412345678901\""));
+    }
+
+    @Test
+    public void readsQuotedCsv() throws IOException {
+        String csv = "Address,Date,Body\r\n"
+                + "AX-HDFCBK,1760000000000,\"Rs.1,499.00 credited to your A/c XX1234 by UPI Ref No 528512345678\r\n"
+                + "from \"\"foo@okaxis\"\". -HDFC Bank\"\r\n"
+                + "JD-ICICIB,,hello\n"
+                + "short\n";
+        SmsRecordReader in = SmsRecordReader.csv(new StringReader(csv));
+
+        SmsRecord first = in.next();
+        assertEquals(2, first.line);
+        assertEquals("AX-HDFCBK", first.sender);
+        assertEquals(1760000000000L, first.timestampMillis);
+        assertEquals("Rs.1,499.00 credited to your A/c XX1234 by UPI Ref No 528512345678\r\n"
+                + "from \"foo@okaxis\". -HDFC Bank", first.body);
+
+        SmsRecord second = in.next();
+        assertEquals(4, second.line);
+        assertEquals(0L, second.timestampMillis);
+        assertEquals("hello", second.body);
+
+        SmsRecord third = in.next();
+        assertNotNull(third.error);
+        assertNull(in.next());
+    }
+
+    @Test
+    public void skipsABomAndReportsAnOpenQuote() throws IOException {
+        String csv = "\uFEFFbody,sender\n"
+                + "hello,JD-ICICIB\n"
+                + "\"Rs 10 credited,AX-HDFCBK\n"
+                + "more,AX-HDFCBK\n";
+        SmsRecordReader in = SmsRecordReader.csv(new StringReader(csv));
+        SmsRecord first = in.next();
+        assertEquals("hello", first.body);
+        assertEquals("JD-ICICIB", first.sender);
+        SmsRecord open = in.next();
+        assertEquals(3, open.line);
+        assertEquals("unterminated quoted field", open.error);
+        assertNull(in.next());
+
+        open = SmsRecordReader.csv(new StringReader("body\n\"")).next();
+        assertEquals("unterminated quoted field", open.error);
+        try {
+            SmsRecordReader.csv(new StringReader("\"body\n"));
+            fail();
+        } catch (IOException expected) {
+        }
+        first = SmsRecordReader.jsonl(new BufferedReader(new StringReader("\uFEFF{\"body\":\"hi\"}\n"))).next();
+        assertEquals("hi", first.body);
+    }
+
+    @Test
+    public void escapesOutputStrings() {
+        StringBuilder sb = new StringBuilder();
+        Json.appendString(sb, "a\"b\\c\nd\u0001 ₹");
+        assertEquals("\"a\\\"b\\\\c\\nd\\u0001\\u2028₹\"", sb.toString());
+        assertEquals("a\"b\\c\nd\u0001 ₹", Json.readObject("{\"k\":" + sb + "}").get("k"));
+    }
+
+    private static PrintStream quiet() {
+        return new PrintStream(new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,393 @@
+package com.example.paymenttracker;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of message records, read through a memory map.
+ *
+ * Layout:
+ * <pre>
+ *   header  "PTHLOG" 0 VERSION                       8 bytes
+ *   record  varint length, payload, CRC32 of payload  repeated
+ *   footer  magic, offsets of the newest records (up to INDEX_SIZE),
+ *           record count, CRC32, footer length, magic
+ * </pre>
+ * A payload is the record's numbers as varints (the amount zigzagged, as it
+ * may be -1) and its strings as varint byte length + 1 (0 for null) followed
+ * by UTF-8.
+ *
+ * An append writes the record over the old footer and a new footer after
+ * it. The footer is found from the last 8 bytes, so reading the newest N
+ * records touches only the footer and those records, never the rest of the
+ * file.
+ *
+ * If the file does not end in a valid footer, an append was cut short:
+ * open() walks the records from the start, keeps those whose CRC checks
+ * out and whose payload decodes to exactly its length, and drops the rest
+ * before writing a new footer. What is left of the old footer can follow
+ * the last record; its zero bytes would pass as an empty record (whose
+ * CRC is 0), so no record shorter than MIN_RECORD is accepted.
+ */
+public final class HistoryLog implements Closeable {
+
+    static final int INDEX_SIZE = 256;
+    static final int VERSION = 1;
+
+    private static final byte[] HEADER = {'P', 'T', 'H', 'L', 'O', 'G', 0, VERSION};
+    private static final int FOOTER_MAGIC = 0x50544958; // "PTIX"
+    // magic + count ... + record count + crc + length + magic
+    private static final int FOOTER_FIXED = 4 + 4 + 8 + 4 + 4 + 4;
+    private static final int MAX_RECORD = 1 << 20;
+    // The shortest payload: four one-byte varints and six null strings.
+    private static final int MIN_RECORD = 4 + 6;
+
+    private final FileChannel channel;
+    private final boolean sync;
+    // Offsets of the newest records, oldest first, as a ring.
+    private final long[] offsets = new long[INDEX_SIZE];
+    private int indexed;
+    private int ringStart;
+    private long recordCount;
+    private long dataEnd;
+    private long droppedBytes;
+    private ByteBuffer scratch = ByteBuffer.allocate(512);
+
+    private HistoryLog(FileChannel channel, boolean sync) {
+        this.channel = channel;
+        this.sync = sync;
+    }
+
+    /**
+     * Opens the log, creating it if needed. With sync, every append is forced
+     * to the storage device before it returns.
+     */
+    public static HistoryLog open(File file, boolean sync) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        HistoryLog log = new HistoryLog(channel, sync);
+        try {
+            log.load();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return log;
+    }
+
+    /**
+     * Writes a new log holding exactly these records, oldest first, and moves
+     * it over the file in one step. Any log open on the file must be reopened.
+     */
+    public static void rewrite(File file, List<HistoryRecord> oldestFirst) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        Files.deleteIfExists(tmp.toPath());
+        try (HistoryLog log = open(tmp, false)) {
+            for (HistoryRecord r : oldestFirst) log.appendUnsynced(r);
+            log.channel.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public synchronized void append(HistoryRecord record) throws IOException {
+        appendUnsynced(record);
+        if (sync) channel.force(false);
+    }
+
+    /** How many records the log holds. */
+    public synchronized long size() {
+        return recordCount;
+    }
+
+    /** Bytes of a cut-short append that open() dropped; 0 normally. */
+    public synchronized long droppedBytes() {
+        return droppedBytes;
+    }
+
+    /**
+     * The newest n records, newest first, decoded straight from a read-only
+     * map of the file. Beyond INDEX_SIZE records it has to walk the file.
+     */
+    public synchronized List<HistoryRecord> newest(int n) throws IOException {
+        List<HistoryRecord> out = new ArrayList<>(Math.min(n, indexed));
+        if (n <= 0 || dataEnd == HEADER.length) return out;
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, dataEnd);
+        if (n <= indexed) {
+            for (int i = 0; i < n; i++) {
+                int slot = (ringStart + indexed - 1 - i) % INDEX_SIZE;
+                out.add(decodeAt(map, offsets[slot]));
+            }
+            return out;
+        }
+        ArrayDeque<Long> last = new ArrayDeque<>(n);
+        long pos = HEADER.length;
+        while (pos < dataEnd) {
+            if (last.size() == n) last.removeFirst();
+            last.addLast(pos);
+            pos = nextRecord(map, pos);
+        }
+        while (!last.isEmpty()) out.add(decodeAt(map, last.removeLast()));
+        return out;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void appendUnsynced(HistoryRecord record) throws IOException {
+        ByteBuffer payload = encode(record);
+        int length = payload.remaining();
+        if (length > MAX_RECORD) throw new IOException("Record too large: " + length + " bytes");
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        ByteBuffer out = ByteBuffer.allocate(5 + length + 4);
+        putVarint(out, length);
+        out.put(payload);
+        out.putInt((int) crc.getValue());
+        out.flip();
+
+        long offset = dataEnd;
+        writeFully(out, offset);
+        dataEnd = offset + out.limit();
+        recordCount++;
+        index(offset);
+        writeFooter();
+    }
+
+    private void load() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            writeFully(ByteBuffer.wrap(HEADER), 0);
+            dataEnd = HEADER.length;
+            writeFooter();
+            return;
+        }
+        if (size < HEADER.length) throw new IOException("Not a history log");
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        byte[] header = new byte[HEADER.length];
+        map.get(header);
+        if (!Arrays.equals(header, HEADER)) throw new IOException("Not a history log, or a newer version");
+
+        if (!readFooter(map, size)) recover(map, size);
+    }
+
+    // True when the file ends in a whole, matching footer.
+    private boolean readFooter(ByteBuffer map, long size) {
+        if (size < HEADER.length + FOOTER_FIXED) return false;
+        int length = map.getInt((int) size - 8);
+        if (map.getInt((int) size - 4) != FOOTER_MAGIC || length < FOOTER_FIXED || length > size - HEADER.length) {
+            return false;
+        }
+        int start = (int) (size - length);
+        if (map.getInt(start) != FOOTER_MAGIC) return false;
+        int count = map.getInt(start + 4);
+        if (count < 0 || count > INDEX_SIZE || FOOTER_FIXED + count * 8 != length) return false;
+        CRC32 crc = new CRC32();
+        ByteBuffer covered = map.duplicate();
+        covered.position(start).limit(start + length - 12);
+        crc.update(covered);
+        if ((int) crc.getValue() != map.getInt(start + length - 12)) return false;
+
+        for (int i = 0; i < count; i++) offsets[i] = map.getLong(start + 8 + i * 8);
+        indexed = count;
+        ringStart = 0;
+        recordCount = map.getLong(start + 8 + count * 8);
+        dataEnd = start;
+        return true;
+    }
+
+    // Keeps every record up to the first one that is cut short or fails
+    // its CRC, then writes a fresh footer.
+    private void recover(ByteBuffer map, long size) throws IOException {
+        long pos = HEADER.length;
+        recordCount = 0;
+        indexed = 0;
+        ringStart = 0;
+        while (pos < size) {
+            long next = checkedNext(map, pos, size);
+            if (next < 0) break;
+            recordCount++;
+            index(pos);
+            pos = next;
+        }
+        droppedBytes = size - pos;
+        dataEnd = pos;
+        channel.truncate(pos);
+        writeFooter();
+        if (sync) channel.force(false);
+    }
+
+    // The offset after a valid record at pos, or -1.
+    private static long checkedNext(ByteBuffer map, long pos, long size) {
+        ByteBuffer b = map.duplicate();
+        b.position((int) pos);
+        long length = getVarint(b, size);
+        if (length < MIN_RECORD || length > MAX_RECORD || b.position() + length + 4 > size) return -1;
+        ByteBuffer payload = b.slice();
+        payload.limit((int) length);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != b.getInt(b.position() + (int) length)) return -1;
+        if (!wellFormed(payload)) return -1;
+        return b.position() + length + 4;
+    }
+
+    // True when the payload is four varints and six strings, ending exactly
+    // at its limit.
+    private static boolean wellFormed(ByteBuffer payload) {
+        for (int i = 0; i < 4; i++) {
+            if (getVarint(payload, payload.limit()) < 0) return false;
+        }
+        for (int i = 0; i < 6; i++) {
+            long length = getVarint(payload, payload.limit()) - 1;
+            if (length < -1 || length > payload.remaining()) return false;
+            if (length > 0) payload.position(payload.position() + (int) length);
+        }
+        return !payload.hasRemaining();
+    }
+
+    private static long nextRecord(ByteBuffer map, long pos) {
+        ByteBuffer b = map.duplicate();
+        b.position((int) pos);
+        long length = getVarint(b, b.limit());
+        return b.position() + length + 4;
+    }
+
+    private void index(long offset) {
+        if (indexed < INDEX_SIZE) {
+            offsets[(ringStart + indexed) % INDEX_SIZE] = offset;
+            indexed++;
+        } else {
+            offsets[ringStart] = offset;
+            ringStart = (ringStart + 1) % INDEX_SIZE;
+        }
+    }
+
+    private void writeFooter() throws IOException {
+        int length = FOOTER_FIXED + indexed * 8;
+        ByteBuffer footer = ByteBuffer.allocate(length);
+        footer.putInt(FOOTER_MAGIC);
+        footer.putInt(indexed);
+        for (int i = 0; i < indexed; i++) footer.putLong(offsets[(ringStart + i) % INDEX_SIZE]);
+        footer.putLong(recordCount);
+        CRC32 crc = new CRC32();
+        crc.update(footer.array(), 0, footer.position());
+        footer.putInt((int) crc.getValue());
+        footer.putInt(length);
+        footer.putInt(FOOTER_MAGIC);
+        footer.flip();
+        writeFully(footer, dataEnd);
+        if (channel.size() > dataEnd + length) channel.truncate(dataEnd + length);
+    }
+
+    private void writeFully(ByteBuffer b, long position) throws IOException {
+        while (b.hasRemaining()) position += channel.write(b, position);
+    }
+
+    // Encoding
+
+    private ByteBuffer encode(HistoryRecord r) {
+        scratch.clear();
+        putVarint(r.id);
+        putVarint(r.timestamp);
+        putVarint((r.amountPaise << 1) ^ (r.amountPaise >> 63));
+        putVarint(r.paidAtMillis);
+        putString(r.status);
+        putString(r.sender);
+        putString(r.body);
+        putString(r.upiRefId);
+        putString(r.senderVpa);
+        putString(r.bank);
+        scratch.flip();
+        return scratch;
+    }
+
+    private static HistoryRecord decodeAt(ByteBuffer map, long offset) {
+        ByteBuffer b = map.duplicate();
+        b.position((int) offset);
+        getVarint(b, b.limit());
+        long id = getVarint(b, b.limit());
+        long timestamp = getVarint(b, b.limit());
+        long zigzag = getVarint(b, b.limit());
+        long paidAt = getVarint(b, b.limit());
+        return new HistoryRecord.Builder()
+                .id(id)
+                .timestamp(timestamp)
+                .amountPaise((zigzag >>> 1) ^ -(zigzag & 1))
+                .paidAtMillis(paidAt)
+                .status(getString(b))
+                .sender(getString(b))
+                .body(getString(b))
+                .upiRefId(getString(b))
+                .senderVpa(getString(b))
+                .bank(getString(b))
+                .build();
+    }
+
+    private void putVarint(long v) {
+        ensure(10);
+        putVarint(scratch, v);
+    }
+
+    private void putString(String s) {
+        if (s == null) {
+            putVarint(0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        putVarint(bytes.length + 1L);
+        ensure(bytes.length);
+        scratch.put(bytes);
+    }
+
+    private void ensure(int more) {
+        if (scratch.remaining() >= more) return;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + more));
+        scratch.flip();
+        bigger.put(scratch);
+        scratch = bigger;
+    }
+
+    private static void putVarint(ByteBuffer b, long v) {
+        while ((v & ~0x7FL) != 0) {
+            b.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    // -1 when the varint runs past limit or is longer than 10 bytes.
+    private static long getVarint(ByteBuffer b, long limit) {
+        long v = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            if (b.position() >= limit) return -1;
+            byte x = b.get();
+            v |= (long) (x & 0x7F) << shift;
+            if (x >= 0) return v;
+        }
+        return -1;
+    }
+
+    private static String getString(ByteBuffer b) {
+        int length = (int) getVarint(b, b.limit()) - 1;
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        b.get(bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
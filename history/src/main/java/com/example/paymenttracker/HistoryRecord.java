@@ -0,0 +1,98 @@
+package com.example.paymenttracker;
+
+// One message as HistoryLog stores it. Plain strings and numbers, so the log
+// needs nothing from Android; the app maps it to and from Message.
+public final class HistoryRecord {
+    // Row id in the app's database.
+    public final long id;
+    public final long timestamp;
+    public final String sender;
+    public final String body;
+    public final String status;
+    // Whole paise, or -1 when the message carries no amount.
+    public final long amountPaise;
+    public final String upiRefId;
+    public final String senderVpa;
+    public final String bank;
+    public final long paidAtMillis;
+
+    private HistoryRecord(Builder b) {
+        this.id = b.id;
+        this.timestamp = b.timestamp;
+        this.sender = b.sender;
+        this.body = b.body;
+        this.status = b.status;
+        this.amountPaise = b.amountPaise;
+        this.upiRefId = b.upiRefId;
+        this.senderVpa = b.senderVpa;
+        this.bank = b.bank;
+        this.paidAtMillis = b.paidAtMillis;
+    }
+
+    public static class Builder {
+        long id;
+        long timestamp;
+        String sender;
+        String body;
+        String status;
+        long amountPaise = -1L;
+        String upiRefId;
+        String senderVpa;
+        String bank;
+        long paidAtMillis;
+
+        public Builder id(long id) {
+            this.id = id;
+            return this;
+        }
+
+        public Builder timestamp(long timestamp) {
+            this.timestamp = timestamp;
+            return this;
+        }
+
+        public Builder sender(String sender) {
+            this.sender = sender;
+            return this;
+        }
+
+        public Builder body(String body) {
+            this.body = body;
+            return this;
+        }
+
+        public Builder status(String status) {
+            this.status = status;
+            return this;
+        }
+
+        public Builder amountPaise(long amountPaise) {
+            this.amountPaise = amountPaise;
+            return this;
+        }
+
+        public Builder upiRefId(String upiRefId) {
+            this.upiRefId = upiRefId;
+            return this;
+        }
+
+        public Builder senderVpa(String senderVpa) {
+            this.senderVpa = senderVpa;
+            return this;
+        }
+
+        public Builder bank(String bank) {
+            this.bank = bank;
+            return this;
+        }
+
+        public Builder paidAtMillis(long paidAtMillis) {
+            this.paidAtMillis = paidAtMillis;
+            return this;
+        }
+
+        public HistoryRecord build() {
+            return new HistoryRecord(this);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.paymenttracker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HistoryLogTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static HistoryRecord record(long id) {
+        return new HistoryRecord.Builder()
+                .id(id)
+                .timestamp(1760257980000L + id)
+                .sender("VM-HDFCBK")
+                .body("Rs." + id + " credited to a/c XX1234 by ravi@okaxis. UPI Ref 5123" + id + " ₹")
+                .status("SUBMITTED")
+                .amountPaise(id % 3 == 0 ? -1L : id * 100)
+                .upiRefId(id % 2 == 0 ? null : "5123" + id)
+                .senderVpa("ravi@okaxis")
+                .paidAtMillis(id)
+                .build();
+    }
+
+    @Test
+    public void readsNewestFirstAfterReopening() throws Exception {
+        File file = tmp.newFile("history.log");
+        try (HistoryLog log = HistoryLog.open(file, true)) {
+            for (long id = 1; id <= 5; id++) log.append(record(id));
+        }
+        try (HistoryLog log = HistoryLog.open(file, false)) {
+            assertEquals(5, log.size());
+            List<HistoryRecord> newest = log.newest(3);
+            assertEquals(3, newest.size());
+            assertEquals(5, newest.get(0).id);
+            assertEquals(3, newest.get(2).id);
+            HistoryRecord r = newest.get(0);
+            assertEquals("VM-HDFCBK", r.sender);
+            assertEquals(record(5).body, r.body);
+            assertEquals(500, r.amountPaise);
+            assertEquals("51235", r.upiRefId);
+            assertNull(r.bank);
+            assertEquals(-1L, newest.get(2).amountPaise);
+            assertNull(newest.get(1).upiRefId);
+            assertEquals(5, log.newest(50).size());
+        }
+    }
+
+    @Test
+    public void dropsAnAppendThatWasCutShort() throws Exception {
+        File file = tmp.newFile("history.log");
+        long thirdEnd;
+        try (HistoryLog log = HistoryLog.open(file, false)) {
+            for (long id = 1; id <= 3; id++) log.append(record(id));
+            // The file is now three records and a footer indexing them.
+            thirdEnd = file.length() - (28 + 3 * 8);
+            log.append(record(4));
+        }
+        // Keep only the start of the fourth record, as a crash mid-append would.
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(thirdEnd + 20);
+        }
+        try (HistoryLog log = HistoryLog.open(file, false)) {
+            assertTrue(log.droppedBytes() > 0);
+            assertEquals(3, log.size());
+            assertEquals(3, log.newest(1).get(0).id);
+            log.append(record(9));
+            assertEquals(9, log.newest(1).get(0).id);
+        }
+        try (HistoryLog log = HistoryLog.open(file, false)) {
+            assertEquals(0, log.droppedBytes());
+            assertEquals(4, log.size());
+        }
+    }
+
+    @Test
+    public void ignoresTheOldFooterLeftBehindAnAppend() throws Exception {
+        File file = tmp.newFile("history.log");
+        int footer = 28 + HistoryLog.INDEX_SIZE * 8;
+        try (HistoryLog log = HistoryLog.open(file, false)) {
+            for (long id = 1; id <= 300; id++) log.append(record(id));
+        }
+        byte[] before = Files.readAllBytes(file.toPath());
+        try (HistoryLog log = HistoryLog.open(file, false)) {
+            // Short enough that the old footer's zero bytes line up as an
+            // empty record with a matching CRC.
+            log.append(new HistoryRecord.Builder().id(301).build());
+        }
+        byte[] after = Files.readAllBytes(file.toPath());
+        // The new record went over the start of the old footer, and the new
+        // footer never made it: the rest of the old one follows the record.
+        int recordStart = before.length - footer;
+        int recordEnd = after.length - footer;
+        System.arraycopy(after, recordStart, before, recordStart, recordEnd - recordStart);
+        Files.write(file.toPath(), before);
+        try (HistoryLog log = HistoryLog.open(file, false)) {
+            assertEquals(301, log.size());
+            assertEquals(301, log.newest(1).get(0).id);
+            assertEquals(before.length - recordEnd, log.droppedBytes());
+        }
+    }
+
+    @Test
+    public void reachesPastTheIndexByWalkingTheFile() throws Exception {
+        File file = tmp.newFile("history.log");
+        int total = HistoryLog.INDEX_SIZE + 44;
+        try (HistoryLog log = HistoryLog.open(file, false)) {
+            for (long id = 1; id <= total; id++) log.append(record(id));
+        }
+        try (HistoryLog log = HistoryLog.open(file, false)) {
+            assertEquals(total, log.size());
+            assertEquals(total, log.newest(HistoryLog.INDEX_SIZE).get(0).id);
+            List<HistoryRecord> all = log.newest(total + 10);
+            assertEquals(total, all.size());
+            assertEquals(1, all.get(total - 1).id);
+        }
+    }
+
+    @Test
+    public void rewriteKeepsOnlyTheGivenRecords() throws Exception {
+        File file = tmp.newFile("history.log");
+        try (HistoryLog log = HistoryLog.open(file, false)) {
+            for (long id = 1; id <= 10; id++) log.append(record(id));
+        }
+        List<HistoryRecord> keep = new ArrayList<>();
+        for (long id = 7; id <= 10; id++) keep.add(record(id));
+        HistoryLog.rewrite(file, keep);
+        try (HistoryLog log = HistoryLog.open(file, false)) {
+            assertEquals(4, log.size());
+            assertEquals(10, log.newest(1).get(0).id);
+            assertEquals(7, log.newest(4).get(3).id);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.paymenttracker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Case-insensitive Aho-Corasick automaton over bank names and aliases.
+ *
+ * Built once from a keyword -> bank map; matching is one table lookup per
+ * character no matter how many keywords there are. The automaton is
+ * immutable, so a rebuilt one can be swapped in while other threads match.
+ */
+final class BankMatcher {
+
+    static final int ROOT = 0;
+
+    private final int[] charClass = new int[128];     // ASCII char -> alphabet index, 0 = not in any keyword
+    private final Map<Character, Integer> otherClasses = new HashMap<>();
+    private int alphabet = 1;
+    private final int[][] next;                       // [state][alphabet index] -> state
+    private final int[] matchLength;                  // longest keyword ending in each state, 0 if none
+    private final String[] matchValue;
+
+    BankMatcher(Map<String, String> keywords) {
+        // alphabet and trie
+        List<int[]> gotoTable = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (Map.Entry<String, String> e : keywords.entrySet()) {
+            String key = e.getKey() == null ? "" : e.getKey().trim().toLowerCase(Locale.ROOT);
+            if (key.isEmpty() || e.getValue() == null) continue;
+            keys.add(key);
+            values.add(e.getValue());
+            for (int i = 0; i < key.length(); i++) classOf(key.charAt(i), true);
+        }
+
+        gotoTable.add(newRow(alphabet));
+        List<Integer> terminalLength = new ArrayList<>();
+        List<String> terminalValue = new ArrayList<>();
+        terminalLength.add(0);
+        terminalValue.add(null);
+        for (int k = 0; k < keys.size(); k++) {
+            String key = keys.get(k);
+            int state = ROOT;
+            for (int i = 0; i < key.length(); i++) {
+                int c = classOf(key.charAt(i), false);
+                int to = gotoTable.get(state)[c];
+                if (to < 0) {
+                    to = gotoTable.size();
+                    gotoTable.add(newRow(alphabet));
+                    terminalLength.add(0);
+                    terminalValue.add(null);
+                    gotoTable.get(state)[c] = to;
+                }
+                state = to;
+            }
+            // later entries win on duplicate keys, like Map.put
+            terminalLength.set(state, key.length());
+            terminalValue.set(state, values.get(k));
+        }
+
+        // failure links, breadth first, folded into a complete transition table
+        int states = gotoTable.size();
+        next = new int[states][];
+        matchLength = new int[states];
+        matchValue = new String[states];
+        int[] fail = new int[states];
+        for (int s = 0; s < states; s++) {
+            next[s] = gotoTable.get(s);
+            matchLength[s] = terminalLength.get(s);
+            matchValue[s] = terminalValue.get(s);
+        }
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < alphabet; c++) {
+            if (next[ROOT][c] < 0) {
+                next[ROOT][c] = ROOT;
+            } else {
+                fail[next[ROOT][c]] = ROOT;
+                queue.add(next[ROOT][c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            // a state's own keyword is the longest one ending there; otherwise inherit
+            if (matchLength[s] == 0) {
+                matchLength[s] = matchLength[fail[s]];
+                matchValue[s] = matchValue[fail[s]];
+            }
+            for (int c = 0; c < alphabet; c++) {
+                int to = next[s][c];
+                if (to < 0) {
+                    next[s][c] = next[fail[s]][c];
+                } else {
+                    fail[to] = next[fail[s]][c];
+                    queue.add(to);
+                }
+            }
+        }
+    }
+
+    /** Advances the automaton by one character of the text being scanned. */
+    int step(int state, char c) {
+        return next[state][classOf(c, false)];
+    }
+
+    /** Length of the longest keyword ending at this state, or 0. */
+    int matchLength(int state) {
+        return matchLength[state];
+    }
+
+    /** Normalised bank name for {@link #matchLength(int)}, or null. */
+    String matchValue(int state) {
+        return matchValue[state];
+    }
+
+    /** Longest keyword found anywhere in {@code text}; the leftmost wins a tie. */
+    String find(CharSequence text) {
+        if (text == null) return null;
+        int state = ROOT;
+        int best = 0;
+        String bank = null;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            if (matchLength[state] > best) {
+                best = matchLength[state];
+                bank = matchValue[state];
+            }
+        }
+        return bank;
+    }
+
+    private int classOf(char c, boolean add) {
+        char lc = c < 128 ? SmsTokenizer.lowerAscii(c) : Character.toLowerCase(c);
+        if (lc < 128) {
+            if (charClass[lc] == 0 && add) charClass[lc] = alphabet++;
+            return charClass[lc];
+        }
+        if (!add && otherClasses.isEmpty()) return 0;
+        Integer cls = otherClasses.get(lc);
+        if (cls == null && add) {
+            cls = alphabet++;
+            otherClasses.put(lc, cls);
+        }
+        return cls == null ? 0 : cls;
+    }
+
+    private static int[] newRow(int alphabet) {
+        int[] row = new int[alphabet];
+        Arrays.fill(row, -1);
+        return row;
+    }
+}
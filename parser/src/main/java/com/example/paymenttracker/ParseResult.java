@@ -0,0 +1,47 @@
+package com.example.paymenttracker;
+
+/**
+ * What {@link SmsParser#parseResult} made of one SMS: a payment, not a
+ * payment, or not parsed at all because the body was longer than
+ * {@link SmsParser#MAX_BODY_LENGTH} or ran out of its parsing budget. An
+ * over-budget message is neither a payment nor known not to be one, so
+ * callers that care can keep it for a closer look.
+ */
+public final class ParseResult {
+
+    public enum Status { PAYMENT, NOT_A_PAYMENT, OVER_BUDGET }
+
+    static final ParseResult NOT_A_PAYMENT = new ParseResult(Status.NOT_A_PAYMENT, null, null);
+
+    private final Status status;
+    private final PaymentDetails details;
+    private final String reason;
+
+    private ParseResult(Status status, PaymentDetails details, String reason) {
+        this.status = status;
+        this.details = details;
+        this.reason = reason;
+    }
+
+    static ParseResult payment(PaymentDetails details) {
+        return new ParseResult(Status.PAYMENT, details, null);
+    }
+
+    static ParseResult overBudget(String reason) {
+        return new ParseResult(Status.OVER_BUDGET, null, reason);
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    /** The payment; null unless the status is PAYMENT. */
+    public PaymentDetails details() {
+        return details;
+    }
+
+    /** Why the body was not parsed; null unless the status is OVER_BUDGET. */
+    public String reason() {
+        return reason;
+    }
+}
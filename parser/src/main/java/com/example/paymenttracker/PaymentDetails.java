@@ -0,0 +1,111 @@
+package com.example.paymenttracker;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// This is a simple immutable value object.
+// Its only job is to hold the data we parse from the SMS; SmsParser fills it
+// through the Builder, so nothing depends on member names surviving R8.
+public class PaymentDetails implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // amountPaise when the amount could not be read as a number.
+    public static final long NO_AMOUNT = -1L;
+
+    public final String amount;
+    // The amount as a whole number of paise (1499.00 -> 149900), or NO_AMOUNT.
+    public final long amountPaise;
+    public final String upiRefId;
+    public final String senderVpa;
+    public final String fullSmsBody;
+    public final String bank;
+    public final String dateTime;
+    // Epoch millis of dateTime read as IST; 0 when the SMS carries no date.
+    public final long dateTimeMillis;
+    // SMS originating address and arrival time, when the caller knew them.
+    public final String sender;
+    public final long receivedAtMillis;
+
+    private PaymentDetails(Builder b) {
+        this.amount = b.amountNumber != null ? b.amountNumber.toString() : null;
+        this.amountPaise = toPaise(b.amountNumber);
+        this.upiRefId = b.upiRefId;
+        this.senderVpa = b.senderVpa;
+        this.fullSmsBody = b.fullSmsBody;
+        this.bank = b.bank;
+        this.dateTime = b.dateTime;
+        this.dateTimeMillis = b.dateTimeMillis;
+        this.sender = b.sender;
+        this.receivedAtMillis = b.receivedAtMillis;
+    }
+
+    // Rupees to paise, rounding half up past the second decimal.
+    static long toPaise(BigDecimal rupees) {
+        if (rupees == null || rupees.signum() < 0) return NO_AMOUNT;
+        try {
+            return rupees.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            return NO_AMOUNT;
+        }
+    }
+
+    public static class Builder {
+        BigDecimal amountNumber;
+        String amountRaw;
+        String upiRefId;
+        String senderVpa;
+        String fullSmsBody;
+        String bank;
+        String dateTime;
+        long dateTimeMillis;
+        String sender;
+        long receivedAtMillis;
+
+        public Builder amount(BigDecimal amountNumber, String amountRaw) {
+            this.amountNumber = amountNumber;
+            this.amountRaw = amountRaw;
+            return this;
+        }
+
+        public Builder upiRefId(String upiRefId) {
+            this.upiRefId = upiRefId;
+            return this;
+        }
+
+        public Builder senderVpa(String senderVpa) {
+            this.senderVpa = senderVpa;
+            return this;
+        }
+
+        public Builder fullSmsBody(String fullSmsBody) {
+            this.fullSmsBody = fullSmsBody;
+            return this;
+        }
+
+        public Builder bank(String bank) {
+            this.bank = bank;
+            return this;
+        }
+
+        public Builder dateTime(String dateTime, long dateTimeMillis) {
+            this.dateTime = dateTime;
+            this.dateTimeMillis = dateTimeMillis;
+            return this;
+        }
+
+        public Builder sender(String sender) {
+            this.sender = sender;
+            return this;
+        }
+
+        public Builder receivedAtMillis(long receivedAtMillis) {
+            this.receivedAtMillis = receivedAtMillis;
+            return this;
+        }
+
+        public PaymentDetails build() {
+            return new PaymentDetails(this);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.paymenttracker;
+
+/**
+ * Hand-written date/time reader used by {@link SmsTokenizer}.
+ *
+ * Recognises dd-MMM-yyyy, dd-MMM-yy, dd-mm-yy[yy] and yyyy-mm-dd ('-' or '/'
+ * separated), optionally followed by a time: "12-Oct-25 14:03",
+ * "2025-10-12T14:03:11", "12/10/25 02:03 PM". Dates are day-first, as Indian
+ * banks send them. No regex, map or formatter is touched; the parsed fields
+ * stay in this object until {@link #iso()} or {@link #epochMillis()} is asked for.
+ */
+final class SmsDateScanner {
+
+    // Bank SMS timestamps are Indian Standard Time, which has no DST.
+    static final int ZONE_OFFSET_MINUTES = 5 * 60 + 30;
+
+    private static final String MONTHS = "janfebmaraprmayjunjulaugsepoctnovdec";
+
+    int year;
+    int month;
+    int day;
+    int hour;
+    int minute;
+    int second;
+    boolean hasTime;
+    int end;
+
+    /** Reads a date (and time) starting at {@code i}, which must be a word boundary. */
+    boolean scan(SmsTokenizer t, int i) {
+        hasTime = false;
+        hour = minute = second = 0;
+        int dateEnd = scanDate(t, i);
+        if (dateEnd < 0 || !isValidDate()) return false;
+
+        int timeEnd = scanTime(t, dateEnd);
+        if (timeEnd >= 0) {
+            hasTime = true;
+            end = timeEnd;
+            return true;
+        }
+        if (!t.isBoundary(dateEnd)) return false;
+        end = dateEnd;
+        return true;
+    }
+
+    /** yyyy-MM-dd, or yyyy-MM-ddTHH:mm:ss when the SMS carries a time. */
+    String iso() {
+        char[] c = new char[hasTime ? 19 : 10];
+        put(c, 0, year, 4);
+        c[4] = '-';
+        put(c, 5, month, 2);
+        c[7] = '-';
+        put(c, 8, day, 2);
+        if (hasTime) {
+            c[10] = 'T';
+            put(c, 11, hour, 2);
+            c[13] = ':';
+            put(c, 14, minute, 2);
+            c[16] = ':';
+            put(c, 17, second, 2);
+        }
+        return new String(c);
+    }
+
+    /** The date/time in IST as epoch milliseconds; midnight when there is no time. */
+    long epochMillis() {
+        long days = daysFromCivil(year, month, day);
+        long seconds = days * 86400L + hour * 3600L + minute * 60L + second - ZONE_OFFSET_MINUTES * 60L;
+        return seconds * 1000L;
+    }
+
+    private int scanDate(SmsTokenizer t, int i) {
+        int r1 = digitRun(t, i);
+        if (r1 == 1 || r1 == 2) {
+            day = number(t, i, r1);
+            int q = i + r1;
+            if (!isDateSep(t, q)) return -1;
+            q++;
+            int mon = monthAt(t, q);
+            int y;
+            if (mon > 0) {
+                month = mon;
+                y = q + 3;
+            } else {
+                int r2 = digitRun(t, q);
+                if (r2 < 1 || r2 > 2) return -1;
+                month = number(t, q, r2);
+                y = q + r2;
+            }
+            if (!isDateSep(t, y)) return -1;
+            y++;
+            int r3 = digitRun(t, y);
+            if (r3 == 2) {
+                year = 2000 + number(t, y, 2);
+            } else if (r3 == 4) {
+                year = number(t, y, 4);
+            } else {
+                return -1;
+            }
+            return y + r3;
+        }
+        if (r1 == 4 && isDateSep(t, i + 4)) {
+            year = number(t, i, 4);
+            int q = i + 5;
+            int r2 = digitRun(t, q);
+            if (r2 < 1 || r2 > 2 || !isDateSep(t, q + r2)) return -1;
+            month = number(t, q, r2);
+            int d = q + r2 + 1;
+            int r3 = digitRun(t, d);
+            if (r3 < 1 || r3 > 2) return -1;
+            day = number(t, d, r3);
+            return d + r3;
+        }
+        return -1;
+    }
+
+    // "T14:03", " 14:03", ", 14:03" or " at 14:03", then optional ":ss" and AM/PM.
+    private int scanTime(SmsTokenizer t, int p) {
+        int h;
+        if (p < t.length() && t.charAt(p) == 'T') h = p + 1;
+        else if (t.matchesAt(p, " at ")) h = p + 4;
+        else if (t.matchesAt(p, ", ")) h = p + 2;
+        else if (t.matchesAt(p, " ")) h = p + 1;
+        else return -1;
+
+        int rh = digitRun(t, h);
+        if (rh < 1 || rh > 2 || !t.matchesAt(h + rh, ":")) return -1;
+        int m = h + rh + 1;
+        if (digitRun(t, m) != 2) return -1;
+        int hh = number(t, h, rh);
+        int mm = number(t, m, 2);
+        int ss = 0;
+        int e = m + 2;
+        if (t.matchesAt(e, ":") && digitRun(t, e + 1) == 2) {
+            ss = number(t, e + 1, 2);
+            e += 3;
+        }
+
+        int ap = t.matchesAt(e, " ") ? e + 1 : e;
+        boolean am = t.matchesAt(ap, "am");
+        boolean pm = t.matchesAt(ap, "pm");
+        if ((am || pm) && t.isBoundary(ap + 2)) {
+            if (hh < 1 || hh > 12) return -1;
+            hh = hh % 12 + (pm ? 12 : 0);
+            e = ap + 2;
+        } else if (hh > 23) {
+            return -1;
+        }
+        if (mm > 59 || ss > 59 || !t.isBoundary(e)) return -1;
+
+        hour = hh;
+        minute = mm;
+        second = ss;
+        return e;
+    }
+
+    private boolean isValidDate() {
+        if (month < 1 || month > 12 || day < 1) return false;
+        return day <= daysInMonth(year, month);
+    }
+
+    private static int monthAt(SmsTokenizer t, int q) {
+        if (q + 3 > t.length()) return 0;
+        for (int k = 0; k < 3; k++) {
+            if (!SmsTokenizer.isAsciiLetter(t.charAt(q + k))) return 0;
+        }
+        char a = SmsTokenizer.lowerAscii(t.charAt(q));
+        char b = SmsTokenizer.lowerAscii(t.charAt(q + 1));
+        char c = SmsTokenizer.lowerAscii(t.charAt(q + 2));
+        for (int m = 0; m < 12; m++) {
+            int k = m * 3;
+            if (MONTHS.charAt(k) == a && MONTHS.charAt(k + 1) == b && MONTHS.charAt(k + 2) == c) return m + 1;
+        }
+        return 0;
+    }
+
+    private static int daysInMonth(int y, int m) {
+        switch (m) {
+            case 2:
+                return (y % 4 == 0 && (y % 100 != 0 || y % 400 == 0)) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // Days since 1970-01-01 in the proleptic Gregorian calendar.
+    private static long daysFromCivil(int y, int m, int d) {
+        y -= m <= 2 ? 1 : 0;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yoe = y - era * 400;
+        long doy = (153L * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static boolean isDateSep(SmsTokenizer t, int i) {
+        return i < t.length() && (t.charAt(i) == '-' || t.charAt(i) == '/');
+    }
+
+    private static int digitRun(SmsTokenizer t, int i) {
+        int j = i;
+        while (j < t.length() && SmsTokenizer.isDigit(t.charAt(j))) j++;
+        return j - i;
+    }
+
+    private static int number(SmsTokenizer t, int i, int n) {
+        int v = 0;
+        for (int k = 0; k < n; k++) v = v * 10 + (t.charAt(i + k) - '0');
+        return v;
+    }
+
+    private static void put(char[] c, int at, int v, int width) {
+        for (int k = width - 1; k >= 0; k--) {
+            c[at + k] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+    }
+}
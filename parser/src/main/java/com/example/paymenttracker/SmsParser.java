@@ -0,0 +1,384 @@
+package com.example.paymenttracker;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Entry point of the parser library: SMS text (plus optional sender and
+ * arrival time) in, {@link PaymentDetails} out. Plain Java, so the app and
+ * server-side tools run exactly the same logic.
+ */
+public class SmsParser {
+    private static final Set<String> WORD_BLACKLIST = new HashSet<>(Arrays.asList(
+            "received", "credited", "credit", "payment", "amount", "ref", "transaction", "customer", "upi", "avl", "avl bal", "account", "in", "your", "to", "from", "via", "on"
+    ));
+
+    private static final Map<String, String> BANK_NORMALIZATION;
+    static {
+        Map<String, String> m = new HashMap<>();
+        m.put("kotak", "Kotak Mahindra Bank");
+        m.put("kotak mahindra", "Kotak Mahindra Bank");
+        m.put("hdfc", "HDFC Bank");
+        m.put("hdfc bank", "HDFC Bank");
+        m.put("icici", "ICICI Bank");
+        m.put("icici bank", "ICICI Bank");
+        m.put("axis", "Axis Bank");
+        m.put("axis bank", "Axis Bank");
+        m.put("sbi", "State Bank of India");
+        m.put("state bank", "State Bank of India");
+        m.put("state bank of india", "State Bank of India");
+        m.put("pnb", "Punjab National Bank");
+        m.put("punjab national", "Punjab National Bank");
+        m.put("punjab national bank", "Punjab National Bank");
+        m.put("bank of baroda", "Bank of Baroda");
+        m.put("bob", "Bank of Baroda");
+        m.put("canara", "Canara Bank");
+        m.put("canara bank", "Canara Bank");
+        m.put("yes bank", "Yes Bank");
+        m.put("indusind", "IndusInd Bank");
+        m.put("indusind bank", "IndusInd Bank");
+        m.put("idbi", "IDBI Bank");
+        m.put("idbi bank", "IDBI Bank");
+        m.put("rbl", "RBL Bank");
+        m.put("rbl bank", "RBL Bank");
+        m.put("federal", "Federal Bank");
+        m.put("federal bank", "Federal Bank");
+        m.put("union bank", "Union Bank of India");
+        m.put("union bank of india", "Union Bank of India");
+        m.put("bank of india", "Bank of India");
+        m.put("bank of maharashtra", "Bank of Maharashtra");
+        m.put("indian bank", "Indian Bank");
+        m.put("indian overseas bank", "Indian Overseas Bank");
+        m.put("idfc", "IDFC FIRST Bank");
+        m.put("idfc first", "IDFC FIRST Bank");
+        m.put("au", "AU Small Finance Bank");
+        m.put("au small", "AU Small Finance Bank");
+        m.put("au small finance", "AU Small Finance Bank");
+        m.put("south indian", "South Indian Bank");
+        m.put("south indian bank", "South Indian Bank");
+        m.put("bandhan", "Bandhan Bank");
+        m.put("bandhan bank", "Bandhan Bank");
+        m.put("csb", "CSB Bank");
+        m.put("csb bank", "CSB Bank");
+        m.put("airtel payments", "Airtel Payments Bank");
+        m.put("airtel payments bank", "Airtel Payments Bank");
+        m.put("paytm", "Paytm Payments Bank");
+        m.put("paytm payments", "Paytm Payments Bank");
+        m.put("paytm payments bank", "Paytm Payments Bank");
+        m.put("india post", "India Post Payments Bank");
+        m.put("india post payments", "India Post Payments Bank");
+        m.put("karnataka", "Karnataka Bank");
+        m.put("karnataka bank", "Karnataka Bank");
+        BANK_NORMALIZATION = Collections.unmodifiableMap(m);
+    }
+
+    /**
+     * Longest body the parser reads. A ten-part concatenated SMS is 1530
+     * chars; anything longer is not a bank notification.
+     */
+    public static final int MAX_BODY_LENGTH = 2048;
+
+    private static volatile BankMatcher bankMatcher = new BankMatcher(BANK_NORMALIZATION);
+
+    private static final SmsTemplateCache TEMPLATES = new SmsTemplateCache(64);
+
+    /**
+     * Adds user-supplied bank aliases (keyword -> bank name, matched
+     * case-insensitively) on top of the built-in table. An alias replaces a
+     * built-in keyword with the same text. Pass null or an empty map to go
+     * back to the built-in table.
+     */
+    public static void setBankAliases(Map<String, String> aliases) {
+        Map<String, String> all = new HashMap<>(BANK_NORMALIZATION);
+        if (aliases != null) all.putAll(aliases);
+        bankMatcher = new BankMatcher(all);
+    }
+
+    static BankMatcher bankMatcher() {
+        return bankMatcher;
+    }
+
+    public static PaymentDetails parse(String smsBody) {
+        return parse(smsBody, null, 0L);
+    }
+
+    public static PaymentDetails parse(String smsBody, String sender) {
+        return parse(smsBody, sender, 0L);
+    }
+
+    /**
+     * Parses one SMS body into the details of a received payment, or returns
+     * null when it is not one. A body that was not parsed because it is over
+     * budget also gives null; {@link #parseResult} tells the two apart.
+     *
+     * The sender (the SMS originating address) is optional. When it is given,
+     * the templates learned from earlier messages of the same sender are tried
+     * first; when none of them fits, the generic parser runs and a successful
+     * result teaches the cache this message's template. receivedAtMillis is
+     * the time the SMS arrived (0 when unknown) and is only carried into the
+     * result, next to the date the bank wrote in the text.
+     *
+     * Parsing time is linear in the body length and bounded by
+     * MAX_BODY_LENGTH: longer bodies, and any body that runs out of its work
+     * budget, are not parsed.
+     */
+    public static PaymentDetails parse(String smsBody, String sender, long receivedAtMillis) {
+        return parseResult(smsBody, sender, receivedAtMillis).details();
+    }
+
+    /**
+     * As {@link #parse(String, String, long)}, but says whether a message
+     * that gave no payment was read and found not to be one, or was over
+     * budget and not read at all. Never throws for any input.
+     */
+    public static ParseResult parseResult(String smsBody, String sender, long receivedAtMillis) {
+        if (smsBody == null || smsBody.trim().isEmpty()) {
+            return ParseResult.NOT_A_PAYMENT;
+        }
+        if (smsBody.length() > MAX_BODY_LENGTH) {
+            return ParseResult.overBudget("SMS body of " + smsBody.length()
+                    + " chars is longer than " + MAX_BODY_LENGTH);
+        }
+
+        PaymentDetails.Builder b;
+        SmsTokenizer tokens = SmsTokenizer.prepare(smsBody);
+        if (sender == null || sender.isEmpty()) {
+            if (!scan(tokens)) return ranOutOfBudget(tokens);
+            b = extract(tokens, smsBody, null);
+        } else {
+            b = TEMPLATES.match(sender, tokens, smsBody, bankMatcher);
+            if (b == null) {
+                if (!scan(tokens)) return ranOutOfBudget(tokens);
+                int[] spans = SmsTemplate.newSpans();
+                b = extract(tokens, smsBody, spans);
+                if (isPayment(b)) {
+                    TEMPLATES.learn(sender, tokens, b, spans, bankMatcher);
+                }
+            }
+        }
+
+        if (!isPayment(b)) {
+            return ParseResult.NOT_A_PAYMENT;
+        }
+        return ParseResult.payment(b.sender(sender).receivedAtMillis(receivedAtMillis).build());
+    }
+
+    /** Per-sender template cache used by {@link #parse(String, String, long)}. */
+    public static SmsTemplateCache templateCache() {
+        return TEMPLATES;
+    }
+
+    /** The raw fields read from a body; null for a null or over-budget body. */
+    public static Map<String, Object> parseToMap(String smsBody) {
+        if (smsBody == null || smsBody.length() > MAX_BODY_LENGTH) return null;
+        SmsTokenizer tokens = SmsTokenizer.prepare(smsBody);
+        if (!scan(tokens)) return null;
+        PaymentDetails.Builder b = extract(tokens, smsBody, null);
+        if (b == null) return null;
+
+        Map<String, Object> out = new HashMap<>();
+        out.put("fullSmsBody", smsBody);
+        out.put("isReceived", true);
+        out.put("amountRaw", b.amountRaw);
+        out.put("amountNumber", b.amountNumber);
+        out.put("upiRef", b.upiRefId);
+        out.put("vpa", b.senderVpa);
+        out.put("bank", b.bank);
+        out.put("dateCandidate", b.dateTime);
+        out.put("dateTimeMillis", b.dateTimeMillis);
+        return out;
+    }
+
+    // False when the scan ran out of its work budget.
+    private static boolean scan(SmsTokenizer tokens) {
+        return !tokens.scan(bankMatcher).overBudget();
+    }
+
+    private static ParseResult ranOutOfBudget(SmsTokenizer tokens) {
+        return ParseResult.overBudget("SMS body of " + tokens.length() + " chars ran out of parsing budget");
+    }
+
+    // A received payment needs an amount and something to trace it by.
+    private static boolean isPayment(PaymentDetails.Builder b) {
+        if (b == null) {
+            return false;
+        }
+
+        boolean hasAmount = b.amountNumber != null || (b.amountRaw != null && !b.amountRaw.isEmpty());
+        boolean hasRefOrVpaOrBank = (b.upiRefId != null && !b.upiRefId.isEmpty()) || (b.senderVpa != null && !b.senderVpa.isEmpty()) || (b.bank != null && !b.bank.isEmpty());
+
+        return hasAmount && hasRefOrVpaOrBank;
+    }
+
+    // Fills a builder straight from the token stream; null when the SMS is not a received payment.
+    // When spans is given, the buffer ranges the fields were read from are recorded in it.
+    private static PaymentDetails.Builder extract(SmsTokenizer tokens, String smsBody, int[] spans) {
+        if (!tokens.hasPaymentKeyword()) {
+            return null;
+        }
+
+        if (!tokens.isReceived()) {
+            return null;
+        }
+
+        String amountRaw = null;
+        BigDecimal amountNumber = null;
+
+        // amounts: currency marker first, then a payment keyword, then any plausible number
+        SmsToken amount = tokens.first(SmsToken.Type.CURRENCY);
+        if (amount == null) {
+            for (SmsToken t : tokens.tokens()) {
+                if (t.type == SmsToken.Type.KEYWORD && t.is(SmsToken.AMOUNT_CONTEXT) && t.hasValue()) {
+                    amount = t;
+                    break;
+                }
+            }
+        }
+        if (amount != null) {
+            amountRaw = cleanAmountGroup(tokens.value(amount));
+            amountNumber = parseAmountToBigDecimal(amountRaw);
+        }
+
+        if (amountNumber == null) {
+            for (SmsToken t : tokens.tokens()) {
+                if (t.type != SmsToken.Type.NUMBER) continue;
+                String cand = cleanAmountGroup(tokens.value(t));
+                if (cand != null && cand.length() > 0) {
+                    if (countDigits(cand) >= 11) continue;
+                    amount = t;
+                    amountRaw = cand;
+                    amountNumber = parseAmountToBigDecimal(cand);
+                    if (amountNumber != null) break;
+                }
+            }
+        }
+
+        SmsToken ref = extractRef(tokens);
+        SmsToken vpa = tokens.first(SmsToken.Type.VPA);
+        int vpaEnd = vpa != null ? extractVpaEnd(tokens, vpa) : -1;
+        SmsDateScanner date = tokens.date();
+        if (spans != null) {
+            // guesses (a bare number, an unlabelled id) are not spans a template can reuse
+            if (amount != null && amount.type != SmsToken.Type.NUMBER) {
+                SmsTemplate.setSpan(spans, SmsTemplate.AMOUNT, amount.valueStart, amount.valueEnd);
+            }
+            if (ref != null && ref.type == SmsToken.Type.REF_LABEL) {
+                SmsTemplate.setSpan(spans, SmsTemplate.REF, ref.valueStart, ref.valueEnd);
+            }
+            if (vpa != null) SmsTemplate.setSpan(spans, SmsTemplate.VPA, vpa.valueStart, vpaEnd);
+            if (date != null) SmsTemplate.setSpan(spans, SmsTemplate.DATE, tokens.first(SmsToken.Type.DATE).start, date.end);
+        }
+
+        return new PaymentDetails.Builder()
+                .fullSmsBody(smsBody)
+                .amount(amountNumber, amountRaw)
+                .upiRefId(ref != null ? tokens.value(ref) : null)
+                .senderVpa(vpa != null ? tokens.text(vpa.valueStart, vpaEnd) : null)
+                .bank(extractBank(tokens))
+                .dateTime(date != null ? date.iso() : null, date != null ? date.epochMillis() : 0L);
+    }
+
+    // --- Helpers from JS code, adapted for Java ---
+
+    static String cleanAmountGroup(String raw) {
+        if (raw == null) return null;
+        StringBuilder sb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (SmsTokenizer.isDigit(c) || c == '.') sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    static BigDecimal parseAmountToBigDecimal(String raw) {
+        if (raw == null) return null;
+        String cleaned = raw.replace(",", "").trim();
+        if (cleaned.isEmpty()) return null;
+        try {
+            return new BigDecimal(cleaned);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static int countDigits(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (SmsTokenizer.isDigit(s.charAt(i))) n++;
+        }
+        return n;
+    }
+
+    private static boolean isAllLetters(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (!SmsTokenizer.isAsciiLetter(s.charAt(i))) return false;
+        }
+        return !s.isEmpty();
+    }
+
+    // XX1234, ****1234, xX1234 or up to three letters (one of them X) before 2-6 digits
+    private static boolean looksLikeAccountMask(String s) {
+        if (s == null || s.isEmpty()) return false;
+        int n = s.length();
+        char first = s.charAt(0);
+        int i = 0;
+        if (first == '*') {
+            while (i < n && s.charAt(i) == '*') i++;
+        } else {
+            while (i < n && (s.charAt(i) == 'X' || s.charAt(i) == 'x')) i++;
+        }
+        if (i > 0 && i < n && countDigits(s.substring(i)) == n - i) return true;
+
+        int letters = 0;
+        boolean hasX = false;
+        while (letters < n && SmsTokenizer.isAsciiLetter(s.charAt(letters))) {
+            hasX |= SmsTokenizer.lowerAscii(s.charAt(letters)) == 'x';
+            letters++;
+        }
+        int digits = n - letters;
+        return hasX && letters >= 1 && letters <= 3 && digits >= 2 && digits <= 6
+                && countDigits(s.substring(letters)) == digits;
+    }
+
+    static SmsToken extractRef(SmsTokenizer tokens) {
+        // 1. Check for explicit labelled reference number first.
+        SmsToken labelled = tokens.first(SmsToken.Type.REF_LABEL);
+        if (labelled != null && isLabelledRef(tokens.value(labelled))) {
+            // Found a good explicit match, return it immediately.
+            return labelled;
+        }
+
+        // 2. Fallback to loose candidates only if no explicit match was found.
+        for (SmsToken t : tokens.tokens()) {
+            if (t.type == SmsToken.Type.LOOSE_REF && isLooseRef(tokens.value(t))) return t;
+        }
+        return null;
+    }
+
+    static boolean isLabelledRef(String cand) {
+        return !looksLikeAccountMask(cand);
+    }
+
+    private static boolean isLooseRef(String cand) {
+        String lc = cand.toLowerCase(Locale.ROOT);
+        if (WORD_BLACKLIST.contains(lc)) return false;
+        if (looksLikeAccountMask(cand)) return false;
+        if (isAllLetters(cand)) return false;
+        if (cand.length() < 6) return false;
+        if (countDigits(cand) >= 11) return false;
+        return true;
+    }
+
+    private static int extractVpaEnd(SmsTokenizer tokens, SmsToken t) {
+        int end = t.valueEnd;
+        // a VPA can only end in '.' among the trailing punctuation we trim
+        while (end > t.valueStart && tokens.charAt(end - 1) == '.') end--;
+        return end;
+    }
+
+    static String extractBank(SmsTokenizer tokens) {
+        // Longest keyword wins, so "india post payments" beats "india post"
+        // and "union bank of india" beats "bank of india".
+        return tokens.bank();
+    }
+}
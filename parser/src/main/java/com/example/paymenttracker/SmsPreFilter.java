@@ -0,0 +1,200 @@
+package com.example.paymenttracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * First-stage filter that turns away SMS which cannot be a received payment
+ * before {@link SmsParser} looks at them.
+ *
+ * The sender is checked against allow/deny prefix lists held in a trie (keys
+ * as in {@link SmsTemplateCache#senderKey}, so "HDFCBK" covers "VM-HDFCBK").
+ * The body is walked once to collect a digit flag and a bitmap of the letter
+ * pairs that occur in the parser's payment keywords; a message whose bitmap
+ * cannot contain any payment keyword, or any credit keyword, is rejected.
+ * The bitmap only ever says "maybe", so nothing the parser would accept is
+ * turned away, and the walk allocates nothing.
+ */
+public class SmsPreFilter {
+
+    public enum Reason {
+        DENIED_SENDER,
+        SENDER_NOT_ALLOWED,
+        NO_DIGITS,
+        NO_PAYMENT_KEYWORD,
+        NO_CREDIT_KEYWORD
+    }
+
+    // SmsTokenizer's payment keywords, and its whole-word credit keywords;
+    // "prapt" is rewritten to "received" before tokenizing.
+    private static final String[] PAYMENT_WORDS = {
+            "credited", "debited", "paid", "txn for", "transferred", "received", "sent",
+            "upi", "imps", "neft", "rtgs", "otp for", "prapt"
+    };
+    private static final String[] CREDIT_WORDS = {
+            "credited", "received", "credit", "cr", "rcvd", "deposit", "refund", "refunded",
+            "revers", "reversed", "reversal", "prapt"
+    };
+
+    // Bit of each letter pair (a-z x a-z) that occurs in a keyword, 0 otherwise.
+    private static final long[] PAIR_BIT = new long[26 * 26];
+    private static final long[] PAYMENT_MASKS;
+    private static final long[] CREDIT_MASKS;
+    static {
+        int next = 0;
+        for (String[] words : new String[][]{PAYMENT_WORDS, CREDIT_WORDS}) {
+            for (String w : words) {
+                for (int i = 1; i < w.length(); i++) {
+                    int pair = pairIndex(w.charAt(i - 1), w.charAt(i));
+                    if (pair >= 0 && PAIR_BIT[pair] == 0) {
+                        if (next == 64) throw new IllegalStateException("too many keyword letter pairs");
+                        PAIR_BIT[pair] = 1L << next++;
+                    }
+                }
+            }
+        }
+        PAYMENT_MASKS = masks(PAYMENT_WORDS);
+        CREDIT_MASKS = masks(CREDIT_WORDS);
+    }
+
+    private static final AtomicLongArray REJECTED = new AtomicLongArray(Reason.values().length);
+
+    private final Node allowed;
+    private final Node denied;
+
+    public SmsPreFilter(List<String> allowedSenders, List<String> deniedSenders) {
+        this.allowed = trie(allowedSenders);
+        this.denied = trie(deniedSenders);
+    }
+
+    /** Builds a filter from the comma or newline separated lists kept in settings. */
+    public static SmsPreFilter fromSettings(String allowedSenders, String deniedSenders) {
+        return new SmsPreFilter(splitList(allowedSenders), splitList(deniedSenders));
+    }
+
+    /**
+     * Returns why the message cannot be a received payment, or null when it
+     * should be handed to the parser. Rejections are counted per reason.
+     */
+    public Reason check(String sender, String body) {
+        Reason reason = reject(sender, body);
+        if (reason != null) REJECTED.incrementAndGet(reason.ordinal());
+        return reason;
+    }
+
+    private Reason reject(String sender, String body) {
+        if (sender != null && (denied != null || allowed != null)) {
+            String key = SmsTemplateCache.senderKey(sender);
+            if (denied != null && denied.matchesPrefixOf(key)) return Reason.DENIED_SENDER;
+            if (allowed != null && !allowed.matchesPrefixOf(key)) return Reason.SENDER_NOT_ALLOWED;
+        }
+        if (body == null) return Reason.NO_DIGITS;
+
+        boolean digit = false;
+        long pairs = 0;
+        int prev = -1;
+        for (int i = 0, n = body.length(); i < n; i++) {
+            char c = body.charAt(i);
+            int letter = letterIndex(c);
+            if (letter >= 0) {
+                if (prev >= 0) pairs |= PAIR_BIT[prev * 26 + letter];
+            } else if (SmsTokenizer.isDigit(c)) {
+                digit = true;
+            }
+            prev = letter;
+        }
+
+        if (!digit) return Reason.NO_DIGITS;
+        if (!anyContained(PAYMENT_MASKS, pairs)) return Reason.NO_PAYMENT_KEYWORD;
+        if (!anyContained(CREDIT_MASKS, pairs)) return Reason.NO_CREDIT_KEYWORD;
+        return null;
+    }
+
+    /** Messages rejected for the given reason since the process started. */
+    public static long rejectedCount(Reason reason) {
+        return REJECTED.get(reason.ordinal());
+    }
+
+    private static boolean anyContained(long[] masks, long pairs) {
+        for (long m : masks) {
+            if ((pairs & m) == m) return true;
+        }
+        return false;
+    }
+
+    private static long[] masks(String[] words) {
+        long[] out = new long[words.length];
+        for (int w = 0; w < words.length; w++) {
+            for (int i = 1; i < words[w].length(); i++) {
+                int pair = pairIndex(words[w].charAt(i - 1), words[w].charAt(i));
+                if (pair >= 0) out[w] |= PAIR_BIT[pair];
+            }
+        }
+        return out;
+    }
+
+    private static int pairIndex(char a, char b) {
+        int x = letterIndex(a);
+        int y = letterIndex(b);
+        return x >= 0 && y >= 0 ? x * 26 + y : -1;
+    }
+
+    private static int letterIndex(char c) {
+        return SmsTokenizer.isAsciiLetter(c) ? SmsTokenizer.lowerAscii(c) - 'a' : -1;
+    }
+
+    static List<String> splitList(String s) {
+        List<String> out = new ArrayList<>();
+        if (s == null) return out;
+        for (String part : s.split("[,;\\s]+")) {
+            if (!part.isEmpty()) out.add(part);
+        }
+        return out;
+    }
+
+    private static Node trie(List<String> senders) {
+        if (senders == null || senders.isEmpty()) return null;
+        Node root = new Node();
+        for (String s : senders) {
+            String key = SmsTemplateCache.senderKey(s);
+            if (key.isEmpty()) continue;
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) node = node.child(key.charAt(i), true);
+            node.terminal = true;
+        }
+        return root;
+    }
+
+    // Sender prefix trie; children are few, so they are kept in parallel arrays.
+    private static final class Node {
+        char[] labels = new char[0];
+        Node[] children = new Node[0];
+        boolean terminal;
+
+        Node child(char c, boolean add) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == c) return children[i];
+            }
+            if (!add) return null;
+            int n = labels.length;
+            labels = Arrays.copyOf(labels, n + 1);
+            children = Arrays.copyOf(children, n + 1);
+            labels[n] = c;
+            children[n] = new Node();
+            return children[n];
+        }
+
+        // true when some entry is a prefix of key
+        boolean matchesPrefixOf(String key) {
+            Node node = this;
+            for (int i = 0; i < key.length(); i++) {
+                if (node.terminal) return true;
+                node = node.child(key.charAt(i), false);
+                if (node == null) return false;
+            }
+            return node.terminal;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.paymenttracker;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The literal skeleton of one sender's SMS format, with slots where the
+ * payment fields go.
+ *
+ * A template is learned from a message the generic parser handled: the buffer
+ * ranges the fields were read from become slots and everything between them
+ * becomes literal text. Only fields the parser anchors on a label are slotted
+ * (an amount after a currency marker or payment keyword, a ref after a
+ * "Ref No" label); when the parser had to guess from any number or id in the
+ * body, a different value elsewhere could change its guess, so no template
+ * is kept. A later message fits the template when it repeats the
+ * literals exactly and every slot holds a value of its kind, ending where
+ * the generic scan would end it (an amount or ref is read with the
+ * tokenizer's own grammar); the fields are then read straight off the
+ * slots. Anything else falls back to the generic parser, so a template
+ * never reads a message differently from it. Offsets are in the normalised
+ * buffer of {@link SmsTokenizer}, so whitespace differences do not matter.
+ */
+final class SmsTemplate {
+
+    // Slot kinds, also the index (times two) into a spans array.
+    static final int AMOUNT = 0;
+    static final int REF = 1;
+    static final int VPA = 2;
+    static final int DATE = 3;
+    private static final int KINDS = 4;
+
+    private final String[] literals;
+    private final int[] kinds;
+
+    private SmsTemplate(String[] literals, int[] kinds) {
+        this.literals = literals;
+        this.kinds = kinds;
+    }
+
+    static int[] newSpans() {
+        int[] spans = new int[KINDS * 2];
+        Arrays.fill(spans, -1);
+        return spans;
+    }
+
+    static void setSpan(int[] spans, int kind, int start, int end) {
+        spans[kind * 2] = start;
+        spans[kind * 2 + 1] = end;
+    }
+
+    /**
+     * Builds the template of a parsed message, or returns null when the spans
+     * cannot be told apart again (overlapping or touching slots) or the
+     * template would not reproduce the generic parser's result.
+     */
+    static SmsTemplate learn(SmsTokenizer tokens, PaymentDetails.Builder parsed, int[] spans, BankMatcher banks) {
+        if (spans[AMOUNT * 2] < 0 || spans[REF * 2] < 0) return null;
+
+        int n = 0;
+        int[] order = new int[KINDS];
+        for (int kind = 0; kind < KINDS; kind++) {
+            if (spans[kind * 2] < 0) continue;
+            // insertion sort by start offset
+            int j = n++;
+            while (j > 0 && spans[order[j - 1] * 2] > spans[kind * 2]) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = kind;
+        }
+        String[] literals = new String[n + 1];
+        int[] kinds = new int[n];
+        int p = 0;
+        for (int k = 0; k < n; k++) {
+            int start = spans[order[k] * 2];
+            int end = spans[order[k] * 2 + 1];
+            if (start < p || end <= start || (k > 0 && start == p)) return null;
+            literals[k] = tokens.text(p, start);
+            kinds[k] = order[k];
+            p = end;
+        }
+        literals[n] = tokens.text(p, tokens.length());
+
+        SmsTemplate template = new SmsTemplate(literals, kinds);
+        PaymentDetails.Builder again = template.match(tokens, parsed.fullSmsBody, banks);
+        return again != null && sameFields(parsed, again) ? template : null;
+    }
+
+    /** Reads the fields of {@code tokens} through this template, or returns null when it does not fit. */
+    PaymentDetails.Builder match(SmsTokenizer tokens, String smsBody, BankMatcher banks) {
+        if (!literalAt(tokens, 0, literals[0], false)) return null;
+
+        PaymentDetails.Builder b = new PaymentDetails.Builder().fullSmsBody(smsBody);
+        SmsDateScanner date = null;
+        int p = literals[0].length();
+        for (int k = 0; k < kinds.length; k++) {
+            String next = literals[k + 1];
+            boolean last = k == kinds.length - 1;
+            int start = p;
+            int end;
+            if (kinds[k] == DATE) {
+                date = new SmsDateScanner();
+                if (!tokens.isBoundary(start) || !date.scan(tokens, start)) return null;
+                end = date.end;
+                if (!literalAt(tokens, end, next, last)) return null;
+            } else {
+                end = slotEnd(tokens, kinds[k], start, next, last);
+                if (end < 0) return null;
+                if (!readSlot(tokens, kinds[k], start, end, b)) return null;
+            }
+            p = end + next.length();
+        }
+
+        if (date != null) b.dateTime(date.iso(), date.epochMillis());
+        return b.bank(banks.find(tokens));
+    }
+
+    // An amount or ref ends where the generic scan would end it, and the
+    // next literal has to follow right there. A VPA is the longest run of
+    // its characters that the next literal follows; only trailing
+    // punctuation is given back to the literal. Nothing the generic scan
+    // would read as a keyword, label or date may hide inside it.
+    private static int slotEnd(SmsTokenizer t, int kind, int start, String next, boolean last) {
+        if (kind == AMOUNT || kind == REF) {
+            if (start >= t.length()) return -1;
+            int end;
+            if (kind == REF) end = t.labelledRefEnd(start);
+            else end = SmsTokenizer.isDigit(t.charAt(start)) ? t.amountEnd(start) : -1;
+            return end > start && literalAt(t, end, next, last) ? end : -1;
+        }
+        int end = start;
+        while (end < t.length() && isVpaChar(t.charAt(end))) end++;
+        t.charge(end - start);
+        while (end > start && !literalAt(t, end, next, last)) {
+            t.charge(next.length());
+            if (t.overBudget()) return -1;
+            char c = t.charAt(end - 1);
+            if (SmsTokenizer.isDigit(c) || SmsTokenizer.isAsciiLetter(c)) return -1;
+            end--;
+        }
+        return end > start ? end : -1;
+    }
+
+    private static boolean readSlot(SmsTokenizer t, int kind, int start, int end, PaymentDetails.Builder b) {
+        String value = t.text(start, end);
+        switch (kind) {
+            case AMOUNT: {
+                String raw = SmsParser.cleanAmountGroup(value);
+                BigDecimal number = SmsParser.parseAmountToBigDecimal(raw);
+                if (!SmsTokenizer.isDigit(value.charAt(0)) || number == null) return false;
+                b.amount(number, raw);
+                return true;
+            }
+            case REF:
+                if (value.length() < SmsTokenizer.MIN_LABELLED_REF_LENGTH || value.length() > SmsTokenizer.MAX_REF_LENGTH
+                        || !SmsParser.isLabelledRef(value)) return false;
+                b.upiRefId(value);
+                return true;
+            case VPA: {
+                int at = value.indexOf('@');
+                if (at <= 0 || at == value.length() - 1 || value.indexOf('@', at + 1) >= 0
+                        || value.charAt(value.length() - 1) == '.' || !t.isBoundary(start) || !t.isBoundary(end)
+                        || !t.onlyVpaIn(start, end)) return false;
+                b.senderVpa(value);
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isVpaChar(char c) {
+        return SmsTokenizer.isVpaLocalChar(c) || c == '@';
+    }
+
+    private static boolean literalAt(SmsTokenizer t, int i, String literal, boolean last) {
+        int n = literal.length();
+        if (i + n > t.length() || (last && i + n != t.length())) return false;
+        for (int k = 0; k < n; k++) {
+            if (t.charAt(i + k) != literal.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    private static boolean sameFields(PaymentDetails.Builder a, PaymentDetails.Builder b) {
+        return Objects.equals(a.amountNumber, b.amountNumber)
+                && Objects.equals(a.amountRaw, b.amountRaw)
+                && Objects.equals(a.upiRefId, b.upiRefId)
+                && Objects.equals(a.senderVpa, b.senderVpa)
+                && Objects.equals(a.bank, b.bank)
+                && Objects.equals(a.dateTime, b.dateTime);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.paymenttracker;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bounded, least-recently-used cache of {@link SmsTemplate}s keyed by sender.
+ *
+ * Banks send from a handful of headers ("VM-HDFCBK", "AX-ICICIT") and each
+ * header uses a few fixed formats, so a sender keeps up to
+ * {@link #TEMPLATES_PER_SENDER} templates, most recently used first. The
+ * operator prefix ("VM-", "AX-", ...) is ignored so the same bank reached
+ * through different operators shares its templates.
+ */
+public class SmsTemplateCache {
+
+    static final int TEMPLATES_PER_SENDER = 4;
+
+    private final int maxSenders;
+    private final LinkedHashMap<String, SmsTemplate[]> bySender;
+    private long hits;
+    private long misses;
+
+    public SmsTemplateCache(int maxSenders) {
+        if (maxSenders <= 0) throw new IllegalArgumentException("maxSenders must be positive");
+        this.maxSenders = maxSenders;
+        this.bySender = new LinkedHashMap<String, SmsTemplate[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SmsTemplate[]> eldest) {
+                return size() > SmsTemplateCache.this.maxSenders;
+            }
+        };
+    }
+
+    /** Reads the fields through one of the sender's templates; null (a miss) when none fits. */
+    synchronized PaymentDetails.Builder match(String sender, SmsTokenizer tokens, String smsBody, BankMatcher banks) {
+        SmsTemplate[] templates = bySender.get(senderKey(sender));
+        if (templates != null) {
+            for (int i = 0; i < templates.length && templates[i] != null; i++) {
+                PaymentDetails.Builder b = templates[i].match(tokens, smsBody, banks);
+                if (b != null) {
+                    moveToFront(templates, i);
+                    hits++;
+                    return b;
+                }
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /** Remembers the template of a message the generic parser handled. */
+    synchronized void learn(String sender, SmsTokenizer tokens, PaymentDetails.Builder parsed, int[] spans, BankMatcher banks) {
+        SmsTemplate template = SmsTemplate.learn(tokens, parsed, spans, banks);
+        if (template == null) return;
+        String key = senderKey(sender);
+        SmsTemplate[] templates = bySender.get(key);
+        if (templates == null) {
+            templates = new SmsTemplate[TEMPLATES_PER_SENDER];
+            bySender.put(key, templates);
+        }
+        // the least recently used template of this sender makes room
+        templates[templates.length - 1] = template;
+        moveToFront(templates, templates.length - 1);
+    }
+
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    /** Number of senders with at least one template. */
+    public synchronized int size() {
+        return bySender.size();
+    }
+
+    public synchronized void clear() {
+        bySender.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SmsTemplateCache{senders=" + bySender.size() + ", hits=" + hits + ", misses=" + misses + "}";
+    }
+
+    // "VM-HDFCBK" and "AX-HDFCBK" are the same sender seen through two operators.
+    static String senderKey(String sender) {
+        String s = sender.trim();
+        if (s.length() > 3 && s.charAt(2) == '-' && SmsTokenizer.isAsciiLetter(s.charAt(0))
+                && SmsTokenizer.isAsciiLetter(s.charAt(1))) {
+            s = s.substring(3);
+        }
+        return s.toUpperCase(Locale.ROOT);
+    }
+
+    private static void moveToFront(SmsTemplate[] templates, int i) {
+        SmsTemplate t = templates[i];
+        System.arraycopy(templates, 0, templates, 1, i);
+        templates[0] = t;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.paymenttracker;
+
+/**
+ * One typed token emitted by {@link SmsTokenizer}.
+ *
+ * Offsets index into the tokenizer's normalised buffer. The value range is the
+ * part of the token a field is read from (the number after a currency marker,
+ * the id after a "Ref No:" label, ...) and is -1 when the token carries none.
+ */
+final class SmsToken {
+
+    enum Type {
+        KEYWORD,
+        CURRENCY,
+        NUMBER,
+        REF_LABEL,
+        LOOSE_REF,
+        VPA,
+        DATE,
+        BANK
+    }
+
+    // KEYWORD flags
+    static final int PAYMENT = 1;
+    static final int RECEIVED = 1 << 1;
+    static final int AMOUNT_CONTEXT = 1 << 2;
+
+    final Type type;
+    final int start;
+    final int end;
+    final int valueStart;
+    final int valueEnd;
+    final int flags;
+
+    SmsToken(Type type, int start, int end, int valueStart, int valueEnd, int flags) {
+        this.type = type;
+        this.start = start;
+        this.end = end;
+        this.valueStart = valueStart;
+        this.valueEnd = valueEnd;
+        this.flags = flags;
+    }
+
+    boolean hasValue() {
+        return valueStart >= 0;
+    }
+
+    boolean is(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return type + "[" + start + "," + end + ")" + (hasValue() ? " value[" + valueStart + "," + valueEnd + ")" : "");
+    }
+}
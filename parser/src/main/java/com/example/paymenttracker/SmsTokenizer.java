@@ -0,0 +1,649 @@
+package com.example.paymenttracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Single-pass lexer behind {@link SmsParser}.
+ *
+ * The body is normalised once (whitespace collapsed, trimmed, "prapt hue"
+ * rewritten to "received") into a char buffer, and that buffer is walked once
+ * to emit every token the parser needs. Each token type reproduces the match
+ * rules of the regular expressions the parser used before, including their
+ * word-boundary and backtracking behaviour, so the extracted fields are the
+ * same as before; the only lookahead is bounded to the token being read.
+ * A {@link BankMatcher} is stepped along the same walk to find the longest
+ * bank name.
+ *
+ * Every scan has a work budget of {@link #STEPS_PER_CHAR} steps per char of
+ * the body: the walk spends one step per char and each lookahead spends the
+ * chars it reads. All lookaheads are bounded, so real SMS use a small part of
+ * it; when a body does run out, the scan stops and {@link #overBudget()} says
+ * so instead of the tokens being trusted.
+ */
+final class SmsTokenizer implements CharSequence {
+
+    static final int MAX_REF_LENGTH = 40;
+    static final int MIN_LABELLED_REF_LENGTH = 4;
+    static final int MIN_LOOSE_REF_LENGTH = 6;
+
+    static final int STEPS_PER_CHAR = 32;
+    private static final int BASE_STEPS = 1024;
+
+    // Unicode's stream-safe text format (UAX #15) never has more than 30
+    // combining marks in a row; \b does not look further back than that.
+    private static final int MAX_COMBINING_MARKS = 30;
+
+    private static final char RUPEE = '₹';
+
+    // Keywords by lower-case first letter. Substring flags apply wherever the
+    // literal occurs; RECEIVED only applies when it is a whole word.
+    private static final Keyword[][] KEYWORDS = new Keyword[26][];
+    static {
+        List<Keyword> all = new ArrayList<>();
+        int pc = SmsToken.PAYMENT | SmsToken.AMOUNT_CONTEXT;
+        all.add(new Keyword("credited", pc, true));
+        all.add(new Keyword("debited", pc, false));
+        all.add(new Keyword("paid", pc, false));
+        all.add(new Keyword("txn for", pc, false));
+        all.add(new Keyword("transferred", pc, false));
+        all.add(new Keyword("received", pc, true));
+        all.add(new Keyword("amount", SmsToken.AMOUNT_CONTEXT, false));
+        all.add(new Keyword("sent", SmsToken.PAYMENT, false));
+        all.add(new Keyword("upi", SmsToken.PAYMENT, false));
+        all.add(new Keyword("imps", SmsToken.PAYMENT, false));
+        all.add(new Keyword("neft", SmsToken.PAYMENT, false));
+        all.add(new Keyword("rtgs", SmsToken.PAYMENT, false));
+        all.add(new Keyword("otp for", SmsToken.PAYMENT, false));
+        for (String w : new String[]{"credit", "cr", "rcvd", "deposit", "refund", "refunded", "revers", "reversed", "reversal"}) {
+            all.add(new Keyword(w, 0, true));
+        }
+
+        List<List<Keyword>> byLetter = new ArrayList<>();
+        for (int i = 0; i < 26; i++) byLetter.add(new ArrayList<>());
+        for (Keyword k : all) byLetter.get(k.text.charAt(0) - 'a').add(k);
+        for (int i = 0; i < 26; i++) {
+            KEYWORDS[i] = byLetter.get(i).toArray(new Keyword[0]);
+        }
+    }
+
+    private final char[] buf;
+    private final int len;
+    private final List<SmsToken> tokens = new ArrayList<>();
+    private String bank;
+    private final SmsDateScanner dateScanner = new SmsDateScanner();
+    private SmsDateScanner date;
+    private boolean hasPaymentKeyword;
+    private boolean isReceived;
+    private int budget;
+    private int markAt = -1;       // last char hasBaseCharacter looked at,
+    private int markBase = -1;     // and the letter or digit it found there
+
+    private static final BankMatcher NO_BANKS = new BankMatcher(Collections.<String, String>emptyMap());
+    // how far before a span a keyword, label or date that runs into it can start
+    private static final int REACH = 32;
+
+    private SmsTokenizer(char[] buf, int len) {
+        this.buf = buf;
+        this.len = len;
+        this.budget = BASE_STEPS + len * STEPS_PER_CHAR;
+    }
+
+    static SmsTokenizer tokenize(String body, BankMatcher banks) {
+        return prepare(body).scan(banks);
+    }
+
+    /**
+     * Normalises the body without emitting tokens, for callers that only need
+     * the buffer (see {@link SmsTemplate}). {@link #scan} may follow at most once.
+     */
+    static SmsTokenizer prepare(String body) {
+        return normalize(body);
+    }
+
+    boolean hasPaymentKeyword() {
+        return hasPaymentKeyword;
+    }
+
+    boolean isReceived() {
+        return isReceived;
+    }
+
+    /** True when the scan ran out of work budget; its tokens are then incomplete. */
+    boolean overBudget() {
+        return budget < 0;
+    }
+
+    /** Spends steps of the work budget, for lookaheads done on this buffer. */
+    void charge(int steps) {
+        budget -= steps;
+    }
+
+    // Tests only: replaces the budget the body length gave.
+    void setBudget(int steps) {
+        budget = steps;
+    }
+
+    /** Normalised name of the longest bank keyword in the body, or null. */
+    String bank() {
+        return bank;
+    }
+
+    /** The first date (and time) in the body, or null. */
+    SmsDateScanner date() {
+        return date;
+    }
+
+    List<SmsToken> tokens() {
+        return Collections.unmodifiableList(tokens);
+    }
+
+    /** First token of the given type; tokens of one type are kept in body order. */
+    SmsToken first(SmsToken.Type type) {
+        for (SmsToken t : tokens) {
+            if (t.type == type) return t;
+        }
+        return null;
+    }
+
+    String text(int start, int end) {
+        return new String(buf, start, end - start);
+    }
+
+    String value(SmsToken t) {
+        return text(t.valueStart, t.valueEnd);
+    }
+
+    @Override
+    public int length() {
+        return len;
+    }
+
+    @Override
+    public char charAt(int i) {
+        return buf[i];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, len);
+    }
+
+    /** Case-insensitive (ASCII) comparison of {@code lower} against the buffer at {@code i}. */
+    boolean matchesAt(int i, String lower) {
+        int n = lower.length();
+        if (i < 0 || i + n > len) return false;
+        for (int k = 0; k < n; k++) {
+            if (lowerAscii(buf[i + k]) != lower.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    // --- normalisation ---
+
+    private static SmsTokenizer normalize(String s) {
+        int n = s.length();
+        char[] out = new char[n];
+        int o = 0;
+        boolean pendingSpace = false;
+        boolean maybePrapt = false;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (isSpace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace) {
+                out[o++] = ' ';
+                pendingSpace = false;
+            }
+            if ((c == 'p' || c == 'P') && !maybePrapt) {
+                maybePrapt = s.regionMatches(true, i, "prapt", 0, 5);
+            }
+            out[o++] = c;
+        }
+
+        // String.trim() semantics: strip every char <= U+0020 at both ends.
+        int st = 0;
+        while (st < o && out[st] <= ' ') st++;
+        while (o > st && out[o - 1] <= ' ') o--;
+        if (st > 0) {
+            System.arraycopy(out, st, out, 0, o - st);
+            o -= st;
+        }
+
+        SmsTokenizer t = new SmsTokenizer(out, o);
+        return maybePrapt ? t.rewritePrapt() : t;
+    }
+
+    // Hindi "prapt" / "prapt hue" / "prapt huye" (received) is read as "received".
+    private SmsTokenizer rewritePrapt() {
+        StringBuilder sb = new StringBuilder(len + 8);
+        int i = 0;
+        while (i < len) {
+            int end = -1;
+            if (isBoundary(i) && matchesAt(i, "prapt")) {
+                int p = i + 5;
+                if (matchesAt(p, " hue") && isBoundary(p + 4)) end = p + 4;
+                else if (matchesAt(p, " huye") && isBoundary(p + 5)) end = p + 5;
+                else if (isBoundary(p)) end = p;
+            }
+            if (end >= 0) {
+                sb.append("received");
+                i = end;
+            } else {
+                sb.append(buf[i++]);
+            }
+        }
+        char[] out = new char[sb.length()];
+        sb.getChars(0, out.length, out, 0);
+        return new SmsTokenizer(out, out.length);
+    }
+
+    // --- scanning ---
+
+    SmsTokenizer scan(BankMatcher banks) {
+        int numberFrom = 0;     // NUMBER and LOOSE_REF tokens never overlap,
+        int looseFrom = 0;      // mirroring successive Matcher.find() calls
+        int refRunEnd = -1;
+        int refRunLastDigit = -1;
+        int localStart = -1;
+        int localBoundary = -1;
+        boolean haveCurrency = false;
+        boolean haveRef = false;
+        boolean haveVpa = false;
+        boolean haveDate = false;
+        int bankState = BankMatcher.ROOT;
+        int bankLength = 0;
+        int bankEnd = -1;
+
+        for (int i = 0; i < len; i++) {
+            if (--budget < 0) return this;
+            char c = buf[i];
+            char lc = lowerAscii(c);
+            boolean boundary = isBoundary(i);
+
+            bankState = banks.step(bankState, c);
+            if (banks.matchLength(bankState) > bankLength) {
+                bankLength = banks.matchLength(bankState);
+                bankEnd = i + 1;
+                bank = banks.matchValue(bankState);
+            }
+
+            if (lc >= 'a' && lc <= 'z') {
+                matchKeywords(i, lc, boundary);
+                if (!haveRef && (lc == 'u' || lc == 'r' || lc == 't')) {
+                    haveRef = matchRefLabel(i, lc);
+                }
+            }
+            if (!haveCurrency && (lc == 'r' || lc == 'i' || c == RUPEE)) {
+                haveCurrency = matchCurrency(i, lc);
+            }
+            if (isDigit(c)) {
+                if (i >= numberFrom) {
+                    numberFrom = numberEnd(i);
+                    tokens.add(new SmsToken(SmsToken.Type.NUMBER, i, numberFrom, i, numberFrom, 0));
+                }
+                if (!haveDate && boundary) {
+                    haveDate = matchDate(i);
+                }
+            }
+
+            if (isRefChar(c)) {
+                if (i >= refRunEnd) {
+                    refRunLastDigit = -1;
+                    int j = i;
+                    while (j < len && isRefChar(buf[j])) {
+                        if (isDigit(buf[j])) refRunLastDigit = j;
+                        j++;
+                    }
+                    refRunEnd = j;
+                    budget -= j - i;
+                }
+                if (i >= looseFrom && boundary && refRunLastDigit >= i) {
+                    int end = looseRefEnd(i, refRunEnd);
+                    if (end > 0) {
+                        tokens.add(new SmsToken(SmsToken.Type.LOOSE_REF, i, end, i, end, 0));
+                        looseFrom = end;
+                    }
+                }
+            }
+
+            if (isVpaLocalChar(c)) {
+                if (localStart < 0) {
+                    localStart = i;
+                    localBoundary = -1;
+                }
+                if (localBoundary < 0 && boundary) localBoundary = i;
+            } else {
+                if (c == '@' && !haveVpa && localStart >= 0 && localBoundary >= 0) {
+                    haveVpa = matchVpa(localBoundary, i);
+                }
+                localStart = -1;
+            }
+        }
+
+        if (bank != null) {
+            tokens.add(new SmsToken(SmsToken.Type.BANK, bankEnd - bankLength, bankEnd, bankEnd - bankLength, bankEnd, 0));
+        }
+        return this;
+    }
+
+    private void matchKeywords(int i, char lc, boolean boundary) {
+        for (Keyword k : KEYWORDS[lc - 'a']) {
+            if (!matchesAt(i, k.text)) continue;
+            int end = i + k.text.length();
+            int flags = k.flags;
+            if (k.receivedWord && boundary && isBoundary(end)) {
+                flags |= SmsToken.RECEIVED;
+            }
+            if (flags == 0) continue;
+
+            if ((flags & SmsToken.PAYMENT) != 0) hasPaymentKeyword = true;
+            if ((flags & SmsToken.RECEIVED) != 0) isReceived = true;
+
+            int valueStart = -1;
+            int valueEnd = -1;
+            if ((flags & SmsToken.AMOUNT_CONTEXT) != 0) {
+                valueStart = contextAmountStart(end);
+                if (valueStart >= 0) valueEnd = numberEnd(valueStart);
+            }
+            tokens.add(new SmsToken(SmsToken.Type.KEYWORD, i, end, valueStart, valueEnd, flags));
+        }
+    }
+
+    // "<keyword> [of|by|with|:] [Rs.|INR|₹] 1,234.50"
+    private int contextAmountStart(int p) {
+        int q = skipSpaces(p);
+        int glen = 0;
+        if (matchesAt(q, "of") || matchesAt(q, "by")) glen = 2;
+        else if (matchesAt(q, "with")) glen = 4;
+        else if (q < len && buf[q] == ':') glen = 1;
+        if (glen > 0) {
+            int v = amountAfterOptionalCurrency(skipSpaces(q + glen));
+            if (v >= 0) return v;
+        }
+        return amountAfterOptionalCurrency(q);
+    }
+
+    private int amountAfterOptionalCurrency(int p) {
+        int v = amountAfterCurrency(p);
+        if (v >= 0) return v;
+        return p < len && isDigit(buf[p]) ? p : -1;
+    }
+
+    private boolean matchCurrency(int i, char lc) {
+        int v = amountAfterCurrency(i);
+        if (v < 0) return false;
+        tokens.add(new SmsToken(SmsToken.Type.CURRENCY, i, numberEnd(v), v, numberEnd(v), 0));
+        return true;
+    }
+
+    // "Rs", "Rs.", "INR" or "₹" at p, then optional spaces and a digit.
+    private int amountAfterCurrency(int p) {
+        if (p >= len) return -1;
+        if (matchesAt(p, "rs")) {
+            if (p + 2 < len && buf[p + 2] == '.') {
+                int d = skipSpaces(p + 3);
+                if (d < len && isDigit(buf[d])) return d;
+            }
+            int d = skipSpaces(p + 2);
+            return d < len && isDigit(buf[d]) ? d : -1;
+        }
+        int m;
+        if (matchesAt(p, "inr")) m = p + 3;
+        else if (buf[p] == RUPEE) m = p + 1;
+        else return -1;
+        int d = skipSpaces(m);
+        return d < len && isDigit(buf[d]) ? d : -1;
+    }
+
+    /** Where the amount the scan reads from the digit at i ends. */
+    int amountEnd(int i) {
+        return numberEnd(i);
+    }
+
+    /**
+     * Where the ref the scan reads after a label ends, when it starts right
+     * at q; -1 when it would not start there (the scan skips a separator
+     * first) or would be too short.
+     */
+    int labelledRefEnd(int q) {
+        if (q >= len || buf[q] == ':' || buf[q] == '-' || isSpace(buf[q])) return -1;
+        int r = q;
+        while (r < len && r - q < MAX_REF_LENGTH && isRefChar(buf[r])) r++;
+        budget -= r - q + 1;
+        return r - q >= MIN_LABELLED_REF_LENGTH ? r : -1;
+    }
+
+    /**
+     * True when a scan of the text around [start, end) finds nothing in that
+     * span but a VPA starting at start: no keyword, currency, ref label or
+     * date that would change what the generic parse reads. Bare numbers and
+     * unlabelled ids are let through; they are only used when no labelled
+     * amount or ref was found.
+     */
+    boolean onlyVpaIn(int start, int end) {
+        int from = Math.max(0, start - REACH);
+        int to = Math.min(len, end + REACH);
+        char[] around = new char[to - from];
+        System.arraycopy(buf, from, around, 0, around.length);
+        SmsTokenizer sub = new SmsTokenizer(around, around.length).scan(NO_BANKS);
+        budget -= around.length;
+        if (sub.overBudget()) return false;
+        int s = start - from;
+        int e = end - from;
+        for (SmsToken t : sub.tokens) {
+            if (t.end <= s || t.start >= e) continue;
+            switch (t.type) {
+                case NUMBER:
+                case LOOSE_REF:
+                    break;
+                case VPA:
+                    if (t.start != s) return false;
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    // [0-9]+(,[0-9]{3})*(\.[0-9]{1,2})?
+    private int numberEnd(int i) {
+        int j = i;
+        while (j < len && isDigit(buf[j])) j++;
+        budget -= j - i;
+        while (j + 3 < len && buf[j] == ',' && isDigit(buf[j + 1]) && isDigit(buf[j + 2]) && isDigit(buf[j + 3])) {
+            j += 4;
+        }
+        if (j + 1 < len && buf[j] == '.' && isDigit(buf[j + 1])) {
+            j += 2;
+            if (j < len && isDigit(buf[j])) j++;
+        }
+        return j;
+    }
+
+    // Labelled reference: "UPI Ref No", "Ref.No", "Ref No", "Ref", "Txn ID", "TxN",
+    // "TRANS ID", "Transaction ID", tried in that order at each position.
+    private boolean matchRefLabel(int i, char lc) {
+        if (lc == 'u') {
+            if (!matchesAt(i, "upi")) return false;
+            int p = skipSpaces(i + 3);
+            if (!matchesAt(p, "ref")) return false;
+            p += 3;
+            int q = skipSpaces(p);
+            if (matchesAt(q, "no") && labelledRef(i, q + 2)) return true;
+            return labelledRef(i, p);
+        }
+        if (lc == 'r') {
+            if (!matchesAt(i, "ref")) return false;
+            if (matchesAt(i, "ref.no") && labelledRef(i, i + 6)) return true;
+            int q = skipSpaces(i + 3);
+            if (matchesAt(q, "no") && labelledRef(i, q + 2)) return true;
+            return isBoundary(i + 3) && labelledRef(i, i + 3);
+        }
+        if (matchesAt(i, "txn id") && labelledRef(i, i + 6)) return true;
+        if (matchesAt(i, "txn") && labelledRef(i, i + 3)) return true;
+        if (matchesAt(i, "trans id") && labelledRef(i, i + 8)) return true;
+        return matchesAt(i, "transaction id") && labelledRef(i, i + 14);
+    }
+
+    // [:\s-]*([A-Za-z0-9-]{4,40}) after a label. The separator gives back
+    // characters (hyphens count for both) until a long enough id follows.
+    private boolean labelledRef(int labelStart, int p) {
+        int sepEnd = p;
+        while (sepEnd < len && (buf[sepEnd] == ':' || buf[sepEnd] == '-' || isSpace(buf[sepEnd]))) sepEnd++;
+        budget -= sepEnd - p;
+        for (int q = sepEnd; q >= p; q--) {
+            int r = q;
+            while (r < len && r - q < MAX_REF_LENGTH && isRefChar(buf[r])) r++;
+            budget -= r - q + 1;
+            if (r - q >= MIN_LABELLED_REF_LENGTH) {
+                tokens.add(new SmsToken(SmsToken.Type.REF_LABEL, labelStart, r, q, r, 0));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // \b([A-Za-z0-9-]{6,40})\b starting at i; returns the end or -1.
+    private int looseRefEnd(int i, int runEnd) {
+        int max = Math.min(MAX_REF_LENGTH, runEnd - i);
+        budget -= max;
+        for (int l = max; l >= MIN_LOOSE_REF_LENGTH; l--) {
+            if (isBoundary(i + l)) return i + l;
+        }
+        return -1;
+    }
+
+    // local@domain, longest domain that ends on a word boundary.
+    private boolean matchVpa(int start, int at) {
+        int d = at + 1;
+        while (d < len && isVpaDomainChar(buf[d])) d++;
+        budget -= 2 * (d - at);
+        for (int end = d; end > at + 1; end--) {
+            if (isBoundary(end)) {
+                tokens.add(new SmsToken(SmsToken.Type.VPA, start, end, start, end, 0));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchDate(int i) {
+        if (!dateScanner.scan(this, i)) return false;
+        date = dateScanner;
+        tokens.add(new SmsToken(SmsToken.Type.DATE, i, date.end, i, date.end, 0));
+        return true;
+    }
+
+    private int skipSpaces(int p) {
+        while (p < len && isSpace(buf[p])) p++;
+        return p;
+    }
+
+    // --- character classes ---
+
+    /**
+     * java.util.regex {@code \b}: a letter, digit or '_' on exactly one side,
+     * where a non-spacing mark counts as a word char when it follows one
+     * (looking back over at most MAX_COMBINING_MARKS marks, which keeps a run
+     * of marks linear instead of quadratic).
+     */
+    boolean isBoundary(int i) {
+        boolean left = i > 0 && isWordBefore(i);
+        boolean right = i < len && isWordAt(i);
+        return left != right;
+    }
+
+    private boolean isWordAt(int i) {
+        char c = buf[i];
+        if (c < 128) return isAsciiWord(c);
+        int cp = Character.codePointAt(buf, i, len);
+        return isWord(cp) || (Character.getType(cp) == Character.NON_SPACING_MARK && hasBaseCharacter(i));
+    }
+
+    private boolean isWordBefore(int i) {
+        char c = buf[i - 1];
+        if (c < 128) return isAsciiWord(c);
+        int cp = Character.codePointBefore(buf, i, 0);
+        return isWord(cp) || (Character.getType(cp) == Character.NON_SPACING_MARK && hasBaseCharacter(i - 1));
+    }
+
+    // The scan asks about each mark of a run in turn, so the base found for the
+    // last one is kept and the walk back stops there.
+    private boolean hasBaseCharacter(int i) {
+        int base = -1;
+        for (int x = i; x >= 0 && x >= i - MAX_COMBINING_MARKS; x--) {
+            if (x == markAt) {
+                base = markBase;
+                break;
+            }
+            int cp = Character.codePointAt(buf, x, len);
+            if (Character.isLetterOrDigit(cp)) {
+                base = x;
+                break;
+            }
+            if (Character.getType(cp) != Character.NON_SPACING_MARK) break;
+        }
+        markAt = i;
+        markBase = base;
+        return base >= 0 && i - base <= MAX_COMBINING_MARKS;
+    }
+
+    private static boolean isWord(int cp) {
+        return cp == '_' || Character.isLetterOrDigit(cp);
+    }
+
+    private static boolean isAsciiWord(char c) {
+        return c == '_' || isDigit(c) || isAsciiLetter(c);
+    }
+
+    // java.util.regex \s
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    static char lowerAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+    }
+
+    static boolean isRefChar(char c) {
+        return isAsciiLetter(c) || isDigit(c) || c == '-';
+    }
+
+    static boolean isVpaLocalChar(char c) {
+        return isAsciiLetter(c) || isDigit(c) || c == '.' || c == '_' || c == '%' || c == '+' || c == '-';
+    }
+
+    static boolean isVpaDomainChar(char c) {
+        return isAsciiLetter(c) || isDigit(c) || c == '.' || c == '-';
+    }
+
+    private static final class Keyword {
+        final String text;
+        final int flags;
+        final boolean receivedWord;
+
+        Keyword(String text, int flags, boolean receivedWord) {
+            this.text = text;
+            this.flags = flags;
+            this.receivedWord = receivedWord;
+        }
+    }
+}
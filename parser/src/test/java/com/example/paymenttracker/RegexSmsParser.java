@@ -1,17 +1,15 @@
 package com.example.paymenttracker;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.math.BigDecimal;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class SmsParser {
+/**
+ * The regex-based parser {@link SmsParser} used before the tokenizer, kept
+ * verbatim as a reference for {@link SmsParserTest}.
+ */
+class RegexSmsParser {
     private static final Pattern PAYMENT_KEYWORDS = Pattern.compile(
             "(?i)(?:credited|debited|paid|txn for|transferred|received|sent|upi|imps|neft|rtgs|otp for)"
     );
@@ -131,45 +129,7 @@ public class SmsParser {
         BANK_NORMALIZATION = Collections.unmodifiableMap(m);
     }
 
-    public static PaymentDetails parse(String smsBody) {
-        if (smsBody == null || smsBody.trim().isEmpty()) {
-            return null;
-        }
-
-        Map<String, Object> map = parseToMap(smsBody);
-        if (map == null) {
-            return null;
-        }
-
-        Object amountVal = map.get("amountNumber");
-        String amountRaw = (String) map.get("amountRaw");
-        String ref = (String) map.get("upiRef");
-        String vpa = (String) map.get("vpa");
-        String bank = (String) map.get("bank");
-
-        boolean hasAmount = amountVal != null || (amountRaw != null && !amountRaw.isEmpty());
-        boolean hasRefOrVpaOrBank = (ref != null && !ref.isEmpty()) || (vpa != null && !vpa.isEmpty()) || (bank != null && !bank.isEmpty());
-
-        if (!hasAmount || !hasRefOrVpaOrBank) {
-            return null;
-        }
-
-        PaymentDetails details = instantiatePaymentDetails();
-        if (details == null) {
-            return null;
-        }
-
-        safeSet(details, "amount", amountVal);
-        safeSet(details, "rawAmount", amountRaw);
-        safeSet(details, "upiRefId", ref);
-        safeSet(details, "senderVpa", vpa);
-        safeSet(details, "bank", bank);
-        safeSet(details, "dateTime", map.get("dateCandidate"));
-
-        return details;
-    }
-
-    public static Map<String, Object> parseToMap(String smsBody) {
+    static Map<String, Object> parseToMap(String smsBody) {
         if (smsBody == null) return null;
         String s = sanitizeSmsBody(smsBody);
         s = sanitizeForGatekeeper(s);
@@ -379,96 +339,4 @@ public class SmsParser {
 
         return null;
     }
-
-    private static PaymentDetails instantiatePaymentDetails() {
-        try {
-            return PaymentDetails.class.getDeclaredConstructor().newInstance();
-        } catch (Exception e) {
-            try {
-                Constructor<PaymentDetails> c = PaymentDetails.class.getDeclaredConstructor();
-                c.setAccessible(true);
-                return c.newInstance();
-            } catch (Exception ex) {
-                return null;
-            }
-        }
-    }
-
-    private static void safeSet(Object target, String fieldName, Object value) {
-        if (target == null || fieldName == null || value == null) return;
-
-        Class<?> cls = target.getClass();
-        String setterName = "set" + capitalize(fieldName);
-
-        try {
-            Method[] methods = cls.getMethods();
-            for (Method m : methods) {
-                if (!m.getName().equalsIgnoreCase(setterName)) continue;
-                if (m.getParameterCount() != 1) continue;
-                Class<?> paramType = m.getParameterTypes()[0];
-                Object toPass = convertValueIfNeeded(value, paramType);
-                if (toPass != null) {
-                    try {
-                        m.invoke(target, toPass);
-                        return;
-                    } catch (Exception ignore) { }
-                }
-            }
-        } catch (SecurityException ignored) {}
-
-        try {
-            Field f = findFieldRecursive(cls, fieldName);
-            if (f != null) {
-                f.setAccessible(true);
-                Class<?> t = f.getType();
-                Object toPass = convertValueIfNeeded(value, t);
-                if (toPass != null) {
-                    f.set(target, toPass);
-                }
-            }
-        } catch (Exception ignored) {}
-    }
-
-    private static Object convertValueIfNeeded(Object value, Class<?> targetType) {
-        if (value == null) return null;
-        if (targetType.isAssignableFrom(value.getClass())) return value;
-
-        if (targetType == String.class) {
-            return value.toString();
-        }
-
-        if (targetType == BigDecimal.class) {
-            if (value instanceof BigDecimal) return value;
-            String s = value.toString().replaceAll("[,]", "");
-            try { return new BigDecimal(s); } catch (Exception e) { return null; }
-        }
-
-        try {
-            String s = value.toString().replaceAll("[,]", "");
-            if (targetType == Integer.class || targetType == int.class) return Integer.parseInt(s);
-            if (targetType == Long.class || targetType == long.class) return Long.parseLong(s);
-            if (targetType == Double.class || targetType == double.class) return Double.parseDouble(s);
-            if (targetType == Float.class || targetType == float.class) return Float.parseFloat(s);
-            if (targetType == Short.class || targetType == short.class) return Short.parseShort(s);
-        } catch (Exception ignored) {}
-
-        return null;
-    }
-
-    private static Field findFieldRecursive(Class<?> cls, String name) {
-        Class<?> c = cls;
-        while (c != null) {
-            try {
-                return c.getDeclaredField(name);
-            } catch (NoSuchFieldException e) {
-                c = c.getSuperclass();
-            }
-        }
-        return null;
-    }
-
-    private static String capitalize(String s) {
-        if (s == null || s.isEmpty()) return s;
-        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
-    }
-}
\ No newline at end of file
+}
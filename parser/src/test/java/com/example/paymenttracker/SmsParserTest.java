@@ -0,0 +1,250 @@
+package com.example.paymenttracker;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SmsParserTest {
+
+    static final String[] CORPUS = {
+            "Rs.1,499.00 credited to your A/c XX1234 on 12-Oct-2025 by UPI Ref No 528512345678 from foo@okaxis. -HDFC Bank",
+            "Dear Customer, INR 250.00 credited to a/c **5678 on 12/10/25. UPI Ref: 412345678901 (ICICI Bank)",
+            "Your a/c no. XXXXXXXX1234 is credited by Rs. 500 on 2025-10-12 by a/c linked to VPA 9876543210@ybl (UPI Ref no 528598765432). -SBI",
+            "Received Rs 75 from RAHUL KUMAR via Paytm Payments Bank. Txn ID: T2510121403AB",
+            "A/c *4321 credited with INR 12,000.50 on 12-10-2025 via NEFT. TRANS ID HDFCN52025101212345 - Kotak Mahindra Bank",
+            "₹2,000 received in your Axis Bank account from merchant.pay@axisbank. Ref 1234ABCD5678",
+            "Amount of 349 credited to your account. Transaction ID 00998877",
+            "Rs 1000 debited from A/c XX9999 on 12-Oct-25. Not you? Call 18002586161",
+            "Your OTP for login is 482913. Do not share it with anyone.",
+            "Flat 50% off on all orders above Rs.999! Shop now at example.com",
+            "Aapke khate me Rs 300 prapt hue. UPI Ref 998877665544 - Bank of Baroda",
+            "Refund of Rs.149.50 reversed to your card ending 1111 on 01/02/2024",
+            "Credit: INR 5,00,000 to A/c XX12 Ref.No ABCD-1234-EFGH",
+            "IMPS credit of 7,500.25 received from 9123456789@paytm Ref --12",
+            "",
+            "   \n\t  ",
+    };
+
+    @Test
+    public void tokenizerMatchesRegexParserOnCorpus() {
+        for (String sms : CORPUS) {
+            assertSameAsRegexParser(sms);
+        }
+    }
+
+    @Test
+    public void tokenizerMatchesRegexParserOnGeneratedInput() {
+        String[] fragments = {
+                "Rs", "Rs.", "INR", "₹", " ", "\n", ".", ",", "-", "/", ":", "@", "_", "X", "XX12", "****1234",
+                "credited", "credit of", "Cr:", "rcvd", "received", "refund", "reversal", "prapt hue", "debited",
+                "unpaid", "txn for", "Txn ID", "TxN", "trans id", "Transaction ID", "sent", "upi", "UPI Ref No",
+                "Ref", "Ref.No", "prefix", "No", "amount", "of", "by", "with", "1", "12", "2024", "1,234.56",
+                "0.5", "99.999", "1234567890123", "Oct", "abc123", "REF987654", "okaxis", "foo.bar", "é", "के",
+                "्", "hdfc", "india post", "au", "kotak"
+        };
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int parts = 1 + random.nextInt(20);
+            for (int j = 0; j < parts; j++) {
+                sb.append(fragments[random.nextInt(fragments.length)]);
+                if (random.nextBoolean()) sb.append(' ');
+            }
+            assertSameAsRegexParser(sb.toString());
+        }
+    }
+
+    @Test
+    public void longestBankNameWins() {
+        assertEquals("India Post Payments Bank", bankOf("Rs 10 received in India Post Payments Bank a/c. UPI Ref 123456789012"));
+        assertEquals("Union Bank of India", bankOf("Rs 10 credited to Union Bank of India a/c. UPI Ref 123456789012"));
+        assertEquals("Bank of India", bankOf("Rs 10 credited to Bank of India a/c. UPI Ref 123456789012"));
+        assertEquals("Indian Overseas Bank", bankOf("INR 10 credited, Indian Overseas Bank. UPI Ref 123456789012"));
+        assertEquals("State Bank of India", bankOf("Rs 10 credited to STATE BANK OF INDIA a/c by Paul. Ref 123456789012"));
+    }
+
+    @Test
+    public void bankAliasesExtendTheBuiltInTable() {
+        String sms = "Rs 10 credited to your Jio Payments a/c. UPI Ref 123456789012";
+        assertNull(bankOf(sms));
+        Map<String, String> aliases = new HashMap<>();
+        aliases.put("Jio Payments", "Jio Payments Bank");
+        try {
+            SmsParser.setBankAliases(aliases);
+            assertEquals("Jio Payments Bank", bankOf(sms));
+            assertEquals("HDFC Bank", bankOf("Rs 10 credited to HDFC Bank a/c. UPI Ref 123456789012"));
+        } finally {
+            SmsParser.setBankAliases(null);
+        }
+        assertNull(bankOf(sms));
+    }
+
+    @Test
+    public void nonAsciiAliasesMatchOnlyTheirOwnLetters() {
+        Map<String, String> aliases = new HashMap<>();
+        aliases.put("भारतीय बैंक", "Bharatiya Bank");
+        aliases.put("€pay", "Euro Pay");
+        try {
+            SmsParser.setBankAliases(aliases);
+            assertEquals("Bharatiya Bank", bankOf("Rs 10 भारतीय बैंक me prapt hue. UPI Ref 123456789012"));
+            assertEquals("Euro Pay", bankOf("Rs 10 credited via €pay. UPI Ref 123456789012"));
+            assertNull(bankOf("Rs 10 credited via xpay. UPI Ref 123456789012"));
+            assertNull(bankOf("Rs 10 credited via #pay. UPI Ref 123456789012"));
+            assertNull(bankOf("Rs 10 बैंक me prapt hue. UPI Ref 123456789012"));
+        } finally {
+            SmsParser.setBankAliases(null);
+        }
+    }
+
+    @Test
+    public void amountsConvertToWholePaise() {
+        assertEquals(149900L, PaymentDetails.toPaise(new BigDecimal("1499.00")));
+        assertEquals(50L, PaymentDetails.toPaise(new BigDecimal(".5")));
+        assertEquals(100001L, PaymentDetails.toPaise(new BigDecimal("1000.005")));
+        assertEquals(1200000L, PaymentDetails.toPaise(new BigDecimal("12E+3")));
+        assertEquals(PaymentDetails.NO_AMOUNT, PaymentDetails.toPaise(null));
+        assertEquals(PaymentDetails.NO_AMOUNT, PaymentDetails.toPaise(new BigDecimal("1E+30")));
+    }
+
+    @Test
+    public void parseExtractsPaymentFields() {
+        Map<String, Object> map = SmsParser.parseToMap(CORPUS[0]);
+        assertNotNull(map);
+        assertEquals(new BigDecimal("1499.00"), map.get("amountNumber"));
+        assertEquals("528512345678", map.get("upiRef"));
+        assertEquals("foo@okaxis", map.get("vpa"));
+        assertEquals("2025-10-12", map.get("dateCandidate"));
+
+        PaymentDetails details = SmsParser.parse(CORPUS[0]);
+        assertNotNull(details);
+        assertEquals("1499.00", details.amount);
+        assertEquals(149900L, details.amountPaise);
+        assertEquals("528512345678", details.upiRefId);
+        assertEquals("foo@okaxis", details.senderVpa);
+        assertEquals("HDFC Bank", details.bank);
+        assertEquals("2025-10-12", details.dateTime);
+        assertEquals(CORPUS[0], details.fullSmsBody);
+
+        assertNull(SmsParser.parse(CORPUS[8]));
+        assertNull(SmsParser.parse(CORPUS[9]));
+    }
+
+    @Test
+    public void datesAreValidatedAndNormalised() {
+        assertEquals("2025-10-12", dateOf("Rs 10 credited on 12-Oct-2025. UPI Ref 123456789012"));
+        assertEquals("2025-10-12", dateOf("Rs 10 credited on 12-oct-25. UPI Ref 123456789012"));
+        assertEquals("2025-10-12", dateOf("Rs 10 credited on 12/10/25. UPI Ref 123456789012"));
+        assertEquals("2024-02-01", dateOf("Rs 10 credited on 1-2-2024. UPI Ref 123456789012"));
+        assertEquals("2025-10-12", dateOf("Rs 10 credited on 2025/10/12. UPI Ref 123456789012"));
+        assertEquals("2024-02-29", dateOf("Rs 10 credited on 29-02-2024. UPI Ref 123456789012"));
+        assertNull(dateOf("Rs 10 credited on 29-02-2025. UPI Ref 123456789012"));
+        assertNull(dateOf("Rs 10 credited on 32-01-2025. UPI Ref 123456789012"));
+        assertNull(dateOf("Rs 10 credited on 12-Foo-2025. UPI Ref 123456789012"));
+        assertNull(dateOf("Rs 10 credited on 12-10-202. UPI Ref 123456789012"));
+    }
+
+    @Test
+    public void timeOfDayIsRead() {
+        assertEquals("2025-10-12T14:03:00", dateOf("Rs 10 credited on 12-Oct-25 14:03. UPI Ref 123456789012"));
+        assertEquals("2025-10-12T14:03:11", dateOf("Rs 10 credited on 2025-10-12T14:03:11. UPI Ref 123456789012"));
+        assertEquals("2025-10-12T14:03:00", dateOf("Rs 10 credited on 12/10/25 02:03 PM. UPI Ref 123456789012"));
+        assertEquals("2025-10-12T00:15:00", dateOf("Rs 10 credited on 12/10/25 at 12:15am. UPI Ref 123456789012"));
+        assertEquals("2025-10-12T09:05:00", dateOf("Rs 10 credited on 12-10-2025, 9:05. UPI Ref 123456789012"));
+        // an impossible time leaves the date alone
+        assertEquals("2025-10-12", dateOf("Rs 10 credited on 12-10-2025 25:61. UPI Ref 123456789012"));
+        assertEquals("2025-10-12", dateOf("Rs 10 credited on 12-10-2025 13:05 PM. UPI Ref 123456789012"));
+    }
+
+    @Test
+    public void epochMillisAreIst() {
+        PaymentDetails details = SmsParser.parse("Rs 10 credited on 12-Oct-25 14:03. UPI Ref 123456789012");
+        assertNotNull(details);
+        // 2025-10-12T14:03+05:30 == 2025-10-12T08:33Z
+        assertEquals(1760257980000L, details.dateTimeMillis);
+
+        details = SmsParser.parse("Rs 10 credited on 01-01-1970. UPI Ref 123456789012");
+        assertNotNull(details);
+        assertEquals(-330L * 60 * 1000, details.dateTimeMillis);
+
+        details = SmsParser.parse("Rs 10 credited. UPI Ref 123456789012");
+        assertNotNull(details);
+        assertNull(details.dateTime);
+        assertEquals(0L, details.dateTimeMillis);
+    }
+
+    @Test
+    public void senderAndArrivalTimeAreCarriedThrough() {
+        PaymentDetails details = SmsParser.parse(CORPUS[0], "VM-HDFCBK", 1760257980000L);
+        assertNotNull(details);
+        assertEquals("VM-HDFCBK", details.sender);
+        assertEquals(1760257980000L, details.receivedAtMillis);
+        assertEquals("528512345678", details.upiRefId);
+
+        details = SmsParser.parse(CORPUS[0]);
+        assertNull(details.sender);
+        assertEquals(0L, details.receivedAtMillis);
+        assertNull(SmsParser.parse(CORPUS[8], "VM-HDFCBK", 1760257980000L));
+    }
+
+    @Test
+    public void bodiesOverTheLengthCapAreNotParsed() {
+        StringBuilder sb = new StringBuilder(CORPUS[0]);
+        while (sb.length() < SmsParser.MAX_BODY_LENGTH) sb.append(' ');
+        assertNotNull(SmsParser.parse(sb.toString()));
+        sb.append('x');
+        assertNull(SmsParser.parse(sb.toString(), "VM-HDFCBK", 0L));
+        assertNull(SmsParser.parseToMap(sb.toString()));
+        ParseResult result = SmsParser.parseResult(sb.toString(), "VM-HDFCBK", 0L);
+        assertEquals(ParseResult.Status.OVER_BUDGET, result.status());
+        assertNull(result.details());
+        assertTrue(result.reason().contains("2049"));
+    }
+
+    @Test
+    public void adversarialBodiesStayWithinBudget() {
+        String[] repeats = {"-", "1-", "\u0301", "ref:", "UPI Ref No -", "a@", "x@y-", "1,", "Rs 1", "12-10-", "credited "};
+        for (String r : repeats) {
+            StringBuilder sb = new StringBuilder("a");
+            while (sb.length() + r.length() <= SmsParser.MAX_BODY_LENGTH) sb.append(r);
+            SmsTokenizer tokens = SmsTokenizer.tokenize(sb.toString(), SmsParser.bankMatcher());
+            assertFalse(r, tokens.overBudget());
+            SmsParser.parse(sb.toString(), "AD-CRAFTD", 0L);
+        }
+    }
+
+    @Test
+    public void runningOutOfBudgetStopsTheScan() {
+        SmsTokenizer tokens = SmsTokenizer.prepare(CORPUS[0]);
+        tokens.setBudget(20);
+        assertTrue(tokens.scan(SmsParser.bankMatcher()).overBudget());
+        assertNull(tokens.first(SmsToken.Type.REF_LABEL));
+    }
+
+    private static String dateOf(String sms) {
+        return (String) SmsParser.parseToMap(sms).get("dateCandidate");
+    }
+
+    private static String bankOf(String sms) {
+        return (String) SmsParser.parseToMap(sms).get("bank");
+    }
+
+    // Bank lookup intentionally differs (it used to depend on HashMap order), and
+    // dates are now validated and carry a time of day.
+    private static void assertSameAsRegexParser(String sms) {
+        Map<String, Object> expected = RegexSmsParser.parseToMap(sms);
+        Map<String, Object> actual = SmsParser.parseToMap(sms);
+        for (Map<String, Object> m : Arrays.asList(expected, actual)) {
+            if (m == null) continue;
+            m.remove("bank");
+            m.remove("dateCandidate");
+            m.remove("dateTimeMillis");
+        }
+        assertEquals(sms, expected, actual);
+    }
+}
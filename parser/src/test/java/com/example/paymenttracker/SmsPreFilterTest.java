@@ -0,0 +1,75 @@
+package com.example.paymenttracker;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SmsPreFilterTest {
+
+    private static final SmsPreFilter OPEN = SmsPreFilter.fromSettings("", "");
+
+    @Test
+    public void neverRejectsWhatTheParserAccepts() {
+        for (String sms : SmsParserTest.CORPUS) {
+            assertAgreesWithParser(sms);
+        }
+        String[] fragments = {
+                "Rs", "INR", "₹", " ", "\n", ".", ",", "-", "@", "X", "XX12", "CREDITED", "Cr", "cr.", "rcvd",
+                "received", "refund", "reversal", "prapt hue", "debited", "txn\nfor", "sent", "UPI", "Ref No",
+                "1", "12", "1,234.56", "12-Oct-25", "foo@okaxis", "hdfc", "OTP", "offer", "é", "के"
+        };
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int parts = 1 + random.nextInt(12);
+            for (int j = 0; j < parts; j++) {
+                sb.append(fragments[random.nextInt(fragments.length)]);
+                if (random.nextBoolean()) sb.append(' ');
+            }
+            assertAgreesWithParser(sb.toString());
+        }
+    }
+
+    @Test
+    public void rejectsObviousNonPayments() {
+        assertEquals(SmsPreFilter.Reason.NO_PAYMENT_KEYWORD,
+                OPEN.check("VM-HDFCBK", "482913 is your login code. Do not share it with anyone."));
+        assertEquals(SmsPreFilter.Reason.NO_DIGITS, OPEN.check("+919876543210", "Are we still on for dinner tonight?"));
+        assertEquals(SmsPreFilter.Reason.NO_CREDIT_KEYWORD,
+                OPEN.check("VM-HDFCBK", "Rs 500 debited from A/c XX1234 on 12-Oct-25 via UPI."));
+        assertNull(OPEN.check("VM-HDFCBK", SmsParserTest.CORPUS[0]));
+    }
+
+    @Test
+    public void senderListsMatchByPrefixIgnoringOperator() {
+        SmsPreFilter filter = SmsPreFilter.fromSettings("HDFCBK, icici\nVM-SBIINB", "ICICIT");
+        String sms = SmsParserTest.CORPUS[0];
+        assertNull(filter.check("VM-HDFCBK", sms));
+        assertNull(filter.check("AX-HDFCBK-S", sms));
+        assertNull(filter.check("JD-SBIINB", sms));
+        assertNull(filter.check("ICICIB", sms));
+        assertEquals(SmsPreFilter.Reason.DENIED_SENDER, filter.check("AD-ICICIT", sms));
+        assertEquals(SmsPreFilter.Reason.SENDER_NOT_ALLOWED, filter.check("VM-AXISBK", sms));
+        assertEquals(SmsPreFilter.Reason.SENDER_NOT_ALLOWED, filter.check("HDFC", sms));
+
+        SmsPreFilter denyOnly = SmsPreFilter.fromSettings(null, "PROMO");
+        assertNull(denyOnly.check("VM-AXISBK", sms));
+        assertEquals(SmsPreFilter.Reason.DENIED_SENDER, denyOnly.check("BZ-PROMOS", sms));
+    }
+
+    @Test
+    public void rejectionsAreCounted() {
+        long before = SmsPreFilter.rejectedCount(SmsPreFilter.Reason.NO_DIGITS);
+        OPEN.check("X", "hello");
+        OPEN.check("X", "hello again");
+        assertEquals(before + 2, SmsPreFilter.rejectedCount(SmsPreFilter.Reason.NO_DIGITS));
+    }
+
+    private static void assertAgreesWithParser(String sms) {
+        if (SmsParser.parse(sms) != null) {
+            assertNull(sms, OPEN.check("VM-HDFCBK", sms));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.paymenttracker;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SmsTemplateCacheTest {
+
+    private static final String HDFC =
+            "Rs.%s credited to your A/c XX1234 on %s by UPI Ref No %s from %s. -HDFC Bank";
+
+    @Before
+    public void setUp() {
+        SmsParser.templateCache().clear();
+    }
+
+    @Test
+    public void learnedTemplateReadsLaterMessages() {
+        SmsTemplateCache cache = SmsParser.templateCache();
+        String first = String.format(HDFC, "1,499.00", "12-Oct-2025", "528512345678", "foo@okaxis");
+        assertSameAsGeneric(first, SmsParser.parse(first, "VM-HDFCBK"));
+        assertEquals(0, cache.hitCount());
+        assertEquals(1, cache.missCount());
+
+        String second = String.format(HDFC, "25", "01-Jan-2026 09:15", "600011112222", "bar.baz@ybl");
+        PaymentDetails details = SmsParser.parse(second, "AX-HDFCBK");
+        assertSameAsGeneric(second, details);
+        assertEquals("25", details.amount);
+        assertEquals("600011112222", details.upiRefId);
+        assertEquals("bar.baz@ybl", details.senderVpa);
+        assertEquals("2026-01-01T09:15:00", details.dateTime);
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void templateMissFallsBackToGenericParser() {
+        SmsTemplateCache cache = SmsParser.templateCache();
+        String first = String.format(HDFC, "100", "12-Oct-2025", "528512345678", "foo@okaxis");
+        SmsParser.parse(first, "VM-HDFCBK");
+
+        String other = "Dear Customer, INR 250.00 credited to a/c **5678 on 12/10/25. UPI Ref: 412345678901 (HDFC Bank)";
+        assertSameAsGeneric(other, SmsParser.parse(other, "VM-HDFCBK"));
+        assertNull(SmsParser.parse("Your OTP for login is 482913. Do not share it with anyone.", "VM-HDFCBK"));
+        // a slot holding something that is not a value of its kind is not a fit
+        String badAmount = String.format(HDFC, "1O0", "12-Oct-2025", "528512345678", "foo@okaxis");
+        assertSameAsGeneric(badAmount, SmsParser.parse(badAmount, "VM-HDFCBK"));
+        assertEquals(0, cache.hitCount());
+
+        // both formats are now known for this sender
+        assertSameAsGeneric(other, SmsParser.parse(other, "VM-HDFCBK"));
+        assertSameAsGeneric(first, SmsParser.parse(first, "VM-HDFCBK"));
+        assertEquals(2, cache.hitCount());
+    }
+
+    @Test
+    public void templatedParseMatchesGenericParse() {
+        Random random = new Random(7);
+        String[] dates = {"12-Oct-2025", "1/2/24", "2025-10-12T14:03:11", "29-02-2024 10:00 PM", "31-04-2025"};
+        String[] refs = {"528512345678", "ABCD1234", "XX1234", "T2510121403AB", "12345"};
+        String[] vpas = {"foo@okaxis", "a.b-c@ybl", "x@y", "9876543210@paytm"};
+        for (String sms : SmsParserTest.CORPUS) {
+            SmsParser.parse(sms, "BANK");
+        }
+        for (int i = 0; i < 2000; i++) {
+            String sms = String.format(HDFC,
+                    random.nextInt(100000) + (random.nextBoolean() ? ".50" : ""),
+                    dates[random.nextInt(dates.length)],
+                    refs[random.nextInt(refs.length)],
+                    vpas[random.nextInt(vpas.length)]);
+            assertSameAsGeneric(sms, SmsParser.parse(sms, "BANK"));
+        }
+        for (String sms : SmsParserTest.CORPUS) {
+            assertSameAsGeneric(sms, SmsParser.parse(sms, "BANK"));
+        }
+        assertTrue(SmsParser.templateCache().hitCount() > 0);
+    }
+
+    @Test
+    public void slotsReadValuesAsTheGenericScanDoes() {
+        String paytm = "Received Rs %s from RAHUL KUMAR via Paytm Payments Bank. Txn ID: T2510121403AC";
+        SmsParser.parse(String.format(paytm, "75.50"), "VM-PAYTMB");
+        // Two decimals at most, and only groups of three after a comma.
+        String longDecimals = String.format(paytm, "4534.2799");
+        assertSameAsGeneric(longDecimals, SmsParser.parse(longDecimals, "VM-PAYTMB"));
+        SmsParser.parse(String.format(HDFC, "1,499.00", "12-Oct-2025", "528512345678", "foo@okaxis"), "VM-HDFCBK");
+        String lakhs = String.format(HDFC, "1,49,99,999.00", "12-Oct-2025", "528512345678", "foo@okaxis");
+        assertSameAsGeneric(lakhs, SmsParser.parse(lakhs, "VM-HDFCBK"));
+        // The separator after a ref label is not part of the ref.
+        String hyphen = String.format(HDFC, "100", "12-Oct-2025", "-9531234567", "foo@okaxis");
+        assertSameAsGeneric(hyphen, SmsParser.parse(hyphen, "VM-HDFCBK"));
+    }
+
+    @Test
+    public void templatedParseMatchesGenericParseOnMutatedCorpus() {
+        String[] seeds = new String[SmsParserTest.CORPUS.length + 2];
+        System.arraycopy(SmsParserTest.CORPUS, 0, seeds, 0, SmsParserTest.CORPUS.length);
+        seeds[seeds.length - 2] = String.format(HDFC, "1,499.00", "12-Oct-2025", "528512345678", "foo@okaxis");
+        seeds[seeds.length - 1] = "Received Rs 4534.27 from RAHUL KUMAR via Paytm Payments Bank. Txn ID: T2510121403AC";
+        String[] inserts = {"0", "7", "99", ",", ",000", ".", ".5", "-", " ", "A", "@"};
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            String seed = seeds[random.nextInt(seeds.length)];
+            String sender = "VM-S" + (seed.hashCode() & 7);
+            SmsParser.parse(seed, sender);
+            StringBuilder sb = new StringBuilder(seed);
+            for (int m = 1 + random.nextInt(3); m > 0 && sb.length() > 0; m--) {
+                int at = random.nextInt(sb.length());
+                switch (random.nextInt(3)) {
+                    case 0:
+                        sb.insert(at, inserts[random.nextInt(inserts.length)]);
+                        break;
+                    case 1:
+                        if (SmsTokenizer.isDigit(sb.charAt(at))) sb.setCharAt(at, (char) ('0' + random.nextInt(10)));
+                        break;
+                    default:
+                        sb.deleteCharAt(at);
+                }
+            }
+            String sms = sb.toString();
+            assertSameAsGeneric(sms, SmsParser.parse(sms, sender));
+        }
+        assertTrue(SmsParser.templateCache().hitCount() > 1000);
+    }
+
+    @Test
+    public void leastRecentlyUsedSenderIsEvicted() {
+        SmsTemplateCache cache = new SmsTemplateCache(2);
+        learn(cache, "VM-SENDERA");
+        learn(cache, "VM-SENDERB");
+        assertNotNull(match(cache, "VM-SENDERA"));
+        learn(cache, "VM-SENDERC");
+
+        assertEquals(2, cache.size());
+        assertNotNull(match(cache, "VM-SENDERA"));
+        assertNull(match(cache, "VM-SENDERB"));
+        assertNotNull(match(cache, "VM-SENDERC"));
+        assertEquals(3, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void operatorPrefixIsIgnored() {
+        assertEquals("HDFCBK", SmsTemplateCache.senderKey("VM-HDFCBK"));
+        assertEquals("HDFCBK", SmsTemplateCache.senderKey("ax-hdfcbk"));
+        assertEquals("+919876543210", SmsTemplateCache.senderKey("+919876543210"));
+    }
+
+    private static final String SAMPLE = String.format(HDFC, "100", "12-Oct-2025", "528512345678", "foo@okaxis");
+    private static final BankMatcher BANKS = new BankMatcher(Collections.singletonMap("hdfc", "HDFC Bank"));
+
+    private static void learn(SmsTemplateCache cache, String sender) {
+        int ref = SAMPLE.indexOf("528512345678");
+        int[] spans = SmsTemplate.newSpans();
+        SmsTemplate.setSpan(spans, SmsTemplate.AMOUNT, 3, 6);
+        SmsTemplate.setSpan(spans, SmsTemplate.REF, ref, ref + 12);
+        PaymentDetails.Builder parsed = new PaymentDetails.Builder()
+                .fullSmsBody(SAMPLE)
+                .amount(new BigDecimal("100"), "100")
+                .upiRefId("528512345678")
+                .bank("HDFC Bank");
+        cache.learn(sender, SmsTokenizer.prepare(SAMPLE), parsed, spans, BANKS);
+    }
+
+    private static PaymentDetails.Builder match(SmsTemplateCache cache, String sender) {
+        return cache.match(sender, SmsTokenizer.prepare(SAMPLE), SAMPLE, BANKS);
+    }
+
+    private static void assertSameAsGeneric(String sms, PaymentDetails actual) {
+        PaymentDetails expected = SmsParser.parse(sms);
+        if (expected == null) {
+            assertNull(sms, actual);
+            return;
+        }
+        assertNotNull(sms, actual);
+        assertEquals(sms, expected.amount, actual.amount);
+        assertEquals(sms, expected.upiRefId, actual.upiRefId);
+        assertEquals(sms, expected.senderVpa, actual.senderVpa);
+        assertEquals(sms, expected.bank, actual.bank);
+        assertEquals(sms, expected.dateTime, actual.dateTime);
+        assertEquals(sms, expected.dateTimeMillis, actual.dateTimeMillis);
+        assertEquals(sms, expected.fullSmsBody, actual.fullSmsBody);
+    }
+}